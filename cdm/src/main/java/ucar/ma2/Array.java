@@ -41,9 +41,10 @@ import java.nio.*;
  * the Class of its elements, and a <b>shape</b> which describes the number of elements in each index.
  * The <b>rank</b> is the number of indices. A <b>scalar</b> Array has rank = 0. An
  * Array may have arbitrary rank. The Array <b>size</b> is the total number of elements, which must be less than
- * 2^31 (about 2x10^9).
+ * 2^31 (about 2x10^9), except for ArrayBB.
  * <p/>
- * Actual data storage is done with Java 1D arrays and stride index calculations.
+ * Actual data storage is done with Java 1D arrays and stride index calculations. ArrayBB instead keeps its data in
+ * direct or memory mapped ByteBuffers, for arrays too large for the java heap.
  * This makes our Arrays rectangular, i.e. no "ragged arrays" where different elements
  * can have different lengths as in Java multidimensional arrays, which are arrays of arrays.
  * <p/>
@@ -67,6 +68,9 @@ import java.nio.*;
  * for efficient traversal. This makes use of Arrays thread-safe (as long as you dont share the Index or IndexIterator)
  * except for the possibility of non-atomic read/write on long/doubles. If this is the case, you should probably
  * synchronize your calls. Presumably 64-bit CPUs will make those operations atomic also.
+ * <p/>
+ * For tight loops, forEachContiguousRun() passes each run of consecutive storage elements to a callback,
+ * and copyToDoubleArray() etc copy any logical view to or from a java array in bulk.
  *
  * @author caron
  * @see Index
@@ -123,6 +127,19 @@ public abstract class Array {
       return ArrayObject.factory(classType, index);
   }
 
+  /**
+   * Generate new Array with given type and shape and zeroed storage outside the java heap, in direct ByteBuffers.
+   * Use this for very large arrays, which may have more than 2^31 elements.
+   *
+   * @param dataType numeric DataType, eg DataType.FLOAT.
+   * @param shape    shape of the array.
+   * @return new ArrayBB
+   * @see ArrayBB
+   */
+  static public ArrayBB factoryDirect(DataType dataType, int[] shape) {
+    return ArrayBB.factory(dataType, shape);
+  }
+
   /**
    * /** Generate new Array with given type, shape, storage.
    *
@@ -291,6 +308,10 @@ public abstract class Array {
         arrayDst.setDouble(i, d); 
       return;
     }
+    if ((arraySrc instanceof ArrayBB) || (arrayDst instanceof ArrayBB)) {
+      ArrayBB.copyElements(arraySrc, srcPos, arrayDst, dstPos, len);
+      return;
+    }
 
     Object src = arraySrc.get1DJavaArray(arraySrc.getElementType()); // ensure canonical order
     Object dst = arrayDst.getStorage();
@@ -777,6 +798,268 @@ public abstract class Array {
     return javaArray;
   }
 
+  /**
+   * Call the callback for each run of consecutive elements in the backing storage, in logical order.
+   * Inner dimensions that are contiguous in the storage are merged, so an Array in canonical order is a single run.
+   * This allows tight counted loops over the backing java array, instead of an Index calculation per element.
+   *
+   * @param callback called for each run, with the storage, offset and length of the run
+   */
+  public void forEachContiguousRun(ContiguousRunCallback callback) {
+    indexCalc.forEachContiguousRun(getStorage(), callback);
+  }
+
+  /**
+   * Copy the elements of this Array into a double array, in logical order, converting to double as needed.
+   * This Array may be any logical view (section, transpose, etc). Unsigned values are converted.
+   *
+   * @param dest    copy into here, must have room for getSize() elements starting at destPos
+   * @param destPos starting position in dest
+   * @return dest
+   * @throws ForbiddenConversionException if the elements cant be converted to double
+   */
+  public double[] copyToDoubleArray(double[] dest, int destPos) {
+    forEachContiguousRun(new RunCopier(dest, null, destPos, false, getElementType(), isUnsigned()));
+    return dest;
+  }
+
+  /**
+   * Copy the elements of this Array into a float array, in logical order, converting to float as needed.
+   * This Array may be any logical view (section, transpose, etc). Unsigned values are converted.
+   *
+   * @param dest    copy into here, must have room for getSize() elements starting at destPos
+   * @param destPos starting position in dest
+   * @return dest
+   * @throws ForbiddenConversionException if the elements cant be converted to float
+   */
+  public float[] copyToFloatArray(float[] dest, int destPos) {
+    forEachContiguousRun(new RunCopier(null, dest, destPos, false, getElementType(), isUnsigned()));
+    return dest;
+  }
+
+  /**
+   * Set the elements of this Array from a double array, in logical order, converting from double as needed.
+   *
+   * @param src    copy from here, must have getSize() elements starting at srcPos
+   * @param srcPos starting position in src
+   * @throws ForbiddenConversionException if the elements cant be converted from double
+   */
+  public void copyFromDoubleArray(double[] src, int srcPos) {
+    forEachContiguousRun(new RunCopier(src, null, srcPos, true, getElementType(), false));
+  }
+
+  /**
+   * Set the elements of this Array from a float array, in logical order, converting from float as needed.
+   *
+   * @param src    copy from here, must have getSize() elements starting at srcPos
+   * @param srcPos starting position in src
+   * @throws ForbiddenConversionException if the elements cant be converted from float
+   */
+  public void copyFromFloatArray(float[] src, int srcPos) {
+    forEachContiguousRun(new RunCopier(null, src, srcPos, true, getElementType(), false));
+  }
+
+  // copies the runs of an Array's storage to or from a double[] or float[], one counted loop per run
+  private static class RunCopier implements ContiguousRunCallback {
+    private final double[] dd; // exactly one of dd, ff is not null
+    private final float[] ff;
+    private final boolean toStorage, unsigned;
+    private final Class elemType; // needed for ByteBuffer storage
+    private int pos;
+
+    RunCopier(double[] dd, float[] ff, int pos, boolean toStorage, Class elemType, boolean unsigned) {
+      this.dd = dd;
+      this.ff = ff;
+      this.pos = pos;
+      this.toStorage = toStorage;
+      this.elemType = elemType;
+      this.unsigned = unsigned;
+    }
+
+    public void run(Object storage, int offset, int length) {
+      if (storage instanceof ByteBuffer)
+        storage = asTypedBuffer((ByteBuffer) storage, offset, length);
+      if (toStorage)
+        store(storage, offset, length);
+      else
+        load(storage, offset, length);
+      pos += length;
+    }
+
+    // a view of the run as a typed buffer; the caller then sees a run starting at offset 0
+    private Buffer asTypedBuffer(ByteBuffer bb, int offset, int length) {
+      int elemSize = DataType.getType(elemType).getSize();
+      ByteBuffer dup = bb.duplicate();
+      dup.position(offset * elemSize);
+      dup.limit((offset + length) * elemSize);
+      dup = dup.slice();
+      dup.order(bb.order());
+      if (elemType == double.class) return dup.asDoubleBuffer();
+      if (elemType == float.class) return dup.asFloatBuffer();
+      if (elemType == long.class) return dup.asLongBuffer();
+      if (elemType == int.class) return dup.asIntBuffer();
+      if (elemType == short.class) return dup.asShortBuffer();
+      return dup;
+    }
+
+    private void load(Object storage, int offset, int length) {
+      if (storage instanceof Buffer) {
+        loadBuffer((Buffer) storage, length);
+
+      } else if (storage instanceof double[]) {
+        double[] s = (double[]) storage;
+        if (dd != null) System.arraycopy(s, offset, dd, pos, length);
+        else for (int i = 0; i < length; i++) ff[pos + i] = (float) s[offset + i];
+
+      } else if (storage instanceof float[]) {
+        float[] s = (float[]) storage;
+        if (dd != null) for (int i = 0; i < length; i++) dd[pos + i] = s[offset + i];
+        else System.arraycopy(s, offset, ff, pos, length);
+
+      } else if (storage instanceof long[]) {
+        long[] s = (long[]) storage;
+        if (dd != null) for (int i = 0; i < length; i++) dd[pos + i] = s[offset + i];
+        else for (int i = 0; i < length; i++) ff[pos + i] = s[offset + i];
+
+      } else if (storage instanceof int[]) {
+        int[] s = (int[]) storage;
+        if (unsigned) {
+          if (dd != null) for (int i = 0; i < length; i++) dd[pos + i] = s[offset + i] & 0xffffffffL;
+          else for (int i = 0; i < length; i++) ff[pos + i] = s[offset + i] & 0xffffffffL;
+        } else {
+          if (dd != null) for (int i = 0; i < length; i++) dd[pos + i] = s[offset + i];
+          else for (int i = 0; i < length; i++) ff[pos + i] = s[offset + i];
+        }
+
+      } else if (storage instanceof short[]) {
+        short[] s = (short[]) storage;
+        int mask = unsigned ? 0xffff : -1;
+        if (dd != null) for (int i = 0; i < length; i++) dd[pos + i] = (unsigned ? s[offset + i] & mask : s[offset + i]);
+        else for (int i = 0; i < length; i++) ff[pos + i] = (unsigned ? s[offset + i] & mask : s[offset + i]);
+
+      } else if (storage instanceof byte[]) {
+        byte[] s = (byte[]) storage;
+        int mask = unsigned ? 0xff : -1;
+        if (dd != null) for (int i = 0; i < length; i++) dd[pos + i] = (unsigned ? s[offset + i] & mask : s[offset + i]);
+        else for (int i = 0; i < length; i++) ff[pos + i] = (unsigned ? s[offset + i] & mask : s[offset + i]);
+
+      } else if (storage instanceof char[]) {
+        char[] s = (char[]) storage;
+        if (dd != null) for (int i = 0; i < length; i++) dd[pos + i] = s[offset + i];
+        else for (int i = 0; i < length; i++) ff[pos + i] = s[offset + i];
+
+      } else {
+        throw new ForbiddenConversionException();
+      }
+    }
+
+    private void loadBuffer(Buffer b, int length) {
+      if (b instanceof DoubleBuffer) {
+        DoubleBuffer s = (DoubleBuffer) b;
+        if (dd != null) s.get(dd, pos, length);
+        else for (int i = 0; i < length; i++) ff[pos + i] = (float) s.get(i);
+
+      } else if (b instanceof FloatBuffer) {
+        FloatBuffer s = (FloatBuffer) b;
+        if (dd != null) for (int i = 0; i < length; i++) dd[pos + i] = s.get(i);
+        else s.get(ff, pos, length);
+
+      } else if (b instanceof LongBuffer) {
+        LongBuffer s = (LongBuffer) b;
+        for (int i = 0; i < length; i++) set(i, s.get(i));
+
+      } else if (b instanceof IntBuffer) {
+        IntBuffer s = (IntBuffer) b;
+        for (int i = 0; i < length; i++) set(i, unsigned ? s.get(i) & 0xffffffffL : s.get(i));
+
+      } else if (b instanceof ShortBuffer) {
+        ShortBuffer s = (ShortBuffer) b;
+        for (int i = 0; i < length; i++) set(i, unsigned ? s.get(i) & 0xffff : s.get(i));
+
+      } else {
+        ByteBuffer s = (ByteBuffer) b;
+        for (int i = 0; i < length; i++) set(i, unsigned ? s.get(i) & 0xff : s.get(i));
+      }
+    }
+
+    private void set(int i, double val) {
+      if (dd != null) dd[pos + i] = val;
+      else ff[pos + i] = (float) val;
+    }
+
+    private double get(int i) {
+      return (dd != null) ? dd[pos + i] : ff[pos + i];
+    }
+
+    private void store(Object storage, int offset, int length) {
+      if (storage instanceof Buffer) {
+        storeBuffer((Buffer) storage, length);
+
+      } else if (storage instanceof double[]) {
+        double[] s = (double[]) storage;
+        if (dd != null) System.arraycopy(dd, pos, s, offset, length);
+        else for (int i = 0; i < length; i++) s[offset + i] = ff[pos + i];
+
+      } else if (storage instanceof float[]) {
+        float[] s = (float[]) storage;
+        if (dd != null) for (int i = 0; i < length; i++) s[offset + i] = (float) dd[pos + i];
+        else System.arraycopy(ff, pos, s, offset, length);
+
+      } else if (storage instanceof long[]) {
+        long[] s = (long[]) storage;
+        for (int i = 0; i < length; i++) s[offset + i] = (long) get(i);
+
+      } else if (storage instanceof int[]) {
+        int[] s = (int[]) storage;
+        for (int i = 0; i < length; i++) s[offset + i] = (int) get(i);
+
+      } else if (storage instanceof short[]) {
+        short[] s = (short[]) storage;
+        for (int i = 0; i < length; i++) s[offset + i] = (short) get(i);
+
+      } else if (storage instanceof byte[]) {
+        byte[] s = (byte[]) storage;
+        for (int i = 0; i < length; i++) s[offset + i] = (byte) get(i);
+
+      } else if (storage instanceof char[]) {
+        char[] s = (char[]) storage;
+        for (int i = 0; i < length; i++) s[offset + i] = (char) get(i);
+
+      } else {
+        throw new ForbiddenConversionException();
+      }
+    }
+
+    private void storeBuffer(Buffer b, int length) {
+      if (b instanceof DoubleBuffer) {
+        DoubleBuffer s = (DoubleBuffer) b;
+        if (dd != null) s.put(dd, pos, length);
+        else for (int i = 0; i < length; i++) s.put(i, ff[pos + i]);
+
+      } else if (b instanceof FloatBuffer) {
+        FloatBuffer s = (FloatBuffer) b;
+        if (dd != null) for (int i = 0; i < length; i++) s.put(i, (float) dd[pos + i]);
+        else s.put(ff, pos, length);
+
+      } else if (b instanceof LongBuffer) {
+        LongBuffer s = (LongBuffer) b;
+        for (int i = 0; i < length; i++) s.put(i, (long) get(i));
+
+      } else if (b instanceof IntBuffer) {
+        IntBuffer s = (IntBuffer) b;
+        for (int i = 0; i < length; i++) s.put(i, (int) get(i));
+
+      } else if (b instanceof ShortBuffer) {
+        ShortBuffer s = (ShortBuffer) b;
+        for (int i = 0; i < length; i++) s.put(i, (short) get(i));
+
+      } else {
+        ByteBuffer s = (ByteBuffer) b;
+        for (int i = 0; i < length; i++) s.put(i, (byte) get(i));
+      }
+    }
+  }
+
   /**
    * Create a new Array using same backing store as this Array, by
    * flipping the index so that it runs from shape[index]-1 to 0.
@@ -0,0 +1,745 @@
+/*
+ * Copyright 1998-2009 University Corporation for Atmospheric Research/Unidata
+ *
+ * Portions of this software were developed by the Unidata Program at the
+ * University Corporation for Atmospheric Research.
+ *
+ * Access and use of this software shall impose the following obligations
+ * and understandings on the user. The user is granted the right, without
+ * any fee or cost, to use, copy, modify, alter, enhance and distribute
+ * this software, and any derivative works thereof, and its supporting
+ * documentation for any purpose whatsoever, provided that this entire
+ * notice appears in all copies of the software, derivative works and
+ * supporting documentation.  Further, UCAR requests that the user credit
+ * UCAR/Unidata in any publications that result from the use of this
+ * software or in any product that includes this software. The names UCAR
+ * and/or Unidata, however, may not be used in any advertising or publicity
+ * to endorse or promote any products or commercial entity unless specific
+ * written permission is obtained from UCAR/Unidata. The user also
+ * understands that UCAR/Unidata is not obligated to provide the user with
+ * any support, consulting, training or assistance of any kind with regard
+ * to the use, operation and performance of this software nor to provide
+ * the user with any updates, revisions, new versions or "bug fixes."
+ *
+ * THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ * INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ * FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ * NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ * WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.ma2;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Concrete implementation of Array for numeric types, with the data stored in ByteBuffers rather than a java array.
+ * The buffers may be direct (allocated outside the java heap) or memory mapped, so very large arrays do not
+ * use heap space. The data is split into segments of at most 1 Gbyte, so the total size in bytes is not limited
+ * to 2^31, and the number of elements may also exceed 2^31.
+ * <p/>
+ * Element positions are longs: use getDouble(long), setFloat(long, float), etc, and getByteBuffer(long, int)
+ * for bulk access. The Index based methods and iterators work for any size, but logical views (section, slice,
+ * transpose, etc) are only allowed when there are fewer than 2^31 elements, since Index offsets are ints.
+ * <p/>
+ * Supported types are BYTE, SHORT, INT, LONG, FLOAT, DOUBLE and the ENUM types.
+ *
+ * @author caron
+ * @see Array#factoryDirect(DataType, int[])
+ */
+public class ArrayBB extends Array {
+  /**
+   * Default size in bytes of each ByteBuffer segment.
+   */
+  static public final int defaultSegmentBytes = 1 << 30;
+
+  static private final int BYTE = 0, SHORT = 1, INT = 2, LONG = 3, FLOAT = 4, DOUBLE = 5;
+
+  /**
+   * Create a new ArrayBB with zeroed storage in direct ByteBuffers, in native byte order.
+   *
+   * @param dataType numeric data type
+   * @param shape    shape of the Array.
+   * @return new ArrayBB
+   */
+  static public ArrayBB factory(DataType dataType, int[] shape) {
+    return factory(dataType, shape, ByteOrder.nativeOrder());
+  }
+
+  /**
+   * Create a new ArrayBB with zeroed storage in direct ByteBuffers.
+   * Use the byte order of the data source, so that bytes can be read directly into the storage.
+   *
+   * @param dataType numeric data type
+   * @param shape    shape of the Array.
+   * @param order    byte order of the storage.
+   * @return new ArrayBB
+   */
+  static public ArrayBB factory(DataType dataType, int[] shape, ByteOrder order) {
+    int elemSize = dataType.getSize();
+    long size = Index.computeSize(shape);
+    int segElems = defaultSegmentBytes / elemSize;
+    int nsegs = (int) Math.max(1, (size + segElems - 1) / segElems);
+
+    ByteBuffer[] segments = new ByteBuffer[nsegs];
+    for (int i = 0; i < nsegs; i++) {
+      long nelems = Math.min(segElems, size - (long) i * segElems);
+      segments[i] = ByteBuffer.allocateDirect((int) nelems * elemSize);
+      segments[i].order(order);
+    }
+    return new ArrayBB(dataType, new Index(shape), segments, Integer.numberOfTrailingZeros(segElems));
+  }
+
+  /**
+   * Create a new ArrayBB using the given ByteBuffers as storage, eg memory mapped regions of a file.
+   * The data is in canonical order, starting at the position of the first buffer.
+   * When there is more than one buffer, all but the last must have the same number of remaining bytes,
+   * which must be a power of 2.
+   *
+   * @param dataType numeric data type
+   * @param shape    shape of the Array.
+   * @param segments storage, in the byte order of each buffer. Not copied, so changes to the buffers are seen in the Array.
+   * @return new ArrayBB
+   * @throws IllegalArgumentException if the buffers are too small or not the same size
+   */
+  static public ArrayBB factory(DataType dataType, int[] shape, ByteBuffer[] segments) {
+    int elemSize = dataType.getSize();
+    long size = Index.computeSize(shape);
+
+    ByteBuffer[] segs = new ByteBuffer[segments.length];
+    long total = 0;
+    for (int i = 0; i < segments.length; i++) {
+      segs[i] = segments[i].slice();
+      segs[i].order(segments[i].order());
+      total += segs[i].capacity();
+    }
+    if (total < size * elemSize)
+      throw new IllegalArgumentException("ArrayBB storage too small: " + total + " < " + size * elemSize);
+
+    int segShift = 31;
+    if (segs.length > 1) {
+      int segBytes = segs[0].capacity();
+      if ((Integer.bitCount(segBytes) != 1) || (segBytes < elemSize))
+        throw new IllegalArgumentException("ArrayBB segment size must be a power of 2: " + segBytes);
+      for (int i = 1; i < segs.length - 1; i++)
+        if (segs[i].capacity() != segBytes)
+          throw new IllegalArgumentException("ArrayBB segments must have the same size");
+      segShift = Integer.numberOfTrailingZeros(segBytes / elemSize);
+    }
+    return new ArrayBB(dataType, new Index(shape), segs, segShift);
+  }
+
+  //////////////////////////////////////////////////////
+  private final DataType dataType;
+  private final int kind, elemSize;
+  private final ByteBuffer[] segments; // use absolute get/put only, so these can be shared between threads
+  private final int segShift; // element i is in segments[i >>> segShift]
+  private final long segMask;
+  private final boolean large; // more than 2^31 elements
+
+  ArrayBB(DataType dataType, Index index, ByteBuffer[] segments, int segShift) {
+    super(index);
+    this.dataType = dataType;
+    this.elemSize = dataType.getSize();
+    this.segments = segments;
+    this.segShift = segShift;
+    this.segMask = (1L << segShift) - 1;
+
+    Class c = dataType.getPrimitiveClassType();
+    if (c == byte.class) kind = BYTE;
+    else if (c == short.class) kind = SHORT;
+    else if (c == int.class) kind = INT;
+    else if (c == long.class) kind = LONG;
+    else if (c == float.class) kind = FLOAT;
+    else if (c == double.class) kind = DOUBLE;
+    else throw new IllegalArgumentException("ArrayBB does not support " + dataType);
+
+    this.large = index.getSize() > Integer.MAX_VALUE;
+    if (large) {
+      for (int i = 0; i < rank; i++)
+        if (index.stride[i] < 0)
+          throw new IllegalArgumentException("ArrayBB inner dimensions may not exceed 2^31 elements");
+    }
+  }
+
+  /**
+   * create new Array with given Index and same backing store
+   *
+   * @throws UnsupportedOperationException if there are more than 2^31 elements
+   */
+  Array createView(Index index) {
+    if (large)
+      throw new UnsupportedOperationException("ArrayBB with more than 2^31 elements cannot have views");
+    ArrayBB result = new ArrayBB(dataType, index, segments, segShift);
+    result.setUnsigned(isUnsigned());
+    return result;
+  }
+
+  public Class getElementType() {
+    return dataType.getPrimitiveClassType();
+  }
+
+  /**
+   * Get the DataType of the elements.
+   *
+   * @return DataType
+   */
+  public DataType getDataType() {
+    return dataType;
+  }
+
+  /**
+   * Get a copy of the storage as a java array, in storage order, like the storage of the other Arrays.
+   * Since it is a copy, changes to it are not seen in this Array; use getSegments() to get at the storage itself.
+   *
+   * @return java array of the primitive element type, eg float[]
+   * @throws UnsupportedOperationException if the storage has more than 2^31 - 1 elements
+   */
+  public Object getStorage() {
+    long total = 0;
+    for (ByteBuffer seg : segments)
+      total += seg.capacity() / elemSize;
+    if (total > Integer.MAX_VALUE)
+      throw new UnsupportedOperationException("ArrayBB storage has " + total + " elements, too many for a java array; use getSegments()");
+
+    Object result = java.lang.reflect.Array.newInstance(dataType.getPrimitiveClassType(), (int) total);
+    int pos = 0;
+    for (ByteBuffer seg : segments) {
+      ByteBuffer bb = seg.duplicate();
+      bb.clear();
+      bb.order(seg.order());
+      int n = bb.capacity() / elemSize;
+      switch (kind) {
+        case BYTE: bb.get((byte[]) result, pos, n); break;
+        case SHORT: bb.asShortBuffer().get((short[]) result, pos, n); break;
+        case INT: bb.asIntBuffer().get((int[]) result, pos, n); break;
+        case LONG: bb.asLongBuffer().get((long[]) result, pos, n); break;
+        case FLOAT: bb.asFloatBuffer().get((float[]) result, pos, n); break;
+        default: bb.asDoubleBuffer().get((double[]) result, pos, n);
+      }
+      pos += n;
+    }
+    return result;
+  }
+
+  /**
+   * Get the underlying storage. CAUTION! You may invalidate your warrentee!
+   *
+   * @return the segments; each is shared with this Array, so use absolute get and put.
+   */
+  public ByteBuffer[] getSegments() {
+    return segments;
+  }
+
+  /**
+   * @return true if there are more than 2^31 elements
+   */
+  public boolean isLarge() {
+    return large;
+  }
+
+  /**
+   * Get a view of the storage of consecutive elements, for bulk access, eg reading data directly into the Array.
+   * The elements are in the storage order, which is the logical order unless this Array is a view.
+   * The result does not cross a segment boundary, so may have fewer than nelems elements.
+   *
+   * @param elem   starting element
+   * @param nelems number of elements wanted
+   * @return ByteBuffer with position 0 and limit the number of bytes available, up to nelems * elemSize.
+   */
+  public ByteBuffer getByteBuffer(long elem, int nelems) {
+    ByteBuffer seg = segments[(int) (elem >>> segShift)];
+    int pos = pos(elem);
+    int n = Math.min(nelems * elemSize, seg.capacity() - pos);
+    ByteBuffer result = seg.duplicate();
+    result.limit(pos + n);
+    result.position(pos);
+    result = result.slice();
+    result.order(seg.order());
+    return result;
+  }
+
+  /**
+   * Call the callback for each run of consecutive elements, in logical order.
+   * The storage passed to the callback is the ByteBuffer segment containing the run, and the offset and length are
+   * in elements within that segment. Runs are split at segment boundaries.
+   *
+   * @param callback called for each run
+   */
+  @Override
+  public void forEachContiguousRun(final ContiguousRunCallback callback) {
+    if (large) { // no views, so the storage is in canonical order
+      long size = getSize();
+      for (long elem = 0; elem < size; ) {
+        int n = (int) Math.min(size - elem, (segMask + 1) - (elem & segMask));
+        callback.run(seg(elem), (int) (elem & segMask), n);
+        elem += n;
+      }
+      return;
+    }
+
+    indexCalc.forEachContiguousRun(null, new ContiguousRunCallback() {
+      public void run(Object storage, int offset, int length) {
+        long elem = offset;
+        while (length > 0) {
+          int n = (int) Math.min(length, (segMask + 1) - (elem & segMask));
+          callback.run(seg(elem), (int) (elem & segMask), n);
+          elem += n;
+          length -= n;
+        }
+      }
+    });
+  }
+
+  /**
+   * Get an index iterator for traversing the array in canonical order.
+   * If there are more than 2^31 elements, the iterator uses a long counter.
+   */
+  @Override
+  public IndexIterator getIndexIterator() {
+    return large ? new IteratorLong() : super.getIndexIterator();
+  }
+
+  @Override
+  public IndexIterator getIndexIteratorFast() {
+    return large ? new IteratorLong() : super.getIndexIteratorFast();
+  }
+
+  /**
+   * Always copies into a java array, since the storage is not a java array.
+   */
+  @Override
+  public Object get1DJavaArray(Class wantType) {
+    Array newA = factory(wantType, getShape());
+    MAMath.copy(newA, this);
+    return newA.getStorage();
+  }
+
+  /**
+   * Copy into a new ArrayBB, in canonical order and with the same byte order.
+   */
+  @Override
+  public Array copy() {
+    ArrayBB newA = factory(dataType, getShape(), segments[0].order());
+    if (!large && !indexCalc.isFastIterator()) {
+      MAMath.copy(newA, this);
+    } else if (!isSameOrder()) {
+      copyElements(this, 0, newA, 0, getSize());
+    } else { // canonical, so copy the bytes; the segments of newA need not be the same size as ours
+      long nbytes = getSize() * elemSize;
+      long srcSegBytes = (1L << segShift) * elemSize;
+      long dstSegBytes = (1L << newA.segShift) * elemSize;
+      long done = 0;
+      while (done < nbytes) {
+        int srcPos = (int) (done % srcSegBytes);
+        int dstPos = (int) (done % dstSegBytes);
+        int n = (int) Math.min(nbytes - done, Math.min(srcSegBytes - srcPos, dstSegBytes - dstPos));
+        ByteBuffer src = segments[(int) (done / srcSegBytes)].duplicate();
+        src.limit(srcPos + n);
+        src.position(srcPos);
+        ByteBuffer dst = newA.segments[(int) (done / dstSegBytes)].duplicate();
+        dst.position(dstPos);
+        dst.put(src);
+        done += n;
+      }
+    }
+    newA.setUnsigned(isUnsigned());
+    return newA;
+  }
+
+  // true if all segments have the byte order of the first, so bytes can be copied as they are
+  private boolean isSameOrder() {
+    for (ByteBuffer seg : segments)
+      if (seg.order() != segments[0].order()) return false;
+    return true;
+  }
+
+  @Override
+  public Array reshapeNoCopy(int[] shape) {
+    if (Index.computeSize(shape) != getSize())
+      throw new IllegalArgumentException("reshape arrays must have same total size");
+    if (!large && !indexCalc.isFastIterator())
+      return copy().reshapeNoCopy(shape);
+    ArrayBB result = new ArrayBB(dataType, new Index(shape), segments, segShift);
+    result.setUnsigned(isUnsigned());
+    return result;
+  }
+
+  @Override
+  public ByteBuffer getDataAsByteBuffer() {
+    if ((segments.length == 1) && indexCalc.isFastIterator())
+      return getByteBuffer(0, (int) getSize());
+    ByteBuffer result = ByteBuffer.allocate((int) (getSize() * elemSize));
+    result.order(segments[0].order());
+    ArrayBB canon = (ArrayBB) copy();
+    for (ByteBuffer seg : canon.segments)
+      result.put(seg.duplicate());
+    result.flip();
+    return result;
+  }
+
+  void copyFrom1DJavaArray(IndexIterator iter, Object javaArray) {
+    switch (kind) {
+      case BYTE:
+        for (byte v : (byte[]) javaArray) iter.setByteNext(v);
+        break;
+      case SHORT:
+        for (short v : (short[]) javaArray) iter.setShortNext(v);
+        break;
+      case INT:
+        for (int v : (int[]) javaArray) iter.setIntNext(v);
+        break;
+      case LONG:
+        for (long v : (long[]) javaArray) iter.setLongNext(v);
+        break;
+      case FLOAT:
+        for (float v : (float[]) javaArray) iter.setFloatNext(v);
+        break;
+      default:
+        for (double v : (double[]) javaArray) iter.setDoubleNext(v);
+    }
+  }
+
+  void copyTo1DJavaArray(IndexIterator iter, Object javaArray) {
+    switch (kind) {
+      case BYTE: {
+        byte[] ja = (byte[]) javaArray;
+        for (int i = 0; i < ja.length; i++) ja[i] = iter.getByteNext();
+        break;
+      }
+      case SHORT: {
+        short[] ja = (short[]) javaArray;
+        for (int i = 0; i < ja.length; i++) ja[i] = iter.getShortNext();
+        break;
+      }
+      case INT: {
+        int[] ja = (int[]) javaArray;
+        for (int i = 0; i < ja.length; i++) ja[i] = iter.getIntNext();
+        break;
+      }
+      case LONG: {
+        long[] ja = (long[]) javaArray;
+        for (int i = 0; i < ja.length; i++) ja[i] = iter.getLongNext();
+        break;
+      }
+      case FLOAT: {
+        float[] ja = (float[]) javaArray;
+        for (int i = 0; i < ja.length; i++) ja[i] = iter.getFloatNext();
+        break;
+      }
+      default: {
+        double[] ja = (double[]) javaArray;
+        for (int i = 0; i < ja.length; i++) ja[i] = iter.getDoubleNext();
+      }
+    }
+  }
+
+  /**
+   * Cover for Array.arraycopy() when either Array is an ArrayBB. Positions are in logical order.
+   *
+   * @param arraySrc copy from here
+   * @param srcPos   starting at
+   * @param arrayDst copy to here : must be in canonical order
+   * @param dstPos   starting at
+   * @param len      number of elements to copy
+   */
+  static public void copyElements(Array arraySrc, long srcPos, Array arrayDst, long dstPos, long len) {
+    if (!arraySrc.isConstant() && !arraySrc.getIndexPrivate().isFastIterator())
+      arraySrc = arraySrc.copy(); // canonical order
+    ArrayBB src = (arraySrc instanceof ArrayBB) ? (ArrayBB) arraySrc : null;
+    ArrayBB dst = (arrayDst instanceof ArrayBB) ? (ArrayBB) arrayDst : null;
+    if (arraySrc.isConstant()) srcPos = 0;
+    int srcIncr = arraySrc.isConstant() ? 0 : 1;
+
+    if ((arraySrc.getElementType() == long.class) || (arraySrc.getElementType() == int.class)) {
+      for (long i = 0; i < len; i++, srcPos += srcIncr, dstPos++) {
+        long val = (src != null) ? src.getLong(srcPos) : arraySrc.getLong((int) srcPos);
+        if (dst != null) dst.setLong(dstPos, val);
+        else arrayDst.setLong((int) dstPos, val);
+      }
+    } else {
+      for (long i = 0; i < len; i++, srcPos += srcIncr, dstPos++) {
+        double val = (src != null) ? src.getDouble(srcPos) : arraySrc.getDouble((int) srcPos);
+        if (dst != null) dst.setDouble(dstPos, val);
+        else arrayDst.setDouble((int) dstPos, val);
+      }
+    }
+  }
+
+  ///////////////////////////////////////////////////////////////
+  // element access by storage position
+
+  private int pos(long elem) {
+    return (int) (elem & segMask) * elemSize;
+  }
+
+  private ByteBuffer seg(long elem) {
+    return segments[(int) (elem >>> segShift)];
+  }
+
+  // storage position of the current element of ima
+  private long elem(Index ima) {
+    if (!large) return ima.currentElement();
+    int[] counter = ima.getCurrentCounter();
+    long elem = ima.offset;
+    for (int i = 0; i < rank; i++)
+      elem += (long) ima.stride[i] * counter[i];
+    return elem;
+  }
+
+  public double getDouble(long elem) {
+    ByteBuffer bb = seg(elem);
+    int p = pos(elem);
+    switch (kind) {
+      case BYTE: {
+        byte val = bb.get(p);
+        return unsigned ? DataType.unsignedByteToShort(val) : val;
+      }
+      case SHORT: {
+        short val = bb.getShort(p);
+        return unsigned ? DataType.unsignedShortToInt(val) : val;
+      }
+      case INT: {
+        int val = bb.getInt(p);
+        return unsigned ? DataType.unsignedIntToLong(val) : val;
+      }
+      case LONG:
+        return (double) bb.getLong(p);
+      case FLOAT:
+        return (double) bb.getFloat(p);
+      default:
+        return bb.getDouble(p);
+    }
+  }
+
+  public long getLong(long elem) {
+    ByteBuffer bb = seg(elem);
+    int p = pos(elem);
+    switch (kind) {
+      case BYTE: {
+        byte val = bb.get(p);
+        return unsigned ? DataType.unsignedByteToShort(val) : val;
+      }
+      case SHORT: {
+        short val = bb.getShort(p);
+        return unsigned ? DataType.unsignedShortToInt(val) : val;
+      }
+      case INT: {
+        int val = bb.getInt(p);
+        return unsigned ? DataType.unsignedIntToLong(val) : val;
+      }
+      case LONG:
+        return bb.getLong(p);
+      case FLOAT:
+        return (long) bb.getFloat(p);
+      default:
+        return (long) bb.getDouble(p);
+    }
+  }
+
+  public float getFloat(long elem) {
+    if (kind == FLOAT) return seg(elem).getFloat(pos(elem));
+    return (float) getDouble(elem);
+  }
+
+  public int getInt(long elem) {
+    return (int) getLong(elem);
+  }
+
+  public short getShort(long elem) {
+    return (short) getLong(elem);
+  }
+
+  public byte getByte(long elem) {
+    return (byte) getLong(elem);
+  }
+
+  public char getChar(long elem) {
+    return (char) getLong(elem);
+  }
+
+  public Object getObject(long elem) {
+    switch (kind) {
+      case BYTE: return getByte(elem);
+      case SHORT: return getShort(elem);
+      case INT: return getInt(elem);
+      case LONG: return getLong(elem);
+      case FLOAT: return getFloat(elem);
+      default: return getDouble(elem);
+    }
+  }
+
+  public void setDouble(long elem, double value) {
+    ByteBuffer bb = seg(elem);
+    int p = pos(elem);
+    switch (kind) {
+      case BYTE: bb.put(p, (byte) value); break;
+      case SHORT: bb.putShort(p, (short) value); break;
+      case INT: bb.putInt(p, (int) value); break;
+      case LONG: bb.putLong(p, (long) value); break;
+      case FLOAT: bb.putFloat(p, (float) value); break;
+      default: bb.putDouble(p, value);
+    }
+  }
+
+  public void setLong(long elem, long value) {
+    ByteBuffer bb = seg(elem);
+    int p = pos(elem);
+    switch (kind) {
+      case BYTE: bb.put(p, (byte) value); break;
+      case SHORT: bb.putShort(p, (short) value); break;
+      case INT: bb.putInt(p, (int) value); break;
+      case LONG: bb.putLong(p, value); break;
+      case FLOAT: bb.putFloat(p, (float) value); break;
+      default: bb.putDouble(p, (double) value);
+    }
+  }
+
+  public void setFloat(long elem, float value) {
+    setDouble(elem, value);
+  }
+
+  public void setInt(long elem, int value) {
+    setLong(elem, value);
+  }
+
+  public void setShort(long elem, short value) {
+    setLong(elem, value);
+  }
+
+  public void setByte(long elem, byte value) {
+    setLong(elem, value);
+  }
+
+  public void setChar(long elem, char value) {
+    setLong(elem, value);
+  }
+
+  public void setObject(long elem, Object value) {
+    if ((kind == FLOAT) || (kind == DOUBLE))
+      setDouble(elem, ((Number) value).doubleValue());
+    else
+      setLong(elem, ((Number) value).longValue());
+  }
+
+  ///////////////////////////////////////////////////////////////
+  // Array methods
+
+  public double getDouble(Index i) { return getDouble(elem(i)); }
+  public void setDouble(Index i, double value) { setDouble(elem(i), value); }
+  public float getFloat(Index i) { return getFloat(elem(i)); }
+  public void setFloat(Index i, float value) { setFloat(elem(i), value); }
+  public long getLong(Index i) { return getLong(elem(i)); }
+  public void setLong(Index i, long value) { setLong(elem(i), value); }
+  public int getInt(Index i) { return getInt(elem(i)); }
+  public void setInt(Index i, int value) { setInt(elem(i), value); }
+  public short getShort(Index i) { return getShort(elem(i)); }
+  public void setShort(Index i, short value) { setShort(elem(i), value); }
+  public byte getByte(Index i) { return getByte(elem(i)); }
+  public void setByte(Index i, byte value) { setByte(elem(i), value); }
+  public char getChar(Index i) { return getChar(elem(i)); }
+  public void setChar(Index i, char value) { setChar(elem(i), value); }
+  /** not legal, throw ForbiddenConversionException */
+  public boolean getBoolean(Index i) { throw new ForbiddenConversionException(); }
+  /** not legal, throw ForbiddenConversionException */
+  public void setBoolean(Index i, boolean value) { throw new ForbiddenConversionException(); }
+  public Object getObject(Index i) { return getObject(elem(i)); }
+  public void setObject(Index i, Object value) { setObject(elem(i), value); }
+
+  // trusted, assumes that individual dimension lengths have been checked
+  public double getDouble(int index) { return getDouble((long) index); }
+  public void setDouble(int index, double value) { setDouble((long) index, value); }
+  public float getFloat(int index) { return getFloat((long) index); }
+  public void setFloat(int index, float value) { setFloat((long) index, value); }
+  public long getLong(int index) { return getLong((long) index); }
+  public void setLong(int index, long value) { setLong((long) index, value); }
+  public int getInt(int index) { return getInt((long) index); }
+  public void setInt(int index, int value) { setInt((long) index, value); }
+  public short getShort(int index) { return getShort((long) index); }
+  public void setShort(int index, short value) { setShort((long) index, value); }
+  public byte getByte(int index) { return getByte((long) index); }
+  public void setByte(int index, byte value) { setByte((long) index, value); }
+  public char getChar(int index) { return getChar((long) index); }
+  public void setChar(int index, char value) { setChar((long) index, value); }
+  public boolean getBoolean(int index) { throw new ForbiddenConversionException(); }
+  public void setBoolean(int index, boolean value) { throw new ForbiddenConversionException(); }
+  public Object getObject(int index) { return getObject((long) index); }
+  public void setObject(int index, Object value) { setObject((long) index, value); }
+
+  ///////////////////////////////////////////////////////////////
+
+  // canonical order iterator with a long counter, for more than 2^31 elements
+  private class IteratorLong implements IndexIterator {
+    private long currElement = -1;
+    private final long size = getSize();
+
+    public boolean hasNext() {
+      return currElement < size - 1;
+    }
+
+    public int[] getCurrentCounter() {
+      int[] shape = getShape();
+      int[] counter = new int[rank];
+      long elem = currElement;
+      for (int i = rank - 1; i >= 0; i--) {
+        counter[i] = (int) (elem % shape[i]);
+        elem /= shape[i];
+      }
+      return counter;
+    }
+
+    public String toString() {
+      return "IteratorLong " + currElement;
+    }
+
+    public double getDoubleCurrent() { return getDouble(currElement); }
+    public double getDoubleNext() { return getDouble(++currElement); }
+    public void setDoubleCurrent(double val) { setDouble(currElement, val); }
+    public void setDoubleNext(double val) { setDouble(++currElement, val); }
+
+    public float getFloatCurrent() { return getFloat(currElement); }
+    public float getFloatNext() { return getFloat(++currElement); }
+    public void setFloatCurrent(float val) { setFloat(currElement, val); }
+    public void setFloatNext(float val) { setFloat(++currElement, val); }
+
+    public long getLongCurrent() { return getLong(currElement); }
+    public long getLongNext() { return getLong(++currElement); }
+    public void setLongCurrent(long val) { setLong(currElement, val); }
+    public void setLongNext(long val) { setLong(++currElement, val); }
+
+    public int getIntCurrent() { return getInt(currElement); }
+    public int getIntNext() { return getInt(++currElement); }
+    public void setIntCurrent(int val) { setInt(currElement, val); }
+    public void setIntNext(int val) { setInt(++currElement, val); }
+
+    public short getShortCurrent() { return getShort(currElement); }
+    public short getShortNext() { return getShort(++currElement); }
+    public void setShortCurrent(short val) { setShort(currElement, val); }
+    public void setShortNext(short val) { setShort(++currElement, val); }
+
+    public byte getByteCurrent() { return getByte(currElement); }
+    public byte getByteNext() { return getByte(++currElement); }
+    public void setByteCurrent(byte val) { setByte(currElement, val); }
+    public void setByteNext(byte val) { setByte(++currElement, val); }
+
+    public char getCharCurrent() { return getChar(currElement); }
+    public char getCharNext() { return getChar(++currElement); }
+    public void setCharCurrent(char val) { setChar(currElement, val); }
+    public void setCharNext(char val) { setChar(++currElement, val); }
+
+    public boolean getBooleanCurrent() { throw new ForbiddenConversionException(); }
+    public boolean getBooleanNext() { throw new ForbiddenConversionException(); }
+    public void setBooleanCurrent(boolean val) { throw new ForbiddenConversionException(); }
+    public void setBooleanNext(boolean val) { throw new ForbiddenConversionException(); }
+
+    public Object getObjectCurrent() { return getObject(currElement); }
+    public Object getObjectNext() { return getObject(++currElement); }
+    public void setObjectCurrent(Object val) { setObject(currElement, val); }
+    public void setObjectNext(Object val) { setObject(++currElement, val); }
+
+    public Object next() { return getObject(++currElement); }
+  }
+}
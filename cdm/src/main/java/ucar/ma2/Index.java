@@ -425,6 +425,40 @@ public class Index implements Cloneable {
     return newIndex;
   }
 
+  /**
+   * Call the callback for each run of consecutive storage elements, in logical order.
+   * Inner dimensions that are contiguous in the storage are merged into a single run.
+   *
+   * @param storage  passed to the callback
+   * @param callback call this for each run
+   */
+  void forEachContiguousRun(Object storage, ContiguousRunCallback callback) {
+    if (size == 0) return;
+
+    // merge inner dimensions while they are contiguous
+    int outer = rank;
+    int runLen = 1;
+    while ((outer > 0) && ((stride[outer - 1] == runLen) || (shape[outer - 1] == 1))) {
+      runLen *= shape[outer - 1];
+      outer--;
+    }
+
+    // odometer over the outer dimensions
+    int[] counter = new int[outer];
+    int elem = offset;
+    long nruns = size / runLen;
+    for (long run = 0; run < nruns; run++) {
+      callback.run(storage, elem, runLen);
+      for (int k = outer - 1; k >= 0; k--) {
+        counter[k]++;
+        elem += stride[k];
+        if (counter[k] < shape[k]) break;
+        elem -= stride[k] * shape[k];
+        counter[k] = 0;
+      }
+    }
+  }
+
 
   /**
    * Get the number of dimensions in the array.
@@ -108,6 +108,12 @@ public class IndexConstant extends Index {
     return this;
   }
 
+  @Override
+  void forEachContiguousRun(Object storage, ContiguousRunCallback callback) {
+    for (long i = 0; i < size; i++)
+      callback.run(storage, 0, 1);
+  }
+
   ///////////////////////
 
   IndexIterator getIndexIterator(Array maa) {
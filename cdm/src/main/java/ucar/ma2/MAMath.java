@@ -39,6 +39,7 @@ import ucar.nc2.util.Misc;
  *
  * @author caron
  * @see Index
+ * @see MAMathParallel
  */
 public class MAMath {
 
@@ -0,0 +1,514 @@
+/*
+ * Copyright 1998-2009 University Corporation for Atmospheric Research/Unidata
+ *
+ * Portions of this software were developed by the Unidata Program at the
+ * University Corporation for Atmospheric Research.
+ *
+ * Access and use of this software shall impose the following obligations
+ * and understandings on the user. The user is granted the right, without
+ * any fee or cost, to use, copy, modify, alter, enhance and distribute
+ * this software, and any derivative works thereof, and its supporting
+ * documentation for any purpose whatsoever, provided that this entire
+ * notice appears in all copies of the software, derivative works and
+ * supporting documentation.  Further, UCAR requests that the user credit
+ * UCAR/Unidata in any publications that result from the use of this
+ * software or in any product that includes this software. The names UCAR
+ * and/or Unidata, however, may not be used in any advertising or publicity
+ * to endorse or promote any products or commercial entity unless specific
+ * written permission is obtained from UCAR/Unidata. The user also
+ * understands that UCAR/Unidata is not obligated to provide the user with
+ * any support, consulting, training or assistance of any kind with regard
+ * to the use, operation and performance of this software nor to provide
+ * the user with any updates, revisions, new versions or "bug fixes."
+ *
+ * THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ * INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ * FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ * NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ * WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.ma2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Multithreaded versions of some MAMath reductions and element-wise operations, for large Arrays.
+ * The Arrays are split into blocks, which are done in parallel on an ExecutorService. Arrays with fewer than
+ * the threshold number of elements are done sequentially by MAMath.
+ * <p/>
+ * ArrayBBs with more than 2^31 elements cannot have views, so they are split into ranges of elements.
+ * Arrays in canonical order are split into contiguous ranges of the storage; other logical views are split along
+ * one dimension. Within each block, the reductions loop over contiguous runs of the backing java array.
+ * Sums are added in a different order than MAMath does, so may differ in the last bits.
+ *
+ * @author caron
+ * @see MAMath
+ */
+public class MAMathParallel {
+  static private ExecutorService executor; // lazily created if not set
+  static private int nblocks = Runtime.getRuntime().availableProcessors();
+  static private long threshold = 1000 * 1000;
+
+  /**
+   * Set the ExecutorService used to run the blocks.
+   * By default, a pool of daemon threads, one for each processor, is created when first needed.
+   *
+   * @param exec    use this ExecutorService; if null, use the default
+   * @param nblocks split each Array into this many blocks; must be > 0
+   */
+  static public synchronized void setExecutor(ExecutorService exec, int nblocks) {
+    if (nblocks <= 0)
+      throw new IllegalArgumentException("nblocks must be > 0");
+    MAMathParallel.executor = exec;
+    MAMathParallel.nblocks = nblocks;
+  }
+
+  /**
+   * Arrays with fewer than this many elements are done sequentially. Default is 1 million.
+   *
+   * @param nelems minimum number of elements to do in parallel
+   */
+  static public void setThreshold(long nelems) {
+    threshold = nelems;
+  }
+
+  static private synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(nblocks, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "MAMathParallel");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return executor;
+  }
+
+  /////////////////////////////////////////////////////////////////
+  // reductions
+
+  /**
+   * Find min and max value in this array, getting values as doubles. Skip Double.NaN.
+   *
+   * @param a the array.
+   * @return MinMax
+   * @see MAMath#getMinMax(Array)
+   */
+  public static MAMath.MinMax getMinMax(Array a) {
+    if (!useParallel(a)) return MAMath.getMinMax(a);
+    Reducer r = reduce(a, Reducer.MINMAX, Double.NaN);
+    return new MAMath.MinMax(r.min, r.max);
+  }
+
+  /**
+   * Find min and max value in this array, getting values as doubles. Skip values equal to missingValue.
+   *
+   * @param a            the array.
+   * @param missingValue skip these
+   * @return MinMax
+   * @see MAMath#getMinMaxSkipMissingData(Array, double)
+   */
+  public static MAMath.MinMax getMinMaxSkipMissingData(Array a, double missingValue) {
+    if (!useParallel(a)) return MAMath.getMinMaxSkipMissingData(a, missingValue);
+    Reducer r = reduce(a, Reducer.MINMAX_MISSING, missingValue);
+    return new MAMath.MinMax(r.min, r.max);
+  }
+
+  /**
+   * Sum all of the elements of array a as doubles.
+   *
+   * @param a read values from this Array
+   * @return sum of elements
+   * @see MAMath#sumDouble(Array)
+   */
+  public static double sumDouble(Array a) {
+    if (!useParallel(a)) return MAMath.sumDouble(a);
+    return reduce(a, Reducer.SUM, Double.NaN).sum;
+  }
+
+  /**
+   * Sum all of the elements of array a as doubles, skipping missing values and NaNs.
+   *
+   * @param a            read values from this Array
+   * @param missingValue skip values equal to this, or which are NaNs
+   * @return sum of elements
+   * @see MAMath#sumDoubleSkipMissingData(Array, double)
+   */
+  public static double sumDoubleSkipMissingData(Array a, double missingValue) {
+    if (!useParallel(a)) return MAMath.sumDoubleSkipMissingData(a, missingValue);
+    return reduce(a, Reducer.SUM_MISSING, missingValue).sum;
+  }
+
+  /////////////////////////////////////////////////////////////////
+  // element-wise
+
+  /**
+   * Add elements of two arrays together, allocating the result array.
+   *
+   * @param a add values from here
+   * @param b add values from here
+   * @return result = a + b
+   * @throws IllegalArgumentException      a and b are not conformable
+   * @throws UnsupportedOperationException dont support this data type yet
+   * @see MAMath#add(Array, Array)
+   */
+  public static Array add(Array a, Array b) throws IllegalArgumentException {
+    if (a.getElementType() != double.class)
+      throw new UnsupportedOperationException();
+    Array result = Array.factory(a.getElementType(), a.getShape());
+    addDouble(result, a, b);
+    return result;
+  }
+
+  /**
+   * Add elements of two arrays together as doubles, place sum in the result array.
+   *
+   * @param result result array
+   * @param a      operand
+   * @param b      operand
+   * @throws IllegalArgumentException a,b,and result are not conformable
+   * @see MAMath#addDouble(Array, Array, Array)
+   */
+  public static void addDouble(Array result, Array a, Array b) throws IllegalArgumentException {
+    if (!useParallel(result, a, b)) {
+      MAMath.addDouble(result, a, b);
+      return;
+    }
+
+    if (isLarge(result) || isLarge(a) || isLarge(b)) {
+      if (!isLarge(result) || !isLarge(a) || !isLarge(b)) {
+        MAMath.addDouble(result, a, b);
+        return;
+      }
+      final ArrayBB rbb = (ArrayBB) result, abb = (ArrayBB) a, bbb = (ArrayBB) b;
+      List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+      for (final long[] range : splitRange(result.getSize())) {
+        tasks.add(new Callable<Object>() {
+          public Object call() {
+            for (long i = range[0]; i < range[1]; i++)
+              rbb.setDouble(i, abb.getDouble(i) + bbb.getDouble(i));
+            return null;
+          }
+        });
+      }
+      invokeAll(tasks);
+      return;
+    }
+
+    List<Array> rblocks = split(result, a, b);
+    List<Array> ablocks = split(a, result, b);
+    List<Array> bblocks = split(b, result, a);
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+    for (int i = 0; i < rblocks.size(); i++) {
+      final Array rb = rblocks.get(i), ab = ablocks.get(i), bb = bblocks.get(i);
+      tasks.add(new Callable<Object>() {
+        public Object call() {
+          MAMath.addDouble(rb, ab, bb);
+          return null;
+        }
+      });
+    }
+    invokeAll(tasks);
+  }
+
+  /**
+   * Convert original array to desired type.
+   *
+   * @param org      original array
+   * @param wantType desired type
+   * @return converted data of desired type, or original array if it is already
+   * @see MAMath#convert(Array, DataType)
+   */
+  public static Array convert(Array org, DataType wantType) {
+    if (org == null) return null;
+    if (org.getElementType().equals(wantType.getPrimitiveClassType()))
+      return org;
+    if (!useParallel(org)) return MAMath.convert(org, wantType);
+
+    Array result = isLarge(org) ? ArrayBB.factory(wantType, org.getShape()) : Array.factory(wantType, org.getShape());
+    copy(result, org);
+    return result;
+  }
+
+  /**
+   * Copy array a to array result, the result array will be in canonical order.
+   *
+   * @param result copy to here
+   * @param a      copy from here
+   * @throws IllegalArgumentException a and result are not conformable
+   * @see MAMath#copy(Array, Array)
+   */
+  public static void copy(Array result, Array a) throws IllegalArgumentException {
+    if (!useParallel(result, a)) {
+      MAMath.copy(result, a);
+      return;
+    }
+
+    if (isLarge(result) || isLarge(a)) {
+      if (!isLarge(result) || !isLarge(a)) {
+        MAMath.copy(result, a);
+        return;
+      }
+      final Array from = a, to = result;
+      List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+      for (final long[] range : splitRange(result.getSize())) {
+        tasks.add(new Callable<Object>() {
+          public Object call() {
+            ArrayBB.copyElements(from, range[0], to, range[0], range[1] - range[0]);
+            return null;
+          }
+        });
+      }
+      invokeAll(tasks);
+      return;
+    }
+
+    List<Array> rblocks = split(result, a);
+    List<Array> ablocks = split(a, result);
+    List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+    for (int i = 0; i < rblocks.size(); i++) {
+      final Array rb = rblocks.get(i), ab = ablocks.get(i);
+      tasks.add(new Callable<Object>() {
+        public Object call() {
+          MAMath.copy(rb, ab);
+          return null;
+        }
+      });
+    }
+    invokeAll(tasks);
+  }
+
+  /////////////////////////////////////////////////////////////////
+
+  // large enough to be worth it, and all the same shape
+  static private boolean useParallel(Array a, Array... others) {
+    if ((nblocks < 2) || (a.getSize() < threshold)) return false;
+    for (Array other : others)
+      if (!java.util.Arrays.equals(a.getShape(), other.getShape())) return false;
+    return true;
+  }
+
+  // an ArrayBB with more than 2^31 elements; it has no views, so the storage is in canonical order
+  static private boolean isLarge(Array a) {
+    return (a instanceof ArrayBB) && ((ArrayBB) a).isLarge();
+  }
+
+  // split [0, size) into nblocks ranges of {start, end}
+  static private List<long[]> splitRange(long size) {
+    List<long[]> result = new ArrayList<long[]>(nblocks);
+    for (int i = 0; i < nblocks; i++)
+      result.add(new long[]{size * i / nblocks, size * (i + 1) / nblocks});
+    return result;
+  }
+
+  static private boolean isCanonical(Array a) {
+    return a.getIndexPrivate().isFastIterator() && !a.isConstant() && (a.getSize() <= Integer.MAX_VALUE);
+  }
+
+  /*
+   * Split a into blocks that are views of a. Arrays with the same shape that are split together must all be passed
+   * (in others), so that they are split the same way: if all are in canonical order, into ranges of the storage,
+   * otherwise along the first dimension that has at least nblocks elements (or else the longest dimension).
+   */
+  static private List<Array> split(Array a, Array... others) {
+    boolean canonical = isCanonical(a);
+    for (Array other : others)
+      canonical &= isCanonical(other);
+
+    int[] shape = a.getShape();
+    Array whole = a;
+    int dim = -1;
+    if (canonical) {
+      whole = a.reshapeNoCopy(new int[]{(int) a.getSize()});
+      whole.setUnsigned(a.isUnsigned());
+      dim = 0;
+    } else {
+      for (int i = 0; i < shape.length; i++) {
+        if (shape[i] >= nblocks) {
+          dim = i;
+          break;
+        }
+        if ((dim < 0) || (shape[i] > shape[dim])) dim = i;
+      }
+    }
+
+    List<Array> result = new ArrayList<Array>(nblocks);
+    if ((dim < 0) || (whole.getShape()[dim] < 2)) {
+      result.add(a);
+      return result;
+    }
+
+    int len = whole.getShape()[dim];
+    int n = Math.min(nblocks, len);
+    int[] origin = new int[whole.getRank()];
+    int[] blockShape = whole.getShape();
+    try {
+      for (int i = 0; i < n; i++) {
+        int start = (int) ((long) len * i / n);
+        int end = (int) ((long) len * (i + 1) / n);
+        origin[dim] = start;
+        blockShape[dim] = end - start;
+        Array block = whole.sectionNoReduce(origin, blockShape, null);
+        block.setUnsigned(a.isUnsigned());
+        result.add(block);
+      }
+    } catch (InvalidRangeException e) {
+      throw new IllegalStateException(e); // cant happen
+    }
+    return result;
+  }
+
+  static private Reducer reduce(Array a, final int mode, final double missingValue) {
+    List<Callable<Reducer>> tasks = new ArrayList<Callable<Reducer>>();
+    if (isLarge(a)) {
+      final ArrayBB bb = (ArrayBB) a;
+      for (final long[] range : splitRange(a.getSize())) {
+        tasks.add(new Callable<Reducer>() {
+          public Reducer call() {
+            Reducer r = new Reducer(mode, missingValue, bb.isUnsigned());
+            r.reduce(bb, range[0], range[1]);
+            return r;
+          }
+        });
+      }
+
+    } else {
+      for (final Array block : split(a)) {
+        tasks.add(new Callable<Reducer>() {
+          public Reducer call() {
+            Reducer r = new Reducer(mode, missingValue, block.isUnsigned());
+            r.reduce(block);
+            return r;
+          }
+        });
+      }
+    }
+
+    Reducer total = new Reducer(mode, missingValue, a.isUnsigned());
+    for (Reducer r : invokeAll(tasks)) {
+      total.min = Math.min(total.min, r.min);
+      total.max = Math.max(total.max, r.max);
+      total.sum += r.sum;
+    }
+    return total;
+  }
+
+  static private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+    List<Future<T>> futures;
+    try {
+      futures = getExecutor().invokeAll(tasks);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted");
+    }
+
+    List<T> result = new ArrayList<T>(futures.size());
+    try {
+      for (Future<T> f : futures)
+        result.add(f.get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new IllegalStateException(cause);
+    }
+    return result;
+  }
+
+  // reduces one block, looping over the contiguous runs of its storage
+  static private class Reducer implements ContiguousRunCallback {
+    static final int MINMAX = 0, MINMAX_MISSING = 1, SUM = 2, SUM_MISSING = 3;
+
+    final int mode;
+    final double missingValue;
+    final boolean unsigned;
+    double min = Double.MAX_VALUE, max = -Double.MAX_VALUE, sum = 0;
+
+    Reducer(int mode, double missingValue, boolean unsigned) {
+      this.mode = mode;
+      this.missingValue = missingValue;
+      this.unsigned = unsigned;
+    }
+
+    void reduce(Array block) {
+      Object storage = (block instanceof ArrayBB) ? null : block.getStorage(); // ArrayBB storage is a copy
+      if ((storage instanceof double[]) || (storage instanceof float[]) || (storage instanceof int[]) ||
+          (storage instanceof short[]) || (storage instanceof byte[]) || (storage instanceof long[])) {
+        block.forEachContiguousRun(this);
+      } else {
+        IndexIterator iter = block.getIndexIterator();
+        while (iter.hasNext())
+          accept(iter.getDoubleNext());
+      }
+    }
+
+    // elements [start, end) of a large ArrayBB; getDouble() does the unsigned conversion
+    void reduce(ArrayBB a, long start, long end) {
+      for (long i = start; i < end; i++)
+        accept(a.getDouble(i));
+    }
+
+    // same semantics as the MAMath methods
+    private void accept(double val) {
+      switch (mode) {
+        case MINMAX:
+          if (Double.isNaN(val)) return;
+          if (val > max) max = val;
+          if (val < min) min = val;
+          break;
+        case MINMAX_MISSING:
+          if (val == missingValue) return;
+          if (val > max) max = val;
+          if (val < min) min = val;
+          break;
+        case SUM:
+          sum += val;
+          break;
+        default:
+          if ((val == missingValue) || Double.isNaN(val)) return;
+          sum += val;
+      }
+    }
+
+    public void run(Object storage, int offset, int length) {
+      int end = offset + length;
+      if (storage instanceof double[]) {
+        double[] s = (double[]) storage;
+        for (int i = offset; i < end; i++) accept(s[i]);
+
+      } else if (storage instanceof float[]) {
+        float[] s = (float[]) storage;
+        for (int i = offset; i < end; i++) accept(s[i]);
+
+      } else if (storage instanceof int[]) {
+        int[] s = (int[]) storage;
+        if (unsigned) for (int i = offset; i < end; i++) accept(s[i] & 0xffffffffL);
+        else for (int i = offset; i < end; i++) accept(s[i]);
+
+      } else if (storage instanceof short[]) {
+        short[] s = (short[]) storage;
+        if (unsigned) for (int i = offset; i < end; i++) accept(s[i] & 0xffff);
+        else for (int i = offset; i < end; i++) accept(s[i]);
+
+      } else if (storage instanceof byte[]) {
+        byte[] s = (byte[]) storage;
+        if (unsigned) for (int i = offset; i < end; i++) accept(s[i] & 0xff);
+        else for (int i = offset; i < end; i++) accept(s[i]);
+
+      } else {
+        long[] s = (long[]) storage;
+        for (int i = offset; i < end; i++) accept(s[i]);
+      }
+    }
+  }
+
+}
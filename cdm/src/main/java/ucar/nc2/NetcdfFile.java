@@ -36,6 +36,8 @@ import ucar.unidata.util.EscapeStrings;
 import ucar.ma2.*;
 import ucar.unidata.io.UncompressInputStream;
 import ucar.unidata.io.InMemoryRandomAccessFile;
+import ucar.unidata.io.MMapRandomAccessFile;
+import ucar.unidata.io.DeflateRandomAccessFile;
 import ucar.unidata.io.bzip2.CBZip2InputStream;
 import ucar.nc2.util.DiskCache;
 import ucar.nc2.util.CancelTask;
@@ -101,6 +103,7 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable {
   static boolean loadWarnings = false;
 
   static private boolean userLoads = false;
+  static private boolean readCompressedDirectly = false;
 
   // IOSPs are loaded by reflection
   static {
@@ -413,6 +416,18 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable {
     N3iosp.setProperty(name, value);
   }
 
+  /**
+   * Read gzip and zip files through a block index, decompressing only the blocks that are read,
+   * instead of writing an uncompressed copy to the DiskCache. Default is false.
+   * The index can be persisted with BlockCompressedRandomAccessFile.setIndexCache().
+   * Other compressed files are still uncompressed to the DiskCache.
+   *
+   * @param b true to read gzip and zip files directly
+   */
+  static public void setReadCompressedDirectly(boolean b) {
+    readCompressedDirectly = b;
+  }
+
   /**
    * Open an existing netcdf file (read only).
    *
@@ -472,8 +487,26 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable {
    * @throws IOException if error
    */
   static public NetcdfFile open(String location, int buffer_size, ucar.nc2.util.CancelTask cancelTask, Object iospMessage) throws IOException {
+    return open(location, buffer_size, cancelTask, iospMessage, false);
+  }
 
-    ucar.unidata.io.RandomAccessFile raf = getRaf(location, buffer_size);
+  /**
+   * Open an existing file (read only), optionally memory-mapping it.
+   * Otherwise same as open(String location, int buffer_size, CancelTask cancelTask, Object iospMessage).
+   *
+   * @param location    location of file.
+   * @param buffer_size RandomAccessFile buffer size, if <= 0, use default size
+   * @param cancelTask  allow task to be cancelled; may be null.
+   * @param iospMessage special iosp tweaking (sent before open is called), may be null
+   * @param useMMap     if true, local files are read through a ucar.unidata.io.MMapRandomAccessFile.
+   *                    Ignored for remote files.
+   * @return NetcdfFile object, or null if cant find IOServiceProver
+   * @throws IOException if error
+   */
+  static public NetcdfFile open(String location, int buffer_size, ucar.nc2.util.CancelTask cancelTask, Object iospMessage,
+                                boolean useMMap) throws IOException {
+
+    ucar.unidata.io.RandomAccessFile raf = getRaf(location, buffer_size, useMMap);
 
     try {
       return open(raf, location, cancelTask, iospMessage);
@@ -560,6 +593,10 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable {
   }
 
   static private ucar.unidata.io.RandomAccessFile getRaf(String location, int buffer_size) throws IOException {
+    return getRaf(location, buffer_size, false);
+  }
+
+  static private ucar.unidata.io.RandomAccessFile getRaf(String location, int buffer_size, boolean useMMap) throws IOException {
 
     String uriString = location.trim();
 
@@ -588,6 +625,11 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable {
         uriString = StringUtil.unescape(uriString.substring(5));  // 11/10/2010 from erussell@ngs.org
       }
 
+      if (readCompressedDirectly && !useMMap) {
+        raf = openCompressed(uriString, buffer_size);
+        if (raf != null) return raf;
+      }
+
       String uncompressedFileName = null;
       try {
         uncompressedFileName = makeUncompressed(uriString);
@@ -598,19 +640,40 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable {
 
       if (uncompressedFileName != null) {
         // open uncompressed file as a RandomAccessFile.
-        raf = new ucar.unidata.io.RandomAccessFile(uncompressedFileName, "r", buffer_size);
-        //raf = new ucar.unidata.io.MMapRandomAccessFile(uncompressedFileName, "r");
+        raf = useMMap ? new MMapRandomAccessFile(uncompressedFileName) :
+            new ucar.unidata.io.RandomAccessFile(uncompressedFileName, "r", buffer_size);
 
       } else {
         // normal case - not compressed
-        raf = new ucar.unidata.io.RandomAccessFile(uriString, "r", buffer_size);
-        //raf = new ucar.unidata.io.MMapRandomAccessFile(uriString, "r");
+        raf = useMMap ? new MMapRandomAccessFile(uriString) :
+            new ucar.unidata.io.RandomAccessFile(uriString, "r", buffer_size);
       }
     }
 
     return raf;
   }
 
+  // read a gzip or zip file through a block index, return null if its not one
+  static private ucar.unidata.io.RandomAccessFile openCompressed(String filename, int buffer_size) {
+    int pos = filename.lastIndexOf('.');
+    if (pos < 0) return null;
+
+    String suffix = filename.substring(pos + 1);
+    if (!suffix.equalsIgnoreCase("zip") && !suffix.equalsIgnoreCase("gzip") && !suffix.equalsIgnoreCase("gz"))
+      return null;
+    if (!new File(filename).exists())
+      return null;
+
+    try {
+      ucar.unidata.io.RandomAccessFile raf = new DeflateRandomAccessFile(filename, buffer_size);
+      if (debugCompress) System.out.println("opened compressed " + filename);
+      return raf;
+    } catch (IOException e) {
+      log.warn("Failed to open compressed " + filename + " err= " + e.getMessage() + "; try to uncompress it.");
+      return null;
+    }
+  }
+
   static private String makeUncompressed(String filename) throws Exception {
     // see if its a compressed file
     int pos = filename.lastIndexOf('.');
@@ -859,6 +922,7 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable {
   private boolean immutable = false;
 
   protected ucar.nc2.util.cache.FileCache cache;
+  private volatile boolean sharedReads = false;
   protected IOServiceProvider spi;
 
   // "global view" is derived from the group information.
@@ -883,7 +947,7 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable {
    */
   public synchronized void close() throws java.io.IOException {
     if (cache != null) {
-      unlocked = true;
+      if (!cache.isShared()) unlocked = true; // a shared file may still be in use by others
       cache.release(this);
 
     } else {
@@ -906,6 +970,22 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable {
     this.cache = cache;
   }
 
+  /**
+   * Public by accident.
+   * Serialize reads through the iosp, because this file may be used by many threads at once, eg it is wrapped by
+   * a NetcdfDataset that is shared through a FileCache. Files in a shared FileCache are always serialized.
+   *
+   * @param sharedReads if true, serialize reads through the iosp
+   */
+  public void setSharedReads(boolean sharedReads) {
+    this.sharedReads = sharedReads;
+  }
+
+  // most iosps are not thread safe, so reads are serialized when this file may be used by many threads at once
+  private boolean isSharedReads() {
+    return sharedReads || ((cache != null) && cache.isShared());
+  }
+
   /**
    * Public by accident.
    * Get the name used in the cache, if any.
@@ -1863,7 +1943,14 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable {
     if (spi == null) {
       throw new IOException("BAD: missing spi: " + v.getFullName());
     }
-    Array result = spi.readData(v, ranges);
+    Array result;
+    if (isSharedReads()) {
+      synchronized (spi) {
+        result = spi.readData(v, ranges);
+      }
+    } else {
+      result = spi.readData(v, ranges);
+    }
     result.setUnsigned(v.isUnsigned());
     return result;
   }
@@ -1892,9 +1979,13 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable {
 
     if (spi == null)
       return IospHelper.readSection(cer);
-    else
-      // allow iosp to optimize
+
+    // allow iosp to optimize
+    if (!isSharedReads())
+      return spi.readSection(cer);
+    synchronized (spi) {
       return spi.readSection(cer);
+    }
   }
 
 
@@ -1920,12 +2011,67 @@ public class NetcdfFile implements ucar.nc2.util.cache.FileCacheable {
     if ((spi == null) || v.hasCachedData())
       return IospHelper.copyToByteChannel(v.read(section), wbc);
 
-    return spi.readToByteChannel(v, section, wbc);
+    if (!isSharedReads())
+      return spi.readToByteChannel(v, section, wbc);
+    synchronized (spi) {
+      return spi.readToByteChannel(v, section, wbc);
+    }
   }
 
-
+  /*
+   * When isSharedReads(), each call of the iterator is serialized with the other reads through the iosp.
+   * The iterator itself is not safe to use concurrently with other readers of the same file if the iosp keeps its
+   * position in the file between calls, eg Ghcnm, IgraPor, Uspln and Nldn.
+   */
   protected StructureDataIterator getStructureIterator(Structure s, int bufferSize) throws java.io.IOException {
-    return spi.getStructureIterator(s, bufferSize);
+    if (!isSharedReads())
+      return spi.getStructureIterator(s, bufferSize);
+    synchronized (spi) {
+      return new SynchronizedStructureDataIterator(spi.getStructureIterator(s, bufferSize), spi);
+    }
+  }
+
+  static private class SynchronizedStructureDataIterator implements StructureDataIterator {
+    private final StructureDataIterator delegate;
+    private final Object lock;
+
+    SynchronizedStructureDataIterator(StructureDataIterator delegate, Object lock) {
+      this.delegate = delegate;
+      this.lock = lock;
+    }
+
+    public boolean hasNext() throws IOException {
+      synchronized (lock) {
+        return delegate.hasNext();
+      }
+    }
+
+    public StructureData next() throws IOException {
+      synchronized (lock) {
+        return delegate.next();
+      }
+    }
+
+    public void setBufferSize(int bytes) {
+      synchronized (lock) {
+        delegate.setBufferSize(bytes);
+      }
+    }
+
+    public StructureDataIterator reset() {
+      StructureDataIterator result;
+      synchronized (lock) {
+        result = delegate.reset();
+      }
+      if (result == null) return null; // cant be reset
+      return (result == delegate) ? this : new SynchronizedStructureDataIterator(result, lock);
+    }
+
+    public int getCurrentRecno() {
+      synchronized (lock) {
+        return delegate.getCurrentRecno();
+      }
+    }
   }
 
   /* public long readToByteChannel(ucar.nc2.Variable v, WritableByteChannel wbc) throws java.io.IOException {
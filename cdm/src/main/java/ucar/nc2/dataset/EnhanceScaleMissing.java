@@ -201,6 +201,28 @@ public interface EnhanceScaleMissing {
    */
   public Array convertScaleOffsetMissing(Array data) throws IOException;
 
+  /**
+   * Convert data using scale and offset (if hasScaleOffset), and unsigned and missing data (if useNaNs) into
+   * a caller supplied array, in logical order. The result may be the storage of data,
+   * if data is a double Array in canonical order, to convert in place.
+   * @param data convert this; raw data as read from the original variable
+   * @param result put converted values here, must have room for data.getSize() values starting at offset
+   * @param offset starting position in result
+   * @return result
+   */
+  public double[] convertScaleOffsetMissing(Array data, double[] result, int offset);
+
+  /**
+   * Convert data using scale and offset (if hasScaleOffset), and unsigned and missing data (if useNaNs) into
+   * a caller supplied array, in logical order. The result may be the storage of data,
+   * if data is a float Array in canonical order, to convert in place.
+   * @param data convert this; raw data as read from the original variable
+   * @param result put converted values here, must have room for data.getSize() values starting at offset
+   * @param offset starting position in result
+   * @return result
+   */
+  public float[] convertScaleOffsetMissing(Array data, float[] result, int offset);
+
   /** Convert this byte value to a double, using scale/offset/missing value if applicable */
   public double convertScaleOffsetMissing(byte value);
   /** Convert this short value to a double, using scale/offset/missing value if applicable */
@@ -78,6 +78,8 @@ class EnhanceScaleMissingImpl implements EnhanceScaleMissing {
 
   private boolean isUnsigned;
 
+  private volatile Kernel kernel; // lazily created, reset when the missing data options change
+
 
   /**
    * Constructor, when you dont want anything done.
@@ -428,6 +430,7 @@ class EnhanceScaleMissingImpl implements EnhanceScaleMissing {
    */
   public void setUseNaNs(boolean useNaNs) {
     this.useNaNs = useNaNs;
+    this.kernel = null;
   }
 
   /**
@@ -442,6 +445,7 @@ class EnhanceScaleMissingImpl implements EnhanceScaleMissing {
    */
   public void setFillValueIsMissing(boolean b) {
     this.fillValueIsMissing = b;
+    this.kernel = null;
   }
 
   /**
@@ -449,6 +453,7 @@ class EnhanceScaleMissingImpl implements EnhanceScaleMissing {
    */
   public void setInvalidDataIsMissing(boolean b) {
     this.invalidDataIsMissing = b;
+    this.kernel = null;
   }
 
   /**
@@ -456,6 +461,7 @@ class EnhanceScaleMissingImpl implements EnhanceScaleMissing {
    */
   public void setMissingDataIsMissing(boolean b) {
     this.missingDataIsMissing = b;
+    this.kernel = null;
   }
 
   /**
@@ -617,6 +623,139 @@ class EnhanceScaleMissingImpl implements EnhanceScaleMissing {
     return data;
   }
 
+  public double[] convertScaleOffsetMissing(Array data, double[] result, int offset) {
+    Kernel k = getKernel();
+    if (k.accepts(data))
+      data.forEachContiguousRun(k.newRun(result, null, offset));
+    else {
+      IndexIterator iter = data.getIndexIterator();
+      while (iter.hasNext())
+        result[offset++] = convertScaleOffsetMissing(iter.getDoubleNext());
+    }
+    return result;
+  }
+
+  public float[] convertScaleOffsetMissing(Array data, float[] result, int offset) {
+    Kernel k = getKernel();
+    if (k.accepts(data))
+      data.forEachContiguousRun(k.newRun(null, result, offset));
+    else {
+      IndexIterator iter = data.getIndexIterator();
+      while (iter.hasNext())
+        result[offset++] = (float) convertScaleOffsetMissing(iter.getDoubleNext());
+    }
+    return result;
+  }
+
+  private Kernel getKernel() {
+    Kernel k = kernel;
+    if (k == null)
+      kernel = k = new Kernel();
+    return k;
+  }
+
+  /*
+   * Converts runs of packed data to float or double, with the scale/offset, unsigned and missing data options
+   * fixed when it is created, so the inner loops do no per-element option tests.
+   * The missing value tests are the same as isMissing_().
+   */
+  private class Kernel {
+    private final double scale, offset;
+    private final boolean unsigned, checkMissing;
+    private final double lo, hi; // valid range, infinite if not used
+    private final double fill;   // NaN if not used, which never compares equal
+    private final double[] missing; // empty if not used
+
+    Kernel() {
+      this.scale = hasScaleOffset ? EnhanceScaleMissingImpl.this.scale : 1.0;
+      this.offset = hasScaleOffset ? EnhanceScaleMissingImpl.this.offset : 0.0;
+      this.unsigned = hasScaleOffset && isUnsigned; // like convertScaleOffsetMissing(byte), only widened when unpacking
+      this.checkMissing = useNaNs && hasMissing();
+
+      boolean useMin = invalidDataIsMissing && (hasValidRange || hasValidMin);
+      boolean useMax = invalidDataIsMissing && (hasValidRange || hasValidMax);
+      this.lo = useMin ? valid_min : Double.NEGATIVE_INFINITY;
+      this.hi = useMax ? valid_max : Double.POSITIVE_INFINITY;
+      this.fill = (fillValueIsMissing && hasFillValue) ? fillValue : Double.NaN;
+      this.missing = (missingDataIsMissing && hasMissingValue) ? missingValue : new double[0];
+    }
+
+    boolean accepts(Array data) {
+      if (data instanceof ArrayBB) return false; // its storage is a copy, and its runs are ByteBuffers
+      Object storage = data.getStorage();
+      return (storage instanceof double[]) || (storage instanceof float[]) || (storage instanceof long[]) ||
+          (storage instanceof int[]) || (storage instanceof short[]) || (storage instanceof byte[]);
+    }
+
+    Run newRun(double[] dd, float[] ff, int pos) {
+      return new Run(dd, ff, pos);
+    }
+
+    private boolean isMissing(double val) {
+      if ((val < lo) || (val > hi) || (val == fill)) return true;
+      for (double mv : missing)
+        if (ucar.nc2.util.Misc.closeEnough(val, mv)) return true;
+      return false;
+    }
+
+    // convert one packed value, that has been widened to double
+    private double convert(double packed) {
+      double val = scale * packed + offset;
+      return checkMissing && isMissing(val) ? Double.NaN : val;
+    }
+
+    // writes the converted values of each run into dd or ff
+    private class Run implements ContiguousRunCallback {
+      private final double[] dd; // exactly one of dd, ff is not null
+      private final float[] ff;
+      private int pos;
+
+      Run(double[] dd, float[] ff, int pos) {
+        this.dd = dd;
+        this.ff = ff;
+        this.pos = pos;
+      }
+
+      public void run(Object storage, int start, int length) {
+        int end = start + length;
+        if (storage instanceof short[]) {
+          short[] s = (short[]) storage;
+          int mask = unsigned ? 0xffff : -1;
+          if (dd != null) for (int i = start, j = pos; i < end; i++, j++) dd[j] = convert(s[i] & mask);
+          else for (int i = start, j = pos; i < end; i++, j++) ff[j] = (float) convert(s[i] & mask);
+
+        } else if (storage instanceof byte[]) {
+          byte[] s = (byte[]) storage;
+          int mask = unsigned ? 0xff : -1;
+          if (dd != null) for (int i = start, j = pos; i < end; i++, j++) dd[j] = convert(s[i] & mask);
+          else for (int i = start, j = pos; i < end; i++, j++) ff[j] = (float) convert(s[i] & mask);
+
+        } else if (storage instanceof int[]) {
+          int[] s = (int[]) storage;
+          long mask = unsigned ? 0xffffffffL : -1L;
+          if (dd != null) for (int i = start, j = pos; i < end; i++, j++) dd[j] = convert(s[i] & mask);
+          else for (int i = start, j = pos; i < end; i++, j++) ff[j] = (float) convert(s[i] & mask);
+
+        } else if (storage instanceof float[]) {
+          float[] s = (float[]) storage;
+          if (dd != null) for (int i = start, j = pos; i < end; i++, j++) dd[j] = convert(s[i]);
+          else for (int i = start, j = pos; i < end; i++, j++) ff[j] = (float) convert(s[i]);
+
+        } else if (storage instanceof double[]) {
+          double[] s = (double[]) storage;
+          if (dd != null) for (int i = start, j = pos; i < end; i++, j++) dd[j] = convert(s[i]);
+          else for (int i = start, j = pos; i < end; i++, j++) ff[j] = (float) convert(s[i]);
+
+        } else {
+          long[] s = (long[]) storage;
+          if (dd != null) for (int i = start, j = pos; i < end; i++, j++) dd[j] = convert(s[i]);
+          else for (int i = start, j = pos; i < end; i++, j++) ff[j] = (float) convert(s[i]);
+        }
+        pos += length;
+      }
+    }
+  }
+
   /**
    * Convert Data with scale and offset.
    * Also translate missing data to NaNs if useNaNs = true.
@@ -629,6 +768,15 @@ class EnhanceScaleMissingImpl implements EnhanceScaleMissing {
     if (debugRead) System.out.println("convertScaleOffset ");
 
     Array out = Array.factory(convertedDataType.getPrimitiveClassType(), in.getShape());
+    Kernel k = getKernel();
+    if ((convertedDataType == DataType.DOUBLE) && k.accepts(in)) {
+      in.forEachContiguousRun(k.newRun((double[]) out.getStorage(), null, 0));
+      return out;
+    } else if ((convertedDataType == DataType.FLOAT) && k.accepts(in)) {
+      in.forEachContiguousRun(k.newRun(null, (float[]) out.getStorage(), 0));
+      return out;
+    }
+
     IndexIterator iterIn = in.getIndexIterator();
     IndexIterator iterOut = out.getIndexIterator();
 
@@ -685,6 +833,21 @@ class EnhanceScaleMissingImpl implements EnhanceScaleMissing {
   private Array convertMissing(Array in) {
     if (debugRead) System.out.println("convertMissing ");
 
+    // in place, using the storage of each run as the result
+    Object storage = (in instanceof ArrayBB) ? null : in.getStorage(); // ArrayBB storage is a copy
+    if ((storage instanceof double[]) || (storage instanceof float[])) {
+      final Kernel k = getKernel();
+      in.forEachContiguousRun(new ContiguousRunCallback() {
+        public void run(Object storage, int start, int length) {
+          if (storage instanceof double[])
+            k.newRun((double[]) storage, null, start).run(storage, start, length);
+          else
+            k.newRun(null, (float[]) storage, start).run(storage, start, length);
+        }
+      });
+      return in;
+    }
+
     IndexIterator iterIn = in.getIndexIterator();
     if (in.getElementType() == double.class) {
       while (iterIn.hasNext()) {
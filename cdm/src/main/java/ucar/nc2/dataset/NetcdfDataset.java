@@ -1008,6 +1008,21 @@ public class NetcdfDataset extends ucar.nc2.NetcdfFile {
     return null;
   }
 
+  // reads of a shared dataset go through orgFile, which is not in the cache itself
+  @Override
+  public void setFileCache(FileCache cache) {
+    super.setFileCache(cache);
+    if ((orgFile != null) && (cache != null) && cache.isShared())
+      orgFile.setSharedReads(true);
+  }
+
+  @Override
+  public void setSharedReads(boolean sharedReads) {
+    super.setSharedReads(sharedReads);
+    if (orgFile != null)
+      orgFile.setSharedReads(sharedReads);
+  }
+
   /**
    * Close all resources (files, sockets, etc) associated with this dataset.
    * If the underlying file was acquired, it will be released, otherwise closed.
@@ -1017,7 +1032,7 @@ public class NetcdfDataset extends ucar.nc2.NetcdfFile {
     if (agg != null) agg.persistWrite(); // LOOK  maybe only on real close ??
 
     if (cache != null) {
-      unlocked = true;
+      if (!cache.isShared()) unlocked = true; // a shared file may still be in use by others
       cache.release(this);
 
     } else {
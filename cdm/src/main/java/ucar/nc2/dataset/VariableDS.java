@@ -340,6 +340,14 @@ public class VariableDS extends ucar.nc2.Variable implements VariableEnhanced, E
     return scaleMissingProxy.convertScaleOffsetMissing( data);
   }
 
+  public double[] convertScaleOffsetMissing(Array data, double[] result, int offset) {
+    return scaleMissingProxy.convertScaleOffsetMissing( data, result, offset);
+  }
+
+  public float[] convertScaleOffsetMissing(Array data, float[] result, int offset) {
+    return scaleMissingProxy.convertScaleOffsetMissing( data, result, offset);
+  }
+
   public double getValidMax() {
     return scaleMissingProxy.getValidMax();
   }
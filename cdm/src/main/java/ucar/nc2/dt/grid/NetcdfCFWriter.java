@@ -33,8 +33,7 @@
 package ucar.nc2.dt.grid;
 
 import ucar.unidata.geoloc.LatLonRect;
-import ucar.unidata.geoloc.Projection;
-import ucar.unidata.geoloc.ProjectionPointImpl;
+import ucar.unidata.geoloc.ProjectionImpl;
 import ucar.unidata.geoloc.LatLonPointImpl;
 import ucar.unidata.geoloc.projection.LatLonProjection;
 import ucar.nc2.*;
@@ -159,7 +158,7 @@ public class NetcdfCFWriter {
 
       // optional lat/lon
       if (addLatLon) {
-        Projection proj = gcs.getProjection();
+        ProjectionImpl proj = gcs.getProjection();
         if ((null != proj) && !(proj instanceof LatLonProjection)) {
           addLatLon2D(ncd, varList, proj, gcs.getXHorizAxis(), gcs.getYHorizAxis());
           addLatLon = false;
@@ -279,7 +278,7 @@ public class NetcdfCFWriter {
     ctv.addAttribute(new Attribute(att.getName(), val));
   }
 
-  private void addLatLon2D(NetcdfFile ncfile, List<Variable> varList, Projection proj,
+  private void addLatLon2D(NetcdfFile ncfile, List<Variable> varList, ProjectionImpl proj,
           CoordinateAxis xaxis, CoordinateAxis yaxis) throws IOException {
 
     double[] xData = (double[]) xaxis.read().get1DJavaArray(double.class);
@@ -309,18 +308,9 @@ public class NetcdfCFWriter {
     int ny = yData.length;
 
     // create the data
-    ProjectionPointImpl projPoint = new ProjectionPointImpl();
-    LatLonPointImpl latlonPoint = new LatLonPointImpl();
-    double[] latData = new double[nx * ny];
-    double[] lonData = new double[nx * ny];
-    for (int i = 0; i < ny; i++) {
-      for (int j = 0; j < nx; j++) {
-        projPoint.setLocation(xData[j], yData[i]);
-        proj.projToLatLon(projPoint, latlonPoint);
-        latData[i * nx + j] = latlonPoint.getLatitude();
-        lonData[i * nx + j] = latlonPoint.getLongitude();
-      }
-    }
+    double[][] latlonData = proj.projToLatLonGrid(xData, yData);
+    double[] latData = latlonData[0];
+    double[] lonData = latlonData[1];
     Array latDataArray = Array.factory(DataType.DOUBLE, new int[]{ny, nx}, latData);
     latVar.setCachedData(latDataArray, false);
 
@@ -0,0 +1,419 @@
+/*
+ * Copyright 1998-2009 University Corporation for Atmospheric Research/Unidata
+ *
+ * Portions of this software were developed by the Unidata Program at the
+ * University Corporation for Atmospheric Research.
+ *
+ * Access and use of this software shall impose the following obligations
+ * and understandings on the user. The user is granted the right, without
+ * any fee or cost, to use, copy, modify, alter, enhance and distribute
+ * this software, and any derivative works thereof, and its supporting
+ * documentation for any purpose whatsoever, provided that this entire
+ * notice appears in all copies of the software, derivative works and
+ * supporting documentation.  Further, UCAR requests that the user credit
+ * UCAR/Unidata in any publications that result from the use of this
+ * software or in any product that includes this software. The names UCAR
+ * and/or Unidata, however, may not be used in any advertising or publicity
+ * to endorse or promote any products or commercial entity unless specific
+ * written permission is obtained from UCAR/Unidata. The user also
+ * understands that UCAR/Unidata is not obligated to provide the user with
+ * any support, consulting, training or assistance of any kind with regard
+ * to the use, operation and performance of this software nor to provide
+ * the user with any updates, revisions, new versions or "bug fixes."
+ *
+ * THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ * INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ * FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ * NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ * WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.ft.point;
+
+import ucar.nc2.units.DateRange;
+import ucar.nc2.util.DiskCache;
+import ucar.unidata.geoloc.LatLonPointImpl;
+import ucar.unidata.geoloc.LatLonRect;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A spatio-temporal index of the records of a point feature collection.
+ * The records are binned into lat/lon cells and time bins, and each bin keeps the runs of record numbers that
+ * fall into it. A subset query then reads only the records in the bins that intersect the bounding box and date range;
+ * these are a superset of the wanted points, so the caller must still filter them.
+ * <p/>
+ * The index is built with one pass through the collection, and may be saved in a sidecar file next to the data file
+ * (or in the DiskCache if that directory is not writeable). A saved index is used only if the data file has not
+ * changed since it was written.
+ *
+ * @author caron
+ */
+public class PointFeatureIndex {
+  static private org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(PointFeatureIndex.class);
+
+  static public final String SUFFIX = ".pidx";
+  static private final int MAGIC = 0x50494458; // "PIDX"
+  static private final int VERSION = 1;
+
+  static private boolean useIndex = false;
+  static private double defaultCellSize = 5.0; // degrees
+  static private int defaultTimeBins = 64;
+
+  /**
+   * Set whether point collections should build and use a spatio-temporal index for subset queries.
+   * Default is false.
+   *
+   * @param b true to use an index
+   */
+  static public void setUseIndex(boolean b) {
+    useIndex = b;
+  }
+
+  static public boolean getUseIndex() {
+    return useIndex;
+  }
+
+  /**
+   * Set the bin sizes used by indexes built after this call.
+   *
+   * @param cellDegrees size of a lat/lon cell in degrees, default 5
+   * @param ntimeBins   number of bins to divide the time range of the collection into, default 64
+   */
+  static public void setBinSize(double cellDegrees, int ntimeBins) {
+    if ((cellDegrees < .1) || (cellDegrees > 180) || (ntimeBins < 1) || (ntimeBins > 10000))
+      throw new IllegalArgumentException("cellDegrees must be in [.1, 180], ntimeBins in [1, 10000]");
+    defaultCellSize = cellDegrees;
+    defaultTimeBins = ntimeBins;
+  }
+
+  /**
+   * Open the saved index of a data file.
+   *
+   * @param location location of the data file
+   * @return the index, or null if there is none, or the data file has changed since the index was written
+   */
+  static public PointFeatureIndex open(String location) {
+    File dataFile = new File(location);
+    if (!dataFile.exists()) return null;
+
+    File indexFile = DiskCache.getFile(location + SUFFIX, false);
+    if (!indexFile.exists()) return null;
+
+    PointFeatureIndex index;
+    try {
+      index = read(indexFile);
+    } catch (IOException e) {
+      log.warn("PointFeatureIndex: cant read " + indexFile.getPath() + " " + e.getMessage());
+      return null;
+    }
+
+    if ((index == null) || (index.dataLength != dataFile.length()) || (index.dataLastModified != dataFile.lastModified())) {
+      log.debug("PointFeatureIndex: out of date " + indexFile.getPath());
+      return null;
+    }
+    return index;
+  }
+
+  ////////////////////////////////////////////////////////////////
+
+  private final double cellSize;
+  private final int nlat, nlon;
+  private final long startMillis, binMillis;
+  private final int ntime;
+
+  private final long[] keys; // nonempty bins, ascending
+  private final int[][] runs; // for each bin, pairs of (start, count) record numbers
+
+  private long dataLength, dataLastModified;
+
+  private PointFeatureIndex(double cellSize, long startMillis, long binMillis, int ntime, long[] keys, int[][] runs) {
+    this.cellSize = cellSize;
+    this.nlat = (int) Math.ceil(180.0 / cellSize);
+    this.nlon = (int) Math.ceil(360.0 / cellSize);
+    this.startMillis = startMillis;
+    this.binMillis = binMillis;
+    this.ntime = ntime;
+    this.keys = keys;
+    this.runs = runs;
+  }
+
+  private int latIndex(double lat) {
+    int i = (int) ((lat + 90.0) / cellSize);
+    return Math.max(0, Math.min(nlat - 1, i));
+  }
+
+  private int lonIndex(double lon) {
+    int i = (int) (LatLonPointImpl.lonNormal360(lon) / cellSize);
+    return Math.max(0, Math.min(nlon - 1, i));
+  }
+
+  private int timeIndex(long millis) {
+    long t = (millis - startMillis) / binMillis;
+    return (int) Math.max(0, Math.min(ntime - 1, t));
+  }
+
+  private long makeKey(int time, int lat, int lon) {
+    return ((long) time * nlat + lat) * nlon + lon;
+  }
+
+  /**
+   * Find the records that may be inside the bounding box and date range.
+   *
+   * @param bb        bounding box, may be null for all
+   * @param dateRange date range, may be null for all
+   * @return pairs of (start, count) record numbers, ascending and not overlapping
+   */
+  public int[] findRecords(LatLonRect bb, DateRange dateRange) {
+    int lat0 = 0, lat1 = nlat - 1;
+    boolean[] lonWanted = new boolean[nlon];
+    if ((bb == null) || (bb.getWidth() >= 360.0 - cellSize)) {
+      Arrays.fill(lonWanted, true);
+    } else {
+      int i = lonIndex(bb.getLonMin());
+      int iend = lonIndex(bb.getLonMin() + bb.getWidth());
+      while (true) {
+        lonWanted[i] = true;
+        if (i == iend) break;
+        i = (i + 1) % nlon;
+      }
+    }
+    if (bb != null) {
+      lat0 = latIndex(bb.getLatMin());
+      lat1 = latIndex(bb.getLatMax());
+    }
+
+    int time0 = 0, time1 = ntime - 1;
+    if (dateRange != null) {
+      long start = dateRange.getStart().getDate().getTime();
+      long end = dateRange.getEnd().getDate().getTime();
+      if ((end < startMillis) || (start >= startMillis + ntime * binMillis))
+        return new int[0];
+      time0 = timeIndex(start);
+      time1 = timeIndex(end);
+    }
+
+    List<int[]> want = new ArrayList<int[]>();
+    int total = 0;
+    for (int k = 0; k < keys.length; k++) {
+      long key = keys[k];
+      int lon = (int) (key % nlon);
+      int lat = (int) ((key / nlon) % nlat);
+      int time = (int) (key / nlon / nlat);
+      if ((time < time0) || (time > time1) || (lat < lat0) || (lat > lat1) || !lonWanted[lon])
+        continue;
+      want.add(runs[k]);
+      total += runs[k].length;
+    }
+
+    // merge the runs of all the bins, joining adjacent ones
+    int[] starts = new int[total / 2];
+    int[] counts = new int[total / 2];
+    long[] order = new long[total / 2];
+    int n = 0;
+    for (int[] r : want) {
+      for (int i = 0; i < r.length; i += 2, n++)
+        order[n] = ((long) r[i] << 32) | (r[i + 1] & 0xffffffffL);
+    }
+    Arrays.sort(order);
+
+    int nmerged = 0;
+    for (int i = 0; i < n; i++) {
+      int start = (int) (order[i] >>> 32);
+      int count = (int) order[i];
+      if ((nmerged > 0) && (starts[nmerged - 1] + counts[nmerged - 1] == start)) {
+        counts[nmerged - 1] += count;
+      } else {
+        starts[nmerged] = start;
+        counts[nmerged] = count;
+        nmerged++;
+      }
+    }
+
+    int[] result = new int[2 * nmerged];
+    for (int i = 0; i < nmerged; i++) {
+      result[2 * i] = starts[i];
+      result[2 * i + 1] = counts[i];
+    }
+    return result;
+  }
+
+  /**
+   * Save the index in a sidecar file of the data file, so it can be found by open(location).
+   *
+   * @param location location of the data file, must be a local file
+   * @return true if the index was saved
+   */
+  public boolean save(String location) {
+    File dataFile = new File(location);
+    if (!dataFile.exists()) return false;
+    dataLength = dataFile.length();
+    dataLastModified = dataFile.lastModified();
+
+    File indexFile = DiskCache.getFile(location + SUFFIX, false);
+    try {
+      write(indexFile);
+      return true;
+    } catch (IOException e) {
+      log.warn("PointFeatureIndex: cant write " + indexFile.getPath() + " " + e.getMessage());
+      indexFile.delete();
+      return false;
+    }
+  }
+
+  private void write(File indexFile) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(dataLength);
+      out.writeLong(dataLastModified);
+      out.writeDouble(cellSize);
+      out.writeLong(startMillis);
+      out.writeLong(binMillis);
+      out.writeInt(ntime);
+      out.writeInt(keys.length);
+      for (int k = 0; k < keys.length; k++) {
+        out.writeLong(keys[k]);
+        out.writeInt(runs[k].length);
+        for (int v : runs[k])
+          out.writeInt(v);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  static private PointFeatureIndex read(File indexFile) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+    try {
+      if ((in.readInt() != MAGIC) || (in.readInt() != VERSION))
+        return null;
+      long dataLength = in.readLong();
+      long dataLastModified = in.readLong();
+      double cellSize = in.readDouble();
+      long startMillis = in.readLong();
+      long binMillis = in.readLong();
+      int ntime = in.readInt();
+      int nbins = in.readInt();
+
+      long[] keys = new long[nbins];
+      int[][] runs = new int[nbins][];
+      for (int k = 0; k < nbins; k++) {
+        keys[k] = in.readLong();
+        runs[k] = new int[in.readInt()];
+        for (int i = 0; i < runs[k].length; i++)
+          runs[k][i] = in.readInt();
+      }
+
+      PointFeatureIndex index = new PointFeatureIndex(cellSize, startMillis, binMillis, ntime, keys, runs);
+      index.dataLength = dataLength;
+      index.dataLastModified = dataLastModified;
+      return index;
+
+    } finally {
+      in.close();
+    }
+  }
+
+  public String toString() {
+    return "PointFeatureIndex cellSize=" + cellSize + " ntime=" + ntime + " binMillis=" + binMillis + " nbins=" + keys.length;
+  }
+
+  ////////////////////////////////////////////////////////////////
+
+  /**
+   * Builds a PointFeatureIndex, from the records added in one pass through the collection.
+   * Records should be added in ascending record number order.
+   */
+  static public class Builder {
+    private final double cellSize = defaultCellSize;
+    private final PointFeatureIndex cells = new PointFeatureIndex(cellSize, 0, 1, 1, null, null); // to find the lat/lon cell
+    private int n;
+    private int[] recnos = new int[1000];
+    private int[] latIndex = new int[1000]; // cell computed from the double lat/lon, the same as the queries use
+    private int[] lonIndex = new int[1000];
+    private long[] times = new long[1000];
+
+    /**
+     * Add a record.
+     *
+     * @param recno  record number
+     * @param lat    latitude of the point
+     * @param lon    longitude of the point
+     * @param millis time of the point in msecs since 1970
+     */
+    public void add(int recno, double lat, double lon, long millis) {
+      if (n == recnos.length) {
+        int size = 2 * n;
+        recnos = Arrays.copyOf(recnos, size);
+        latIndex = Arrays.copyOf(latIndex, size);
+        lonIndex = Arrays.copyOf(lonIndex, size);
+        times = Arrays.copyOf(times, size);
+      }
+      recnos[n] = recno;
+      latIndex[n] = cells.latIndex(lat);
+      lonIndex[n] = cells.lonIndex(lon);
+      times[n] = millis;
+      n++;
+    }
+
+    public PointFeatureIndex build() {
+      long tmin = Long.MAX_VALUE, tmax = Long.MIN_VALUE;
+      for (int i = 0; i < n; i++) {
+        tmin = Math.min(tmin, times[i]);
+        tmax = Math.max(tmax, times[i]);
+      }
+      if (n == 0) tmin = tmax = 0;
+      int ntime = defaultTimeBins;
+      long binMillis = (tmax - tmin) / ntime + 1;
+
+      PointFeatureIndex proto = new PointFeatureIndex(cellSize, tmin, binMillis, ntime, null, null);
+      TreeMap<Long, RunList> bins = new TreeMap<Long, RunList>();
+      for (int i = 0; i < n; i++) {
+        long key = proto.makeKey(proto.timeIndex(times[i]), latIndex[i], lonIndex[i]);
+        RunList bin = bins.get(key);
+        if (bin == null) {
+          bin = new RunList();
+          bins.put(key, bin);
+        }
+        bin.add(recnos[i]);
+      }
+
+      long[] keys = new long[bins.size()];
+      int[][] runs = new int[bins.size()][];
+      int k = 0;
+      for (Map.Entry<Long, RunList> entry : bins.entrySet()) {
+        keys[k] = entry.getKey();
+        runs[k] = entry.getValue().toArray();
+        k++;
+      }
+      return new PointFeatureIndex(cellSize, tmin, binMillis, ntime, keys, runs);
+    }
+  }
+
+  // runs of consecutive record numbers
+  static private class RunList {
+    int[] runs = new int[8];
+    int n;
+
+    void add(int recno) {
+      if ((n > 0) && (runs[n - 2] + runs[n - 1] == recno)) {
+        runs[n - 1]++;
+        return;
+      }
+      if (n == runs.length)
+        runs = Arrays.copyOf(runs, 2 * n);
+      runs[n++] = recno;
+      runs[n++] = 1;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(runs, n);
+    }
+  }
+
+}
@@ -53,7 +53,7 @@ public class PointIteratorFiltered extends PointIteratorAbstract {
   private PointFeature pointFeature;
   private boolean finished = false;
 
-  PointIteratorFiltered(PointFeatureIterator orgIter, LatLonRect filter_bb, DateRange filter_date) {
+  public PointIteratorFiltered(PointFeatureIterator orgIter, LatLonRect filter_bb, DateRange filter_date) {
     this.orgIter = orgIter;
     this.filter_bb = filter_bb;
     this.filter_date = filter_date;
@@ -49,8 +49,20 @@ import java.io.IOException;
 public class StationHelper {
   private List<Station> stations;
   private Map<String, Station> stationHash;
+  private StationIndex index; // lazily created
   private boolean debug = false;
 
+  // use a spatial index when there are at least this many stations
+  static private int minIndexSize = 100;
+
+  /**
+   * Use a spatial index for bounding box and nearest station queries when there are at least this many stations.
+   * @param n minimum number of stations to index
+   */
+  static public void setMinIndexSize(int n) {
+    minIndexSize = n;
+  }
+
   public StationHelper() {
     stations = new ArrayList<Station>();
     stationHash = new HashMap<String, Station>();
@@ -59,6 +71,8 @@ public class StationHelper {
   public void addStation( Station s) {
     stations.add(s);
     stationHash.put(s.getName(), s);
+    index = null;
+    rect = null;
   }
 
   public void setStations( List<Station> nstations) {
@@ -96,9 +110,21 @@ public class StationHelper {
     return rect;
   }
 
+  // not synchronized, two threads may both create one
+  private StationIndex getIndex() {
+    StationIndex result = index;
+    if (result == null) {
+      result = new StationIndex(stations, 4);
+      index = result;
+    }
+    return result;
+  }
+
   public List<Station> getStations(LatLonRect boundingBox) throws IOException {
     if (boundingBox == null) return stations;
-    
+    if (stations.size() >= minIndexSize)
+      return getIndex().getStations(boundingBox);
+
     LatLonPointImpl latlonPt = new LatLonPointImpl();
     List<Station> result = new ArrayList<Station>();
     for (Station s : stations) {
@@ -109,6 +135,17 @@ public class StationHelper {
     return result;
   }
 
+  /**
+   * Find the stations nearest to a point, by great circle distance.
+   *
+   * @param pt find stations nearest to this point
+   * @param n  number of stations wanted
+   * @return up to n stations, nearest first
+   */
+  public List<Station> getNearestStations(LatLonPoint pt, int n) {
+    return getIndex().getNearestStations(pt, n);
+  }
+
   public Station getStation(String name) {
     return stationHash.get( name);
   }
@@ -0,0 +1,254 @@
+/*
+ * Copyright 1998-2009 University Corporation for Atmospheric Research/Unidata
+ *
+ * Portions of this software were developed by the Unidata Program at the
+ * University Corporation for Atmospheric Research.
+ *
+ * Access and use of this software shall impose the following obligations
+ * and understandings on the user. The user is granted the right, without
+ * any fee or cost, to use, copy, modify, alter, enhance and distribute
+ * this software, and any derivative works thereof, and its supporting
+ * documentation for any purpose whatsoever, provided that this entire
+ * notice appears in all copies of the software, derivative works and
+ * supporting documentation.  Further, UCAR requests that the user credit
+ * UCAR/Unidata in any publications that result from the use of this
+ * software or in any product that includes this software. The names UCAR
+ * and/or Unidata, however, may not be used in any advertising or publicity
+ * to endorse or promote any products or commercial entity unless specific
+ * written permission is obtained from UCAR/Unidata. The user also
+ * understands that UCAR/Unidata is not obligated to provide the user with
+ * any support, consulting, training or assistance of any kind with regard
+ * to the use, operation and performance of this software nor to provide
+ * the user with any updates, revisions, new versions or "bug fixes."
+ *
+ * THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ * INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ * FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ * NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ * WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.ft.point;
+
+import ucar.unidata.geoloc.*;
+
+import java.util.*;
+
+/**
+ * A grid bucket spatial index over a list of Stations, for bounding box and nearest neighbor queries.
+ * The globe is divided into cells of equal size in degrees, sized so there are a few stations in each cell on average.
+ * Immutable after construction, so thread safe.
+ *
+ * @author caron
+ */
+class StationIndex {
+  private final double latSize, lonSize; // cell size in degrees; the cells exactly cover the globe
+  private final int nlat, nlon;
+  private final Station[] stations;
+  private final int[][] cells; // positions in stations, indexed by ilat * nlon + ilon; null if empty
+  private final int nstations;
+
+  /**
+   * Constructor.
+   *
+   * @param stations index these
+   * @param perCell  average number of stations wanted in each cell
+   */
+  StationIndex(List<Station> stations, int perCell) {
+    this.stations = stations.toArray(new Station[stations.size()]);
+    this.nstations = stations.size();
+    // cells of equal area would be better at high latitudes, but stations are rarely there
+    double size = Math.sqrt(360.0 * 180.0 * perCell / Math.max(1, stations.size()));
+    size = Math.min(10.0, Math.max(0.05, size));
+    this.nlat = (int) Math.ceil(180.0 / size);
+    this.nlon = (int) Math.ceil(360.0 / size);
+    this.latSize = 180.0 / nlat;
+    this.lonSize = 360.0 / nlon;
+
+    int[] count = new int[nlat * nlon];
+    int[] cellOf = new int[stations.size()];
+    for (int i = 0; i < stations.size(); i++) {
+      Station s = stations.get(i);
+      cellOf[i] = cell(latIndex(s.getLatitude()), lonIndex(s.getLongitude()));
+      count[cellOf[i]]++;
+    }
+
+    cells = new int[nlat * nlon][];
+    for (int i = 0; i < stations.size(); i++) {
+      int c = cellOf[i];
+      if (cells[c] == null) {
+        cells[c] = new int[count[c]];
+        count[c] = 0;
+      }
+      cells[c][count[c]++] = i;
+    }
+  }
+
+  private int latIndex(double lat) {
+    int i = (int) ((lat + 90.0) / latSize);
+    return Math.max(0, Math.min(nlat - 1, i));
+  }
+
+  private int lonIndex(double lon) {
+    int i = (int) (LatLonPointImpl.lonNormal360(lon) / lonSize);
+    return Math.max(0, Math.min(nlon - 1, i));
+  }
+
+  private int cell(int ilat, int ilon) {
+    return ilat * nlon + ilon;
+  }
+
+  /**
+   * Find the Stations inside a bounding box.
+   *
+   * @param bb bounding box
+   * @return stations inside bb, in the order of the original list
+   */
+  List<Station> getStations(LatLonRect bb) {
+    int[] found = new int[16];
+    int nfound = 0;
+    int lat0 = latIndex(bb.getLatMin());
+    int lat1 = latIndex(bb.getLatMax());
+
+    int lon0, nlons;
+    if (bb.getWidth() >= 360.0) {
+      lon0 = 0;
+      nlons = nlon;
+    } else {
+      lon0 = lonIndex(bb.getLonMin());
+      int lon1 = lonIndex(bb.getLonMax());
+      nlons = (lon1 >= lon0) ? lon1 - lon0 + 1 : nlon - lon0 + lon1 + 1; // may wrap around
+      if ((nlons < nlon) && (bb.getWidth() > 180.0) && (lon1 == lon0)) nlons = nlon;
+    }
+
+    LatLonPointImpl pt = new LatLonPointImpl();
+    for (int ilat = lat0; ilat <= lat1; ilat++) {
+      for (int k = 0; k < nlons; k++) {
+        int[] cell = cells[cell(ilat, (lon0 + k) % nlon)];
+        if (cell == null) continue;
+        for (int i : cell) {
+          pt.set(stations[i].getLatitude(), stations[i].getLongitude());
+          if (!bb.contains(pt)) continue;
+          if (nfound == found.length) found = Arrays.copyOf(found, 2 * nfound);
+          found[nfound++] = i;
+        }
+      }
+    }
+
+    Arrays.sort(found, 0, nfound);
+    List<Station> result = new ArrayList<Station>(nfound);
+    for (int i = 0; i < nfound; i++)
+      result.add(stations[found[i]]);
+    return result;
+  }
+
+  /**
+   * Find the n Stations nearest to a point, by great circle distance.
+   *
+   * @param pt find stations nearest to this point
+   * @param n  number of stations wanted
+   * @return up to n stations, nearest first
+   */
+  List<Station> getNearestStations(LatLonPoint pt, int n) {
+    n = Math.min(n, nstations);
+    if (n <= 0) return new ArrayList<Station>();
+
+    double lat = pt.getLatitude();
+    double lon = pt.getLongitude();
+    int ilat = latIndex(lat);
+    int ilon = lonIndex(lon);
+    double cosLat = Math.cos(Math.toRadians(lat));
+
+    // the nearest n found so far, farthest at the head
+    PriorityQueue<Neighbor> best = new PriorityQueue<Neighbor>(n + 1);
+
+    // search square rings of cells around the point, until no station outside the ring can be nearer
+    int maxRing = Math.max(nlat, nlon);
+    for (int ring = 0; ring <= maxRing; ring++) {
+      boolean allLon = (2 * ring + 1 >= nlon);
+
+      // top and bottom rows of the ring
+      for (int jlat = ilat - ring; jlat <= ilat + ring; jlat += Math.max(1, 2 * ring)) {
+        if ((jlat < 0) || (jlat >= nlat)) continue;
+        if (allLon)
+          for (int jlon = 0; jlon < nlon; jlon++) search(cell(jlat, jlon), lat, lon, n, best);
+        else
+          for (int k = -ring; k <= ring; k++) search(cell(jlat, wrap(ilon + k)), lat, lon, n, best);
+      }
+
+      // left and right columns of the ring, not already searched
+      int[] newLons;
+      if (ring == 0 || 2 * ring - 1 >= nlon) newLons = new int[0];
+      else if (2 * ring + 1 <= nlon) newLons = new int[]{wrap(ilon - ring), wrap(ilon + ring)};
+      else newLons = new int[]{wrap(ilon + ring)}; // the two columns are the same cell
+      for (int jlat = Math.max(0, ilat - ring + 1); jlat <= Math.min(nlat - 1, ilat + ring - 1); jlat++)
+        for (int jlon : newLons) search(cell(jlat, jlon), lat, lon, n, best);
+
+      if (best.size() == n) {
+        // stations outside the ring differ in latitude by at least ring * latSize degrees,
+        // or in longitude by at least ring * lonSize, which is at least the distance to that meridian
+        double dlat = ring * latSize;
+        double dlon = ring * lonSize;
+        double bound = dlat;
+        if (!allLon) {
+          double lonBound = (dlon >= 90.0) ? 90.0 - Math.abs(lat) :
+              Math.toDegrees(Math.asin(Math.min(1.0, Math.sin(Math.toRadians(dlon)) * cosLat)));
+          bound = Math.min(bound, lonBound);
+        }
+        if (best.peek().dist <= bound) break;
+      }
+    }
+
+    List<Station> result = new ArrayList<Station>(best.size());
+    while (!best.isEmpty())
+      result.add(best.poll().station);
+    Collections.reverse(result);
+    return result;
+  }
+
+  private int wrap(int ilon) {
+    return ((ilon % nlon) + nlon) % nlon;
+  }
+
+  // add the stations in cell c to best, if they are among the nearest n
+  private void search(int c, double lat, double lon, int n, PriorityQueue<Neighbor> best) {
+    int[] cell = cells[c];
+    if (cell == null) return;
+    for (int i : cell) {
+      Station s = stations[i];
+      double d = distance(lat, lon, s.getLatitude(), s.getLongitude());
+      if (best.size() < n)
+        best.add(new Neighbor(s, d));
+      else if (d < best.peek().dist) {
+        best.poll();
+        best.add(new Neighbor(s, d));
+      }
+    }
+  }
+
+  // great circle distance in degrees
+  static private double distance(double lat1, double lon1, double lat2, double lon2) {
+    double phi1 = Math.toRadians(lat1), phi2 = Math.toRadians(lat2);
+    double sdlat = Math.sin((phi2 - phi1) / 2);
+    double sdlon = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+    double a = sdlat * sdlat + Math.cos(phi1) * Math.cos(phi2) * sdlon * sdlon;
+    return Math.toDegrees(2 * Math.asin(Math.min(1.0, Math.sqrt(a))));
+  }
+
+  private static class Neighbor implements Comparable<Neighbor> {
+    final Station station;
+    final double dist;
+
+    Neighbor(Station station, double dist) {
+      this.station = station;
+      this.dist = dist;
+    }
+
+    // farthest first
+    public int compareTo(Neighbor o) {
+      return Double.compare(o.dist, dist);
+    }
+  }
+}
@@ -77,6 +77,11 @@ public abstract class StationProfileCollectionImpl extends MultipleNestedPointCo
     return stationHelper.getStation(name);
   }
 
+  public List<Station> getNearestStations(ucar.unidata.geoloc.LatLonPoint pt, int n) {
+    if (stationHelper == null) initStationHelper();
+    return stationHelper.getNearestStations(pt, n);
+  }
+
   public LatLonRect getBoundingBox() {
     if (stationHelper == null) initStationHelper();
     return stationHelper.getBoundingBox();
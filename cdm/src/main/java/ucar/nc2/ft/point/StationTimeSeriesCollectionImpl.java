@@ -180,6 +180,11 @@ public abstract class StationTimeSeriesCollectionImpl extends OneNestedPointColl
     return stationHelper.getStation(name);
   }
 
+  public List<Station> getNearestStations(ucar.unidata.geoloc.LatLonPoint pt, int n) {
+    if (stationHelper == null) initStationHelper();
+    return stationHelper.getNearestStations(pt, n);
+  }
+
   public LatLonRect getBoundingBox() {
     if (stationHelper == null) initStationHelper();
     return stationHelper.getBoundingBox();
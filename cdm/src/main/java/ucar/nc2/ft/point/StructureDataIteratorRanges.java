@@ -0,0 +1,127 @@
+/*
+ * Copyright 1998-2009 University Corporation for Atmospheric Research/Unidata
+ *
+ * Portions of this software were developed by the Unidata Program at the
+ * University Corporation for Atmospheric Research.
+ *
+ * Access and use of this software shall impose the following obligations
+ * and understandings on the user. The user is granted the right, without
+ * any fee or cost, to use, copy, modify, alter, enhance and distribute
+ * this software, and any derivative works thereof, and its supporting
+ * documentation for any purpose whatsoever, provided that this entire
+ * notice appears in all copies of the software, derivative works and
+ * supporting documentation.  Further, UCAR requests that the user credit
+ * UCAR/Unidata in any publications that result from the use of this
+ * software or in any product that includes this software. The names UCAR
+ * and/or Unidata, however, may not be used in any advertising or publicity
+ * to endorse or promote any products or commercial entity unless specific
+ * written permission is obtained from UCAR/Unidata. The user also
+ * understands that UCAR/Unidata is not obligated to provide the user with
+ * any support, consulting, training or assistance of any kind with regard
+ * to the use, operation and performance of this software nor to provide
+ * the user with any updates, revisions, new versions or "bug fixes."
+ *
+ * THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ * INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ * FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ * NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ * WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.ft.point;
+
+import ucar.ma2.ArrayStructure;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.StructureData;
+import ucar.ma2.StructureDataIterator;
+import ucar.nc2.Structure;
+
+import java.io.IOException;
+
+/**
+ * A StructureDataIterator over runs of contiguous record numbers in a one dimensional Structure.
+ * Each run is read a buffer at a time, so that neighboring records are not read one by one.
+ *
+ * @author caron
+ */
+public class StructureDataIteratorRanges implements StructureDataIterator {
+  static private org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(StructureDataIteratorRanges.class);
+  static private final int defaultBufferSize = 500 * 1000;
+
+  private Structure s;
+  private int[] ranges; // pairs of (start, count), start ascending
+  private int readAtaTime;
+
+  private int rangeIndex;  // next range to start
+  private int next, end;   // next record to read, end (exclusive) of the current range
+  private int readStart, readCount;
+  private ArrayStructure as;
+  private int currRecord;
+
+  /**
+   * Constructor.
+   *
+   * @param s      a one dimensional Structure
+   * @param ranges pairs of (start, count) record numbers to read, in order
+   */
+  public StructureDataIteratorRanges(Structure s, int[] ranges) {
+    this.s = s;
+    this.ranges = ranges;
+    setBufferSize(-1);
+    reset();
+  }
+
+  @Override
+  public boolean hasNext() throws IOException {
+    while (next >= end) {
+      if (rangeIndex >= ranges.length) return false;
+      next = ranges[rangeIndex];
+      end = next + ranges[rangeIndex + 1];
+      rangeIndex += 2;
+    }
+    return true;
+  }
+
+  @Override
+  public StructureData next() throws IOException {
+    if (!hasNext()) return null;
+
+    if ((as == null) || (next < readStart) || (next >= readStart + readCount)) {
+      readStart = next;
+      readCount = Math.min(end - next, readAtaTime);
+      try {
+        as = s.readStructure(readStart, readCount);
+      } catch (InvalidRangeException e) {
+        log.error("StructureDataIteratorRanges.next recno=" + readStart, e);
+        throw new IOException(e.getMessage());
+      }
+    }
+
+    currRecord = next++;
+    return as.getStructureData(currRecord - readStart);
+  }
+
+  @Override
+  public StructureDataIterator reset() {
+    rangeIndex = 0;
+    next = end = 0;
+    as = null;
+    return this;
+  }
+
+  @Override
+  public void setBufferSize(int bytes) {
+    int structureSize = Math.max(1, s.getElementSize());
+    if (bytes <= 0)
+      bytes = defaultBufferSize;
+    readAtaTime = Math.max(10, bytes / structureSize);
+  }
+
+  @Override
+  public int getCurrentRecno() {
+    return currRecord;
+  }
+
+}
@@ -45,6 +45,7 @@ import java.io.IOException;
 import java.io.FileNotFoundException;
 import java.util.Formatter;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Factory for point feature dataset collections (CompositePointDataset).
@@ -59,6 +60,32 @@ public class CompositeDatasetFactory {
   static private org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(CompositeDatasetFactory.class);
   static boolean debug = false;
 
+  // experimental multithreading: open and read the next datasets of a collection in the background
+  static Executor prefetchExecutor;
+  static int prefetchDatasets = 2;
+  static int prefetchQueueSize = 1000;
+  static boolean prefetchOrdered = true;
+
+  /**
+   * Read the datasets of point and station collections in parallel. When iterating over the features of a collection,
+   * up to ndatasets of the following datasets are opened and read on the executor, and their features are
+   * handed back through a bounded queue.
+   *
+   * @param exec      use this executor; if null, datasets are read one at a time on the calling thread.
+   *                  if ordered, it must be able to run ndatasets tasks for each iteration at once.
+   * @param ndatasets number of datasets to read at once; must be > 0
+   * @param queueSize number of features to buffer; must be > 0
+   * @param ordered   if true, return the features in the order of the datasets, otherwise as they are read.
+   */
+  static public void setPrefetch(Executor exec, int ndatasets, int queueSize, boolean ordered) {
+    if ((ndatasets <= 0) || (queueSize <= 0))
+      throw new IllegalArgumentException("ndatasets and queueSize must be > 0");
+    prefetchExecutor = exec;
+    prefetchDatasets = ndatasets;
+    prefetchQueueSize = queueSize;
+    prefetchOrdered = ordered;
+  }
+
   static public FeatureDataset factory(String location, FeatureType wantFeatureType, DatasetCollectionManager dcm, Formatter errlog) throws IOException {
 
     TimedCollection collection = new TimedCollection(dcm, errlog);
@@ -41,6 +41,7 @@ import ucar.nc2.VariableSimpleIF;
 import ucar.unidata.geoloc.LatLonRect;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Iterator;
 import java.util.Formatter;
@@ -55,11 +56,45 @@ public class CompositePointCollection extends PointCollectionImpl implements Upd
   private TimedCollection pointCollections;
   protected List<VariableSimpleIF> dataVariables;
 
+  // subset passed to each component collection, so it can use its own index
+  private LatLonRect filterBB;
+  private DateRange filterDate;
+  private boolean isEmpty; // subsets dont intersect
+
   protected CompositePointCollection(String name, TimedCollection pointCollections) throws IOException {
     super(name);
     this.pointCollections = pointCollections;
   }
 
+  private CompositePointCollection(CompositePointCollection from, TimedCollection pointCollections, LatLonRect filter_bb, DateRange filter_date) throws IOException {
+    super(from.name);
+    this.pointCollections = pointCollections;
+    this.dataVariables = from.dataVariables;
+    this.isEmpty = from.isEmpty;
+
+    // a subset of a subset must satisfy both
+    this.filterBB = from.filterBB;
+    this.boundingBox = from.boundingBox;
+    if (filter_bb != null) {
+      this.filterBB = (from.filterBB == null) ? filter_bb : from.filterBB.intersect(filter_bb);
+      this.boundingBox = (from.boundingBox == null) ? filter_bb : from.boundingBox.intersect(filter_bb);
+      if (this.filterBB == null) isEmpty = true;
+    }
+
+    this.filterDate = from.filterDate;
+    this.dateRange = from.dateRange;
+    if (filter_date != null) {
+      if ((from.filterDate != null) && !from.filterDate.intersects(filter_date)) isEmpty = true;
+      this.filterDate = (from.filterDate == null) ? filter_date : from.filterDate.intersect(filter_date);
+      this.dateRange = (from.dateRange == null) ? filter_date : from.dateRange.intersect(filter_date);
+    }
+  }
+
+  private Iterator<TimedCollection.Dataset> getDatasets() {
+    List<TimedCollection.Dataset> datasets = isEmpty ? new ArrayList<TimedCollection.Dataset>() : pointCollections.getDatasets();
+    return datasets.iterator();
+  }
+
   public List<VariableSimpleIF> getDataVariables() {
     if (dataVariables == null) {
       // must open a prototype in order to get the data variable
@@ -91,15 +126,14 @@ public class CompositePointCollection extends PointCollectionImpl implements Upd
     if ((dateRange == null) && (boundingBox == null))
       return this;
     else if (dateRange == null)
-      return new PointCollectionSubset(this, boundingBox, dateRange);
-    else {
-      CompositePointCollection dateSubset = new CompositePointCollection(name, pointCollections.subset(dateRange));
-      return new PointCollectionSubset(dateSubset, boundingBox, dateRange);
-    }
+      return new CompositePointCollection(this, pointCollections, boundingBox, dateRange);
+    else
+      return new CompositePointCollection(this, pointCollections.subset(dateRange), boundingBox, dateRange);
   }
 
   public PointFeatureIterator getPointFeatureIterator(int bufferSize) throws IOException {
-    CompositePointFeatureIterator iter = new CompositePointFeatureIterator();
+    PointIteratorAbstract iter = (CompositeDatasetFactory.prefetchExecutor == null) ?
+        new CompositePointFeatureIterator() : new CompositePointFeatureIteratorMultithreaded();
     if ((boundingBox == null) || (dateRange == null) || (npts < 0))
       iter.setCalculateBounds(this);
     return iter;
@@ -118,7 +152,7 @@ public class CompositePointCollection extends PointCollectionImpl implements Upd
     private PointFeatureIterator pfIter = null;
 
     CompositePointFeatureIterator() {
-      iter = pointCollections.getDatasets().iterator();
+      iter = getDatasets();
     }
 
     private PointFeatureIterator getNextIterator() throws IOException {
@@ -130,6 +164,8 @@ public class CompositePointCollection extends PointCollectionImpl implements Upd
         System.out.printf("CompositePointFeatureIterator open dataset %s%n", td.getLocation());
       List<FeatureCollection> fcList = currentDataset.getPointFeatureCollectionList();
       PointFeatureCollection pc = (PointFeatureCollection) fcList.get(0);
+      if ((filterBB != null) || (filterDate != null))
+        pc = pc.subset(filterBB, filterDate);
       return pc.getPointFeatureIterator(bufferSize);
     }
 
@@ -182,72 +218,25 @@ public class CompositePointCollection extends PointCollectionImpl implements Upd
     }
   }
 
-  private class CompositePointFeatureIteratorMultithreaded extends PointIteratorAbstract {
-    private boolean finished = false;
-    private int bufferSize = -1;
-    private Iterator<TimedCollection.Dataset> iter;
-    private FeatureDatasetPoint currentDataset;
-    private PointFeatureIterator pfIter = null;
+  // open and read the next datasets in the background
+  private class CompositePointFeatureIteratorMultithreaded extends PrefetchPointFeatureIterator {
 
     CompositePointFeatureIteratorMultithreaded() {
-      iter = pointCollections.getDatasets().iterator();
+      super(getDatasets(), CompositeDatasetFactory.prefetchExecutor,
+          CompositeDatasetFactory.prefetchDatasets, CompositeDatasetFactory.prefetchQueueSize, CompositeDatasetFactory.prefetchOrdered);
     }
 
-    private PointFeatureIterator getNextIterator() throws IOException {
-      if (!iter.hasNext()) return null;
-      TimedCollection.Dataset td = iter.next();
+    protected FeatureDatasetPoint openDataset(TimedCollection.Dataset td) throws IOException {
       Formatter errlog = new Formatter();
-      currentDataset = (FeatureDatasetPoint) FeatureDatasetFactoryManager.open(FeatureType.POINT, td.getLocation(), null, errlog);
-      if (CompositeDatasetFactory.debug)
-        System.out.printf("CompositePointFeatureIterator open dataset %s%n", td.getLocation());
-      List<FeatureCollection> fcList = currentDataset.getPointFeatureCollectionList();
-      PointFeatureCollection pc = (PointFeatureCollection) fcList.get(0);
-      return pc.getPointFeatureIterator(bufferSize);
+      return (FeatureDatasetPoint) FeatureDatasetFactoryManager.open(FeatureType.POINT, td.getLocation(), null, errlog);
     }
 
-    public boolean hasNext() throws IOException {
-
-      if (pfIter == null) {
-        pfIter = getNextIterator();
-        if (pfIter == null) {
-          finish();
-          return false;
-        }
-      }
-
-      if (!pfIter.hasNext()) {
-        pfIter.finish();
-        currentDataset.close();
-        pfIter = getNextIterator();
-        return hasNext();
-      }
-
-      return true;
-    }
-
-    public PointFeature next() throws IOException {
-      return pfIter.next();
-    }
-
-    public void finish() {
-      if (finished) return;
-
-      if (pfIter != null)
-        pfIter.finish();
-      finishCalcBounds();
-
-      if (currentDataset != null)
-        try {
-          currentDataset.close();
-        } catch (IOException e) {
-          throw new RuntimeException(e);
-        }
-
-      finished = true;
-    }
-
-    public void setBufferSize(int bytes) {
-      bufferSize = bytes;
+    protected PointFeatureIterator getIterator(FeatureDatasetPoint fdp, int bufferSize) throws IOException {
+      List<FeatureCollection> fcList = fdp.getPointFeatureCollectionList();
+      PointFeatureCollection pc = (PointFeatureCollection) fcList.get(0);
+      if ((filterBB != null) || (filterDate != null))
+        pc = pc.subset(filterBB, filterDate);
+      return pc.getPointFeatureIterator(bufferSize);
     }
   }
 
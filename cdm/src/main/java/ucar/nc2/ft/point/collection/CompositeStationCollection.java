@@ -53,6 +53,8 @@ import java.util.List;
  * @since May 19, 2009
  */
 public class CompositeStationCollection extends StationTimeSeriesCollectionImpl implements UpdateableCollection {
+  static private org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CompositeStationCollection.class);
+
   private TimedCollection dataCollection;
   protected List<VariableSimpleIF> dataVariables;
 
@@ -193,7 +195,8 @@ public class CompositeStationCollection extends StationTimeSeriesCollectionImpl
     // an iterator over the observations for this station
 
     public PointFeatureIterator getPointFeatureIterator(int bufferSize) throws IOException {
-      CompositeStationFeatureIterator iter = new CompositeStationFeatureIterator();
+      PointIteratorAbstract iter = (CompositeDatasetFactory.prefetchExecutor == null) ?
+          new CompositeStationFeatureIterator() : new CompositeStationFeatureIteratorMultithreaded();
       if ((boundingBox == null) || (dateRange == null) || (npts < 0))
         iter.setCalculateBounds(this);
       return iter;
@@ -237,8 +240,7 @@ public class CompositeStationCollection extends StationTimeSeriesCollectionImpl
         StationTimeSeriesFeatureCollection stnCollection = (StationTimeSeriesFeatureCollection) fcList.get(0);
         Station s = stnCollection.getStation(getName());
         if (s == null) {
-          System.out.printf("CompositeStationFeatureIterator dataset: %s missing station %s%n",
-                  td.getLocation(), getName());
+          logger.debug("CompositeStationFeatureIterator dataset: {} missing station {}", td.getLocation(), getName());
           return getNextIterator();
         }
 
@@ -299,6 +301,38 @@ public class CompositeStationCollection extends StationTimeSeriesCollectionImpl
         bufferSize = bytes;
       }
     }
+
+    // open and read the next datasets in the background
+    private class CompositeStationFeatureIteratorMultithreaded extends PrefetchPointFeatureIterator {
+
+      CompositeStationFeatureIteratorMultithreaded() {
+        super(collForFeature.getDatasets().iterator(), CompositeDatasetFactory.prefetchExecutor,
+            CompositeDatasetFactory.prefetchDatasets, CompositeDatasetFactory.prefetchQueueSize, CompositeDatasetFactory.prefetchOrdered);
+      }
+
+      protected FeatureDatasetPoint openDataset(TimedCollection.Dataset td) throws IOException {
+        Formatter errlog = new Formatter();
+        return (FeatureDatasetPoint) FeatureDatasetFactoryManager.open(FeatureType.STATION, td.getLocation(), null, errlog);
+      }
+
+      protected PointFeatureIterator getIterator(FeatureDatasetPoint fdp, int bufferSize) throws IOException {
+        List<FeatureCollection> fcList = fdp.getPointFeatureCollectionList();
+        StationTimeSeriesFeatureCollection stnCollection = (StationTimeSeriesFeatureCollection) fcList.get(0);
+        Station s = stnCollection.getStation(getName());
+        if (s == null) {
+          logger.debug("CompositeStationFeatureIterator dataset: {} missing station {}", fdp.getLocation(), getName());
+          return null;
+        }
+        return stnCollection.getStationFeature(s).getPointFeatureIterator(bufferSize);
+      }
+
+      @Override
+      public PointFeature next() throws IOException {
+        PointFeature pf = super.next();
+        if (pf != null) npts++;
+        return pf;
+      }
+    }
   }
 
 }
@@ -82,7 +82,8 @@ public class CompositeStationCollectionFlattened extends PointCollectionImpl {
   }
 
   public PointFeatureIterator getPointFeatureIterator(int bufferSize) throws IOException {
-    PointIterator iter = new PointIterator();
+    PointIteratorAbstract iter = (CompositeDatasetFactory.prefetchExecutor == null) ?
+        new PointIterator() : new PointIteratorMultithreaded();
     if ((boundingBox == null) || (dateRange == null) || (npts < 0))
       iter.setCalculateBounds(this);
     return iter;
@@ -114,17 +115,7 @@ public class CompositeStationCollectionFlattened extends PointCollectionImpl {
       if (CompositeDatasetFactory.debug)
         System.out.printf("CompositeStationCollectionFlattened.Iterator open new dataset: %s%n", td.getLocation());
 
-      // it will have a StationTimeSeriesFeatureCollection
-      List<FeatureCollection> fcList = currentDataset.getPointFeatureCollectionList();
-      StationTimeSeriesFeatureCollection stnCollection = (StationTimeSeriesFeatureCollection) fcList.get(0);
-
-      PointFeatureCollection pc = null;
-      if (wantStationsubset)
-        pc = stnCollection.flatten(stationsSubset, dateRange, varList);
-      else
-        pc = stnCollection.flatten(bbSubset, dateRange);
-
-      return pc.getPointFeatureIterator(bufferSize);
+      return flatten(currentDataset, bufferSize);
     }
 
     public boolean hasNext() throws IOException {
@@ -176,5 +167,40 @@ public class CompositeStationCollectionFlattened extends PointCollectionImpl {
     }
   }
 
+  // open and read the next datasets in the background
+  private class PointIteratorMultithreaded extends PrefetchPointFeatureIterator {
+
+    PointIteratorMultithreaded() {
+      super(stnCollections.getDatasets().iterator(), CompositeDatasetFactory.prefetchExecutor,
+          CompositeDatasetFactory.prefetchDatasets, CompositeDatasetFactory.prefetchQueueSize, CompositeDatasetFactory.prefetchOrdered);
+    }
+
+    protected FeatureDatasetPoint openDataset(TimedCollection.Dataset td) throws IOException {
+      Formatter errlog = new Formatter();
+      FeatureDatasetPoint fdp = (FeatureDatasetPoint) FeatureDatasetFactoryManager.open(FeatureType.STATION, td.getLocation(), null, errlog);
+      if (fdp == null)
+        logger.error("FeatureDatasetFactoryManager failed to open: " + td.getLocation() + " \nerrlog = " + errlog);
+      return fdp;
+    }
+
+    protected PointFeatureIterator getIterator(FeatureDatasetPoint fdp, int bufferSize) throws IOException {
+      return flatten(fdp, bufferSize);
+    }
+  }
+
+  private PointFeatureIterator flatten(FeatureDatasetPoint fdp, int bufferSize) throws IOException {
+    // it will have a StationTimeSeriesFeatureCollection
+    List<FeatureCollection> fcList = fdp.getPointFeatureCollectionList();
+    StationTimeSeriesFeatureCollection stnCollection = (StationTimeSeriesFeatureCollection) fcList.get(0);
+
+    PointFeatureCollection pc = null;
+    if (wantStationsubset)
+      pc = stnCollection.flatten(stationsSubset, dateRange, varList);
+    else
+      pc = stnCollection.flatten(bbSubset, dateRange);
+
+    return pc.getPointFeatureIterator(bufferSize);
+  }
+
 }
 
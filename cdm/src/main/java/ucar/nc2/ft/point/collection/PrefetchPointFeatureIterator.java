@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 1998 - 2009. University Corporation for Atmospheric Research/Unidata
+ * Portions of this software were developed by the Unidata Program at the
+ * University Corporation for Atmospheric Research.
+ *
+ * Access and use of this software shall impose the following obligations
+ * and understandings on the user. The user is granted the right, without
+ * any fee or cost, to use, copy, modify, alter, enhance and distribute
+ * this software, and any derivative works thereof, and its supporting
+ * documentation for any purpose whatsoever, provided that this entire
+ * notice appears in all copies of the software, derivative works and
+ * supporting documentation.  Further, UCAR requests that the user credit
+ * UCAR/Unidata in any publications that result from the use of this
+ * software or in any product that includes this software. The names UCAR
+ * and/or Unidata, however, may not be used in any advertising or publicity
+ * to endorse or promote any products or commercial entity unless specific
+ * written permission is obtained from UCAR/Unidata. The user also
+ * understands that UCAR/Unidata is not obligated to provide the user with
+ * any support, consulting, training or assistance of any kind with regard
+ * to the use, operation and performance of this software nor to provide
+ * the user with any updates, revisions, new versions or "bug fixes."
+ *
+ * THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ * INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ * FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ * NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ * WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.ft.point.collection;
+
+import thredds.inventory.TimedCollection;
+import ucar.nc2.ft.FeatureDatasetPoint;
+import ucar.nc2.ft.PointFeature;
+import ucar.nc2.ft.PointFeatureIterator;
+import ucar.nc2.ft.point.PointFeatureImpl;
+import ucar.nc2.ft.point.PointIteratorAbstract;
+import ucar.nc2.ft.point.StationPointFeature;
+import ucar.ma2.StructureData;
+import ucar.unidata.geoloc.Station;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.*;
+
+/**
+ * Iterates over the PointFeatures of a collection of datasets, opening and reading up to ndatasets of them at once
+ * on background threads. Each background task opens its dataset, reads all of its features (including the data),
+ * puts them on a bounded queue, then closes the dataset.
+ * <p/>
+ * If ordered, features come back dataset by dataset in the order of the collection; otherwise they come back
+ * as soon as any dataset has read them. Calling finish() before the end cancels the background tasks.
+ *
+ * @author caron
+ */
+abstract class PrefetchPointFeatureIterator extends PointIteratorAbstract {
+  static private org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(PrefetchPointFeatureIterator.class);
+
+  private final Executor executor;
+  private final int ndatasets, queueSize;
+  private final boolean ordered;
+  private final Iterator<TimedCollection.Dataset> iter;
+  private int bufferSize = -1;
+
+  private final LinkedList<Task> running = new LinkedList<Task>();
+  private final BlockingQueue<Object> sharedQueue; // when not ordered
+  private PointFeature feature; // hasNext must cache
+  private volatile boolean cancelled = false;
+  private boolean finished = false;
+
+  /**
+   * Constructor.
+   *
+   * @param datasets  iterate over these datasets
+   * @param executor  run the background tasks on this executor; if ordered, it must be able to run ndatasets tasks at once
+   * @param ndatasets read this many datasets at once
+   * @param queueSize buffer at most this many features for each dataset (ordered), or in all (not ordered)
+   * @param ordered   return the features in the order of the datasets
+   */
+  PrefetchPointFeatureIterator(Iterator<TimedCollection.Dataset> datasets, Executor executor, int ndatasets, int queueSize, boolean ordered) {
+    this.iter = datasets;
+    this.executor = executor;
+    this.ndatasets = ndatasets;
+    this.queueSize = queueSize;
+    this.ordered = ordered;
+    this.sharedQueue = ordered ? null : new ArrayBlockingQueue<Object>(queueSize);
+  }
+
+  /**
+   * Open the dataset. Called on a background thread.
+   *
+   * @param td the dataset
+   * @return the opened dataset, or null to skip it
+   * @throws IOException on read error
+   */
+  protected abstract FeatureDatasetPoint openDataset(TimedCollection.Dataset td) throws IOException;
+
+  /**
+   * Get the iterator over the wanted features in the opened dataset. Called on a background thread.
+   *
+   * @param fdp        the opened dataset
+   * @param bufferSize how many bytes can be used to buffer data, use -1 to use default.
+   * @return iterator over the features, or null to skip the dataset
+   * @throws IOException on read error
+   */
+  protected abstract PointFeatureIterator getIterator(FeatureDatasetPoint fdp, int bufferSize) throws IOException;
+
+  public boolean hasNext() throws IOException {
+    if (feature != null) return true;
+    if (finished) return false;
+
+    while (true) {
+      while ((running.size() < ndatasets) && iter.hasNext())
+        running.add(new Task(iter.next()));
+
+      if (running.isEmpty()) {
+        finish();
+        return false;
+      }
+
+      Object item;
+      try {
+        item = ordered ? running.getFirst().queue.take() : sharedQueue.take();
+      } catch (InterruptedException e) {
+        finish();
+        Thread.currentThread().interrupt();
+        throw new IOException("interrupted while waiting for dataset");
+      }
+
+      if (item instanceof Done) {
+        Done done = (Done) item;
+        running.remove(done.task);
+        if (done.error != null) {
+          finish();
+          if (done.error instanceof IOException) throw (IOException) done.error;
+          throw new IOException(done.task.td.getLocation(), done.error);
+        }
+        continue;
+      }
+
+      feature = (PointFeature) item;
+      return true;
+    }
+  }
+
+  public PointFeature next() throws IOException {
+    if (!hasNext()) return null;
+    PointFeature result = feature;
+    feature = null;
+    calcBounds(result);
+    return result;
+  }
+
+  public void finish() {
+    if (finished) return;
+    finished = true;
+
+    cancelled = true;
+    for (Task task : running) {
+      task.future.cancel(true);
+      task.queue.clear();
+    }
+    running.clear();
+    if (sharedQueue != null)
+      sharedQueue.clear();
+
+    finishCalcBounds();
+  }
+
+  public void setBufferSize(int bytes) {
+    bufferSize = bytes;
+  }
+
+  // marks the end of a dataset on the queue
+  private static class Done {
+    Task task;
+    Throwable error;
+
+    Done(Task task, Throwable error) {
+      this.task = task;
+      this.error = error;
+    }
+  }
+
+  private class Task implements Runnable {
+    TimedCollection.Dataset td;
+    BlockingQueue<Object> queue;
+    FutureTask<Object> future;
+
+    Task(TimedCollection.Dataset td) {
+      this.td = td;
+      this.queue = ordered ? new ArrayBlockingQueue<Object>(queueSize) : sharedQueue;
+      this.future = new FutureTask<Object>(this, null);
+      executor.execute(future);
+    }
+
+    public void run() {
+      FeatureDatasetPoint fdp = null;
+      PointFeatureIterator pfIter = null;
+      Throwable error = null;
+
+      try {
+        fdp = openDataset(td);
+        if (fdp != null) {
+          if (CompositeDatasetFactory.debug)
+            System.out.printf("PrefetchPointFeatureIterator open dataset %s%n", td.getLocation());
+          pfIter = getIterator(fdp, bufferSize);
+        }
+        if (pfIter != null) {
+          while (!cancelled && pfIter.hasNext())
+            queue.put(decode(pfIter.next()));
+        }
+
+      } catch (InterruptedException e) {
+        // cancelled
+
+      } catch (Throwable t) {
+        error = t;
+
+      } finally {
+        if (pfIter != null)
+          pfIter.finish();
+        if (fdp != null) {
+          try {
+            fdp.close();
+          } catch (IOException ioe) {
+            logger.warn("PrefetchPointFeatureIterator failed to close " + td.getLocation(), ioe);
+          }
+        }
+      }
+
+      if (cancelled) return;
+      try {
+        queue.put(new Done(this, error));
+      } catch (InterruptedException e) {
+        // cancelled
+      }
+    }
+  }
+
+  // read the data while the dataset is open
+  private static PointFeature decode(PointFeature pf) throws IOException {
+    StructureData sdata = pf.getData();
+    if (pf instanceof StationPointFeature)
+      return new DecodedStationPointFeature(pf, sdata, ((StationPointFeature) pf).getStation());
+    return new DecodedPointFeature(pf, sdata);
+  }
+
+  private static class DecodedPointFeature extends PointFeatureImpl {
+    private StructureData sdata;
+
+    DecodedPointFeature(PointFeature pf, StructureData sdata) {
+      super(pf.getLocation(), pf.getObservationTime(), pf.getNominalTime(), pf.getTimeUnit());
+      this.sdata = sdata;
+    }
+
+    public StructureData getData() {
+      return sdata;
+    }
+  }
+
+  private static class DecodedStationPointFeature extends DecodedPointFeature implements StationPointFeature {
+    private Station s;
+
+    DecodedStationPointFeature(PointFeature pf, StructureData sdata, Station s) {
+      super(pf, sdata);
+      this.s = s;
+    }
+
+    public Station getStation() {
+      return s;
+    }
+  }
+
+}
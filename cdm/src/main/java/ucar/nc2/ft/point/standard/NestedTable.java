@@ -598,6 +598,17 @@ public class NestedTable {
     return root.getStructureDataIterator(cursor, bufferSize);
   }
 
+  // the Structure that getObsDataIterator() iterates over, when its record numbers are the Structure indices, else null
+  Structure getObsStructure() {
+    if ((nlevels != 1) || (root.getClass() != Table.TableStructure.class)) return null;
+    Structure struct = ((Table.TableStructure) root).struct;
+    return (struct.getRank() == 1) ? struct : null;
+  }
+
+  String getLocation() {
+    return ds.getLocation();
+  }
+
   //// Station or Station_Profile
   public StructureDataIterator getStationDataIterator(int bufferSize) throws IOException {
     Table stationTable = root;
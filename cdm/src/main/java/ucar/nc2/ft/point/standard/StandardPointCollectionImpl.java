@@ -33,8 +33,18 @@
 package ucar.nc2.ft.point.standard;
 
 import ucar.nc2.ft.point.PointCollectionImpl;
+import ucar.nc2.ft.point.PointFeatureIndex;
+import ucar.nc2.ft.point.PointIteratorFiltered;
+import ucar.nc2.ft.point.StructureDataIteratorRanges;
+import ucar.nc2.ft.PointFeature;
+import ucar.nc2.ft.PointFeatureCollection;
 import ucar.nc2.ft.PointFeatureIterator;
+import ucar.nc2.units.DateRange;
 import ucar.nc2.units.DateUnit;
+import ucar.nc2.Structure;
+import ucar.ma2.StructureDataIterator;
+import ucar.unidata.geoloc.EarthLocation;
+import ucar.unidata.geoloc.LatLonRect;
 
 import java.io.IOException;
 
@@ -46,6 +56,8 @@ import java.io.IOException;
 public class StandardPointCollectionImpl extends PointCollectionImpl {
   private DateUnit timeUnit;
   private NestedTable ft;
+  private PointFeatureIndex index; // lazy
+  private boolean indexFailed;
 
   StandardPointCollectionImpl(NestedTable ft, DateUnit timeUnit) {
     super(ft.getName());
@@ -63,4 +75,68 @@ public class StandardPointCollectionImpl extends PointCollectionImpl {
     return iter;
   }
 
+  @Override
+  public PointFeatureCollection subset(LatLonRect boundingBox, DateRange dateRange) throws IOException {
+    PointFeatureIndex index = getIndex();
+    if (index == null)
+      return super.subset(boundingBox, dateRange);
+    return new IndexedSubset(this, index, boundingBox, dateRange);
+  }
+
+  // the spatio-temporal index, if enabled and the records can be read by record number
+  private synchronized PointFeatureIndex getIndex() throws IOException {
+    if ((index != null) || indexFailed || !PointFeatureIndex.getUseIndex())
+      return index;
+
+    if (ft.getObsStructure() == null) {
+      indexFailed = true;
+      return null;
+    }
+
+    String location = ft.getLocation();
+    index = PointFeatureIndex.open(location);
+    if (index != null) return index;
+
+    // one pass through all the records
+    PointFeatureIndex.Builder builder = new PointFeatureIndex.Builder();
+    Cursor tableData = new Cursor(ft.getNumberOfLevels());
+    StructureDataIterator structIter = ft.getObsDataIterator(tableData, -1);
+    PointFeatureIterator iter = new StandardPointFeatureIterator(ft, timeUnit, structIter, tableData);
+    try {
+      while (iter.hasNext()) {
+        int recno = structIter.getCurrentRecno();
+        PointFeature pf = iter.next();
+        EarthLocation loc = pf.getLocation();
+        builder.add(recno, loc.getLatitude(), loc.getLongitude(), pf.getObservationTimeAsDate().getTime());
+      }
+    } finally {
+      iter.finish();
+    }
+
+    index = builder.build();
+    index.save(location);
+    return index;
+  }
+
+  // read only the records that the index finds, then filter them exactly
+  private class IndexedSubset extends PointCollectionSubset {
+    private PointFeatureIndex index;
+
+    IndexedSubset(StandardPointCollectionImpl from, PointFeatureIndex index, LatLonRect filter_bb, DateRange filter_date) {
+      super(from, filter_bb, filter_date);
+      this.index = index;
+    }
+
+    @Override
+    public PointFeatureIterator getPointFeatureIterator(int bufferSize) throws IOException {
+      Structure struct = ft.getObsStructure();
+      StructureDataIteratorRanges structIter = new StructureDataIteratorRanges(struct, index.findRecords(boundingBox, dateRange));
+      structIter.setBufferSize(bufferSize);
+
+      Cursor tableData = new Cursor(ft.getNumberOfLevels());
+      PointFeatureIterator iter = new StandardPointFeatureIterator(ft, timeUnit, structIter, tableData);
+      return new PointIteratorFiltered(iter, boundingBox, dateRange);
+    }
+  }
+
 }
@@ -103,8 +103,8 @@ public class IndexChunker {
     this.done = 0;
     this.start = 0;
 
-    // see if this is a "want all of it" single chunk
-    if (wantSection.equivalent(srcShape)) {
+    // see if this is a "want all of it" single chunk; chunk sizes are ints, so only if it fits
+    if (wantSection.equivalent(srcShape) && (this.total <= Integer.MAX_VALUE)) {
       this.nelems = (int) this.total;
       chunkIndex = new IndexLong();
       return;
@@ -123,10 +123,13 @@ public class IndexChunker {
 
     // count how many merge dimensions
     int merge = 0;
+    long mergedSize = dimList.isEmpty() ? 1 : dimList.get(0).wantSize; // size of the merged inner dimensions
     for (int i = 0; i < dimList.size()-1; i++) {
       Dim elem = dimList.get(i);
       Dim elem2 = dimList.get(i + 1);
-      if (elem.maxSize == elem.wantSize && (elem2.want.stride() == 1)) {
+      // stop before the merged size overflows an int; larger sections are then done in several chunks
+      if (elem.maxSize == elem.wantSize && (elem2.want.stride() == 1) && (mergedSize * elem2.wantSize <= Integer.MAX_VALUE)) {
+        mergedSize *= elem2.wantSize;
         merge++;
       } else {
         break;
@@ -175,6 +175,210 @@ public class IospHelper {
     throw new IllegalStateException("unknown type= "+dataType);
   }
 
+  /**
+   * Read data subset from RandomAccessFile using positional reads, create primitive array of size Layout.getTotalNelems.
+   * Same as readDataFill(), but does not use or change the file pointer, so may be called concurrently on a shared file.
+   *
+   * @param raf      read from here.
+   * @param index    handles skipping around in the file.
+   * @param dataType dataType of the variable
+   * @param fillValue must Byte, Short, Integer, Long, Float, Double, or String, matching dataType, or null for none
+   * @param byteOrder RandomAccessFile.LITTLE_ENDIAN, otherwise big endian is used
+   * @param convertChar true if bytes should be converted to char for dataType CHAR
+   * @return primitive array with data read in
+   * @throws java.io.IOException on read error
+   */
+  static public Object readDataFillPositional(RandomAccessFile raf, Layout index, DataType dataType, Object fillValue,
+          int byteOrder, boolean convertChar) throws java.io.IOException {
+    Object arr = (fillValue == null) ? makePrimitiveArray((int) index.getTotalNelems(), dataType) :
+        makePrimitiveArray((int) index.getTotalNelems(), dataType, fillValue);
+    return readDataPositional(raf, index, dataType, arr, byteOrder, convertChar);
+  }
+
+  /**
+   * Read data subset from RandomAccessFile using positional reads, place in given primitive array.
+   * Reading is controlled by the Layout object. Chunks are read with RandomAccessFile.readFully(long pos, ByteBuffer),
+   * so the file pointer and read buffer of raf are not used. For numeric types, chunks that are close together
+   * are read in one call, large chunks are read in pieces of at most 1 Mb, and the bytes are converted in bulk.
+   *
+   * @param raf      read from here.
+   * @param layout    handles skipping around in the file.
+   * @param dataType dataType of the variable
+   * @param arr      primitive array to read data into
+   * @param byteOrder RandomAccessFile.LITTLE_ENDIAN, otherwise big endian is used
+   * @param convertChar true if bytes should be converted to char for dataType CHAR
+   * @return primitive array with data read in
+   * @throws java.io.IOException on read error
+   */
+  static public Object readDataPositional(RandomAccessFile raf, Layout layout, DataType dataType, Object arr, int byteOrder, boolean convertChar) throws java.io.IOException {
+    if (showLayoutTypes) System.out.println("***RAF positional LayoutType="+layout.getClass().getName());
+    ByteOrder order = (byteOrder == RandomAccessFile.LITTLE_ENDIAN) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+
+    if ((dataType == DataType.BYTE) || (dataType == DataType.CHAR) || (dataType == DataType.ENUM1) ) {
+       byte[] pa = (byte[]) arr;
+       while (layout.hasNext()) {
+         Layout.Chunk chunk = layout.next();
+         // like raf.read(), allow a short read at the end of the file
+         ByteBuffer bb = ByteBuffer.wrap(pa, (int) chunk.getDestElem(), chunk.getNelems());
+         long pos = chunk.getSrcPos();
+         int count;
+         while (bb.hasRemaining() && ((count = raf.read(pos, bb)) > 0))
+           pos += count;
+       }
+      if (convertChar && dataType == DataType.CHAR) return convertByteToChar(pa); else return pa;
+
+    } else if (dataType == DataType.STRUCTURE) {
+      byte[] pa = (byte[]) arr;
+      int recsize = layout.getElemSize();
+      while (layout.hasNext()) {
+        Layout.Chunk chunk = layout.next();
+        raf.readFully(chunk.getSrcPos(), pa, (int) chunk.getDestElem()*recsize, chunk.getNelems()*recsize);
+      }
+      return pa;
+    }
+
+    SpanReader reader = new SpanReader(raf, dataType, arr, order);
+    while (layout.hasNext()) {
+      Layout.Chunk chunk = layout.next();
+      reader.add(chunk.getSrcPos(), chunk.getDestElem(), chunk.getNelems());
+    }
+    reader.flush();
+    return arr;
+  }
+
+  /**
+   * Read numeric data subset from RandomAccessFile using positional reads, directly into the storage of an ArrayBB.
+   * No byte order conversion is done, so the ArrayBB should be created with the byte order of the file.
+   * This allows reading more than 2^31 elements.
+   *
+   * @param raf    read from here.
+   * @param layout handles skipping around in the file.
+   * @param result read data into here; must have the dataType and size of the data described by layout
+   * @return result, with data read in
+   * @throws java.io.IOException on read error
+   */
+  static public ArrayBB readDataPositional(RandomAccessFile raf, Layout layout, ArrayBB result) throws java.io.IOException {
+    if (showLayoutTypes) System.out.println("***RAF positional ArrayBB LayoutType="+layout.getClass().getName());
+    int elemSize = result.getDataType().getSize();
+    while (layout.hasNext()) {
+      Layout.Chunk chunk = layout.next();
+      long pos = chunk.getSrcPos();
+      long elem = chunk.getDestElem();
+      int nelems = chunk.getNelems();
+      while (nelems > 0) { // a chunk may cross a segment boundary of the ArrayBB
+        ByteBuffer bb = result.getByteBuffer(elem, nelems);
+        int n = bb.remaining() / elemSize;
+        raf.readFully(pos, bb);
+        pos += (long) n * elemSize;
+        elem += n;
+        nelems -= n;
+      }
+    }
+    return result;
+  }
+
+  // largest single read done by readDataPositional()
+  static private final int maxSpanBytes = 1024 * 1024;
+  // readDataPositional() reads through gaps between chunks up to this size, rather than doing another read
+  static private final int maxGapBytes = 8 * 1024;
+
+  /*
+   * Reads chunks of primitive data for readDataPositional(). Chunks that are close together in the file are
+   * collected into a span which is read with one positional read, and large chunks are split into spans of at most
+   * maxSpanBytes. The bytes of each chunk are then bulk converted into the primitive array.
+   */
+  static private class SpanReader {
+    private final RandomAccessFile raf;
+    private final DataType dataType;
+    private final Object arr;
+    private final ByteOrder order;
+    private final int elemSize;
+    private final int maxPieceElems;
+
+    private ByteBuffer bb;
+    private long spanStart, spanEnd; // file positions of the current span
+    private int npieces;
+    private int[] pieceOffset = new int[16]; // byte offset in the span
+    private long[] pieceDest = new long[16]; // starting element in arr
+    private int[] pieceNelems = new int[16];
+
+    SpanReader(RandomAccessFile raf, DataType dataType, Object arr, ByteOrder order) {
+      this.raf = raf;
+      this.dataType = dataType;
+      this.arr = arr;
+      this.order = order;
+      this.elemSize = dataType.getSize();
+      this.maxPieceElems = maxSpanBytes / elemSize;
+    }
+
+    void add(long pos, long destElem, int nelems) throws IOException {
+      while (nelems > 0) {
+        int n = Math.min(nelems, maxPieceElems);
+        int nbytes = n * elemSize;
+        if ((npieces > 0) && ((pos < spanEnd) || (pos - spanEnd > maxGapBytes) || (pos + nbytes - spanStart > maxSpanBytes)))
+          flush();
+
+        if (npieces == 0) spanStart = pos;
+        if (npieces == pieceOffset.length) grow();
+        pieceOffset[npieces] = (int) (pos - spanStart);
+        pieceDest[npieces] = destElem;
+        pieceNelems[npieces] = n;
+        npieces++;
+        spanEnd = pos + nbytes;
+
+        pos += nbytes;
+        destElem += n;
+        nelems -= n;
+      }
+    }
+
+    void flush() throws IOException {
+      if (npieces == 0) return;
+      int spanBytes = (int) (spanEnd - spanStart);
+      if ((bb == null) || (bb.capacity() < spanBytes))
+        bb = ByteBuffer.allocate(spanBytes);
+      bb.clear();
+      bb.limit(spanBytes);
+      raf.readFully(spanStart, bb);
+
+      for (int i = 0; i < npieces; i++) {
+        int n = pieceNelems[i];
+        int dest = (int) pieceDest[i];
+        bb.limit(pieceOffset[i] + n * elemSize);
+        bb.position(pieceOffset[i]);
+        ByteBuffer piece = bb.slice();
+        piece.order(order);
+
+        if ((dataType == DataType.SHORT) || (dataType == DataType.ENUM2))
+          piece.asShortBuffer().get((short[]) arr, dest, n);
+        else if ((dataType == DataType.INT) || (dataType == DataType.ENUM4))
+          piece.asIntBuffer().get((int[]) arr, dest, n);
+        else if (dataType == DataType.FLOAT)
+          piece.asFloatBuffer().get((float[]) arr, dest, n);
+        else if (dataType == DataType.DOUBLE)
+          piece.asDoubleBuffer().get((double[]) arr, dest, n);
+        else if (dataType == DataType.LONG)
+          piece.asLongBuffer().get((long[]) arr, dest, n);
+        else
+          throw new IllegalStateException("unknown type= "+dataType);
+      }
+      npieces = 0;
+    }
+
+    private void grow() {
+      int size = 2 * pieceOffset.length;
+      int[] offset = new int[size];
+      long[] dest = new long[size];
+      int[] nelems = new int[size];
+      System.arraycopy(pieceOffset, 0, offset, 0, npieces);
+      System.arraycopy(pieceDest, 0, dest, 0, npieces);
+      System.arraycopy(pieceNelems, 0, nelems, 0, npieces);
+      pieceOffset = offset;
+      pieceDest = dest;
+      pieceNelems = nelems;
+    }
+  }
+
   /**
    * Read data subset from PositioningDataInputStream, create primitive array of size Layout.getTotalNelems.
    * Reading is controlled by the Layout object.
@@ -44,6 +44,7 @@ import ucar.nc2.iosp.grid.GridServiceProvider;
 import ucar.nc2.iosp.grid.GridIndexToNC;
 import ucar.nc2.util.CancelTask;
 import ucar.nc2.util.DiskCache;
+import ucar.nc2.util.cache.MemoryCache;
 import ucar.nc2.NetcdfFile;
 import ucar.grib.*;
 import ucar.grib.grib1.*;
@@ -61,6 +62,43 @@ import java.net.URL;
 public class GribGridServiceProvider extends GridServiceProvider {
   private static org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(GribGridServiceProvider.class);
 
+  // cache of decoded records, shared by all files
+  static private MemoryCache<String, float[]> recordCache;
+
+  /**
+   * Set the cache of decoded records, shared by all GRIB files. Useful when reading many small subsets, eg points or
+   * soundings, from the same records, which otherwise are decoded again on each read.
+   *
+   * @param cache cache decoded records here; may be null for no caching.
+   */
+  static public void setRecordCache(MemoryCache<String, float[]> cache) {
+    recordCache = cache;
+  }
+
+  static public MemoryCache<String, float[]> getRecordCache() {
+    return recordCache;
+  }
+
+  // in-memory cache of parsed indexes, shared by all files, so reopening a file is fast
+  static private MemoryCache<String, GridIndex> indexCache;
+  static private final int indexRecordBytes = 500; // rough heap size of a parsed GribGridRecord, including its PDS
+
+  /**
+   * Set the warm-reopen cache of parsed indexes, shared by all GRIB files. This is an in-memory cache, not a
+   * different index format: reopening a file whose index is in the cache skips reading and parsing the index,
+   * as long as the index file has not changed. The size of a cached index is estimated from its number of
+   * records, so set the cache's capacity in bytes of heap.
+   *
+   * @param cache cache parsed indexes here; may be null for no caching.
+   */
+  static public void setIndexCache(MemoryCache<String, GridIndex> cache) {
+    indexCache = cache;
+  }
+
+  static public MemoryCache<String, GridIndex> getIndexCache() {
+    return indexCache;
+  }
+
   private long rafLength;    // length of the file when opened - used for syncing
   private long indexLength;  // length of the index in getIndex - used for syncing
   private int saveEdition = 0; // GRIB edition
@@ -122,8 +160,11 @@ public class GribGridServiceProvider extends GridServiceProvider {
     GridTableLookup lookup = (saveEdition == 2) ? getLookup2() : getLookup1();
 
     // make it into netcdf objects
-    GridIndexToNC convert = new GridIndexToNC(raf);
-    convert.open(index, lookup, saveEdition, ncfile, fmrcCoordSys, cancelTask);
+    synchronized (index) { // a cached index is shared with other files, see releaseRecords()
+      GridIndexToNC convert = new GridIndexToNC(raf);
+      convert.open(index, lookup, saveEdition, ncfile, fmrcCoordSys, cancelTask);
+      releaseRecords(index);
+    }
     ncfile.finish();
 
     // may want to save index for debugging
@@ -143,8 +184,11 @@ public class GribGridServiceProvider extends GridServiceProvider {
     GridTableLookup lookup = (saveEdition == 2) ? getLookup2() : getLookup1();
 
     // make it into netcdf objects
-    GridIndexToNC convert = new GridIndexToNC(index.filename);
-    convert.open(index, lookup, saveEdition, ncfile, fmrcCoordSys, cancelTask);
+    synchronized (index) {
+      GridIndexToNC convert = new GridIndexToNC(index.filename);
+      convert.open(index, lookup, saveEdition, ncfile, fmrcCoordSys, cancelTask);
+      releaseRecords(index);
+    }
 
     ncfile.finish();
 
@@ -250,7 +294,7 @@ public class GribGridServiceProvider extends GridServiceProvider {
     // if index exist already, read it
     if (!forceNewIndex && indexFile.exists()) {
       try {
-        index = new GribIndexReader().open(indexFile.getPath());
+        index = readIndex(indexFile);
         if (index != null) {
           log.debug("  opened index = " + indexFile.getPath());
 
@@ -347,9 +391,54 @@ public class GribGridServiceProvider extends GridServiceProvider {
     } else if (saveEdition == 2) {
       index = new Grib2WriteIndex().writeGribIndex(gribFile, indexFile.getPath(), raf, true);
     }
+    return cacheIndex(indexFile, index);
+  }
+
+  // read an existing index, or get it from the indexCache
+  private GridIndex readIndex(File indexFile) throws IOException {
+    MemoryCache<String, GridIndex> cache = indexCache; // may be changed by another thread
+    if (cache == null)
+      return new GribIndexReader().open(indexFile.getPath());
+
+    String key = getIndexCacheKey(indexFile);
+    GridIndex index = cache.get(key);
+    if (index == null) {
+      index = new GribIndexReader().open(indexFile.getPath());
+      if (index != null)
+        cache.put(key, index, getHeapSize(index));
+    }
+    return index;
+  }
+
+  // put a just written or extended index into the indexCache
+  private GridIndex cacheIndex(File indexFile, GridIndex index) {
+    MemoryCache<String, GridIndex> cache = indexCache;
+    if ((cache != null) && (index != null) && indexFile.exists())
+      cache.put(getIndexCacheKey(indexFile), index, getHeapSize(index));
     return index;
   }
 
+  // Making the variables marks each record as belonging to its GridVariable. When indexes are cached, the records are
+  // shared by every file opened from the index, so clear that, else the next open warns that each record already
+  // belongs to a variable, and the cache keeps the previous file's objects alive.
+  private void releaseRecords(GridIndex index) {
+    if (indexCache == null) return;
+    for (GridRecord record : index.getGridRecords()) {
+      if (record instanceof GribGridRecord)
+        ((GribGridRecord) record).setBelongs(null);
+    }
+  }
+
+  // estimated heap used by a parsed index; much more than the length of its index file
+  private long getHeapSize(GridIndex index) {
+    return (long) (index.getGridRecords().size() + index.getHorizCoordSys().size()) * indexRecordBytes;
+  }
+
+  // the length and modification time of the index file change when it is rewritten or extended
+  private String getIndexCacheKey(File indexFile) {
+    return indexFile.getPath() + "#" + indexFile.length() + "#" + indexFile.lastModified();
+  }
+
   public boolean sync() throws IOException {
 
     // has the file changed?
@@ -359,7 +448,7 @@ public class GribGridServiceProvider extends GridServiceProvider {
       if (indexFileModeOnSync == IndexExtendMode.readonly) {
         log.debug("  sync() read Index = " + indexFile.getPath());
         try {
-          index = new GribIndexReader().open(indexFile.getPath());
+          index = readIndex(indexFile);
         } catch (Exception e) {
           log.warn("  sync() return false: GribReadIndex() failed = " + indexFile.getPath());
           return false;
@@ -409,7 +498,7 @@ public class GribGridServiceProvider extends GridServiceProvider {
     } else if (saveEdition == 2) {
       index = new Grib2WriteIndex().extendGribIndex(gribFile, indexFile, indexFile.getPath(), raf, true);
     }
-    return index;
+    return cacheIndex(indexFile, index);
 
   }
 
@@ -425,13 +514,63 @@ public class GribGridServiceProvider extends GridServiceProvider {
   /////////////////////////////////////////////////////////////////////////////////////////////////
 
   protected float[] _readData(GridRecord gr) throws IOException {
+    return readData(dataReaderGrib1, dataReaderGrib2, gr);
+  }
+
+  private float[] readData(Grib1Data dataReaderGrib1, Grib2Data dataReaderGrib2, GridRecord gr) throws IOException {
     GribGridRecord ggr = (GribGridRecord) gr;
+    MemoryCache<String, float[]> cache = recordCache; // may be changed by another thread
+
+    // the record offsets identify the record within the file; the file length changes if the file is rewritten
+    String key = null;
+    if (cache != null) {
+      key = raf.getLocation() + "#" + rafLength + "#" + ggr.getGdsOffset() + "#" + ggr.getPdsOffset();
+      float[] data = cache.get(key);
+      if (data != null) return data;
+    }
+
+    float[] data;
     if (saveEdition == 2) {
-      return dataReaderGrib2.getData(ggr.getGdsOffset(), ggr.getPdsOffset(), ggr.getReferenceTimeInMsecs());
+      data = dataReaderGrib2.getData(ggr.getGdsOffset(), ggr.getPdsOffset(), ggr.getReferenceTimeInMsecs());
     } else if (version >= 8 ) {
-      return dataReaderGrib1.getData(ggr.getGdsOffset(), ggr.getPdsOffset(), ggr.getDecimalScale(), ggr.isBmsExists());
+      data = dataReaderGrib1.getData(ggr.getGdsOffset(), ggr.getPdsOffset(), ggr.getDecimalScale(), ggr.isBmsExists());
     } else {  
-      return dataReaderGrib1.getData(ggr.getGdsOffset(), ggr.getDecimalScale(), ggr.isBmsExists());
+      data = dataReaderGrib1.getData(ggr.getGdsOffset(), ggr.getDecimalScale(), ggr.isBmsExists());
+    }
+
+    if ((cache != null) && (data != null))
+      cache.put(key, data, 4L * data.length);
+    return data;
+  }
+
+  // a reader on its own file handle, to decode records in parallel. only for local files
+  @Override
+  protected RecordReader openRecordReader() throws IOException {
+    if ((raf.getClass() != RandomAccessFile.class) || !new File(raf.getLocation()).exists())
+      return null;
+    return new GribRecordReader(new RandomAccessFile(raf.getLocation(), "r"));
+  }
+
+  private class GribRecordReader implements RecordReader {
+    private RandomAccessFile myRaf;
+    private Grib1Data myReaderGrib1;
+    private Grib2Data myReaderGrib2;
+
+    GribRecordReader(RandomAccessFile myRaf) {
+      this.myRaf = myRaf;
+      myRaf.order(RandomAccessFile.BIG_ENDIAN);
+      if (saveEdition == 2)
+        myReaderGrib2 = new Grib2Data(myRaf);
+      else
+        myReaderGrib1 = new Grib1Data(myRaf);
+    }
+
+    public float[] readData(GridRecord gr) throws IOException {
+      return GribGridServiceProvider.this.readData(myReaderGrib1, myReaderGrib2, gr);
+    }
+
+    public void close() throws IOException {
+      myRaf.close();
     }
   }
 }
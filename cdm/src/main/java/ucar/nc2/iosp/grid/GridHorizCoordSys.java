@@ -513,18 +513,9 @@ public class GridHorizCoordSys {
     int ny = yData.length;
 
     // create the data
-    ProjectionPointImpl projPoint = new ProjectionPointImpl();
-    LatLonPointImpl latlonPoint = new LatLonPointImpl();
-    double[] latData = new double[nx * ny];
-    double[] lonData = new double[nx * ny];
-    for (int i = 0; i < ny; i++) {
-      for (int j = 0; j < nx; j++) {
-        projPoint.setLocation(xData[j], yData[i]);
-        proj.projToLatLon(projPoint, latlonPoint);
-        latData[i * nx + j] = latlonPoint.getLatitude();
-        lonData[i * nx + j] = latlonPoint.getLongitude();
-      }
-    }
+    double[][] latlonData = proj.projToLatLonGrid(xData, yData);
+    double[] latData = latlonData[0];
+    double[] lonData = latlonData[1];
     Array latDataArray = Array.factory(DataType.DOUBLE, new int[]{ny, nx}, latData);
     latVar.setCachedData(latDataArray, false);
 
@@ -45,6 +45,13 @@ import ucar.grid.GridIndex;
 import ucar.grid.GridRecord;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 /**
  * Superclass for Gempak grid, MciDAS grid, and GRIB IOSPs
@@ -183,6 +190,25 @@ public abstract class GridServiceProvider extends AbstractIOServiceProvider {
     alwaysInCache = b;
   }
 
+  // experimental multithreading: decode the records of one read in parallel
+  static private Executor decodeExecutor;
+  static private int decodeTasks = 4;
+
+  /**
+   * Decode the records of a multi-record read (eg many times or levels) in parallel. The records are divided among
+   * up to ntasks tasks, each with its own RecordReader, which write the decoded data directly into the result.
+   * Only used by iosps that implement openRecordReader().
+   *
+   * @param exec   use this executor, may be bounded. if null, records are decoded on the calling thread.
+   * @param ntasks maximum number of tasks for one read; must be > 0
+   */
+  static public void setDecodeExecutor(Executor exec, int ntasks) {
+    if (ntasks <= 0)
+      throw new IllegalArgumentException("ntasks must be > 0");
+    decodeExecutor = exec;
+    decodeTasks = ntasks;
+  }
+
   ////////////////////////////////////////////////////////////////////////////////////////////////
 
   /**
@@ -265,6 +291,7 @@ public abstract class GridServiceProvider extends AbstractIOServiceProvider {
     long start = System.currentTimeMillis();
 
     Array dataArray = Array.factory(DataType.FLOAT, section.getShape());
+    float[] result = (float[]) dataArray.getStorage();
     GridVariable pv = (GridVariable) v2.getSPobject();
 
     // Canonical ordering is ens, time, level, lat, lon
@@ -275,19 +302,41 @@ public abstract class GridServiceProvider extends AbstractIOServiceProvider {
     Range yRange = section.getRange(rangeIdx++);
     Range xRange = section.getRange(rangeIdx);
 
-    IndexIterator ii = dataArray.getIndexIterator();
-
+    // the records in canonical order; the ith one fills the ith YX slab of the result. null means missing
+    List<GridRecord> records = new ArrayList<GridRecord>();
     // loop over ens
     for (int ensIdx = ensRange.first(); ensIdx <= ensRange.last(); ensIdx += ensRange.stride()) {
       //loop over time
       for (int timeIdx = timeRange.first(); timeIdx <= timeRange.last(); timeIdx += timeRange.stride()) {
         //loop over level
         for (int levelIdx = levRange.first(); levelIdx <= levRange.last(); levelIdx += levRange.stride()) {
-          readXY(v2, ensIdx, timeIdx, levelIdx, yRange, xRange, ii);
+          records.add(pv.findRecord(ensIdx, timeIdx, levelIdx));
         }
       }
     }
 
+    int slabSize = yRange.length() * xRange.length();
+    int nx = pv.getHorizCoordSys().getNx();
+    int nrecords = 0;
+    for (int i = 0; i < records.size(); i++) {
+      if (records.get(i) == null)
+        fillMissing(v2, result, i * slabSize, slabSize);
+      else
+        nrecords++;
+    }
+
+    boolean done = false;
+    if ((decodeExecutor != null) && (nrecords > 1))
+      done = readXYParallel(records, nx, yRange, xRange, result);
+
+    if (!done) {
+      for (int i = 0; i < records.size(); i++) {
+        GridRecord record = records.get(i);
+        if (record != null)
+          copyXY(_readData(record), nx, yRange, xRange, result, i * slabSize);
+      }
+    }
+
     if (debugTiming) {
       long took = System.currentTimeMillis() - start;
       System.out.println("  read data took=" + took + " msec ");
@@ -297,45 +346,116 @@ public abstract class GridServiceProvider extends AbstractIOServiceProvider {
   }
 
   /**
-   * read one YX array
+   * Decode the records on the decodeExecutor, each task with its own RecordReader.
    *
-   * @param v2      variable to put the data into
-   * @param ensIdx  ensemble index
-   * @param timeIdx time index
-   * @param levIdx  level index
-   * @param yRange  x range
-   * @param xRange  y range
-   * @param ii      index iterator
-   * @throws IOException           problem reading the file
-   * @throws InvalidRangeException invalid range
+   * @param records the records, in the order of the YX slabs of the result; null means missing (already filled)
+   * @param nx      x size of a record
+   * @param yRange  y range
+   * @param xRange  x range
+   * @param result  put the data here
+   * @return false if this iosp cant read in parallel
+   * @throws IOException problem reading the file
    */
-  private void readXY(Variable v2, int ensIdx, int timeIdx, int levIdx, Range yRange, Range xRange, IndexIterator ii)
-          throws IOException, InvalidRangeException {
-
-    GridVariable pv = (GridVariable) v2.getSPobject();
-    GridHorizCoordSys hsys = pv.getHorizCoordSys();
-    int nx = hsys.getNx();
-    GridRecord record = pv.findRecord(ensIdx, timeIdx, levIdx);
-
-    if (record == null) {
-      Attribute att = v2.findAttribute("missing_value");
-      float missing_value = (att == null) ? -9999.0f : att.getNumericValue().floatValue();
+  private boolean readXYParallel(final List<GridRecord> records, final int nx, final Range yRange, final Range xRange,
+                                 final float[] result) throws IOException {
+    int ntasks = Math.min(decodeTasks, records.size());
+    List<RecordReader> readers = new ArrayList<RecordReader>(ntasks);
+    try {
+      for (int t = 0; t < ntasks; t++) {
+        RecordReader reader = openRecordReader();
+        if (reader == null) break;
+        readers.add(reader);
+      }
+    } catch (IOException e) {
+      for (RecordReader reader : readers) reader.close();
+      throw e;
+    }
+    if (readers.size() < 2) {
+      for (RecordReader reader : readers) reader.close();
+      return false;
+    }
+    ntasks = readers.size();
+
+    // each task decodes a contiguous run of the records, so reads go forward through the file
+    final int slabSize = yRange.length() * xRange.length();
+    int perTask = (records.size() + ntasks - 1) / ntasks;
+    List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>(ntasks);
+    for (int t = 0; t < ntasks; t++) {
+      final RecordReader reader = readers.get(t);
+      final int first = Math.min(records.size(), t * perTask);
+      final int last = Math.min(records.size(), first + perTask);
+      FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+        public Object call() throws IOException {
+          try {
+            for (int i = first; i < last; i++) {
+              GridRecord record = records.get(i);
+              if (record != null)
+                copyXY(reader.readData(record), nx, yRange, xRange, result, i * slabSize);
+            }
+          } finally {
+            reader.close();
+          }
+          return null;
+        }
+      });
+      decodeExecutor.execute(task);
+      tasks.add(task);
+    }
 
-      int xyCount = yRange.length() * xRange.length();
-      for (int j = 0; j < xyCount; j++) {
-        ii.setFloatNext(missing_value);
+    // wait for all of them, so that all the readers get closed
+    Throwable failed = null;
+    for (FutureTask<Object> task : tasks) {
+      try {
+        task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        if (failed == null) failed = e;
+      } catch (ExecutionException e) {
+        if (failed == null) failed = e.getCause();
       }
-      return;
     }
 
-    // otherwise read it
-    float[] data = _readData(record);
+    if (failed instanceof IOException) throw (IOException) failed;
+    if (failed instanceof RuntimeException) throw (RuntimeException) failed;
+    if (failed instanceof InterruptedException) throw new IOException("interrupted while decoding records");
+    if (failed != null) throw new IOException(failed.getMessage());
+    return true;
+  }
+
+  /**
+   * Fill a missing YX slab with the missing value
+   *
+   * @param v2     variable to put the data into
+   * @param result put the data here
+   * @param offset start of the slab in result
+   * @param count  size of the slab
+   */
+  private void fillMissing(Variable v2, float[] result, int offset, int count) {
+    Attribute att = v2.findAttribute("missing_value");
+    float missing_value = (att == null) ? -9999.0f : att.getNumericValue().floatValue();
+    Arrays.fill(result, offset, offset + count, missing_value);
+  }
 
-    // LOOK can improve with System.copy ??
+  /**
+   * Copy the wanted subset of one decoded record into its YX slab of the result
+   *
+   * @param data   decoded record, nx values per row
+   * @param nx     x size of a record
+   * @param yRange y range
+   * @param xRange x range
+   * @param result put the data here
+   * @param offset start of the slab in result
+   */
+  private void copyXY(float[] data, int nx, Range yRange, Range xRange, float[] result, int offset) {
+    int xlen = xRange.length();
     for (int y = yRange.first(); y <= yRange.last(); y += yRange.stride()) {
-      for (int x = xRange.first(); x <= xRange.last(); x += xRange.stride()) {
-        int index = y * nx + x;
-        ii.setFloatNext(data[index]);
+      int row = y * nx;
+      if (xRange.stride() == 1) {
+        System.arraycopy(data, row + xRange.first(), result, offset, xlen);
+        offset += xlen;
+      } else {
+        for (int x = xRange.first(); x <= xRange.last(); x += xRange.stride())
+          result[offset++] = data[row + x];
       }
     }
   }
@@ -392,7 +512,7 @@ public abstract class GridServiceProvider extends AbstractIOServiceProvider {
   } */
 
   /**
-   * Read the data for this GridRecord
+   * Read the data for this GridRecord. The returned array may be shared (eg cached), so must not be modified.
    *
    * @param gr grid identifier
    * @return the data (or null)
@@ -400,4 +520,37 @@ public abstract class GridServiceProvider extends AbstractIOServiceProvider {
    */
   protected abstract float[] _readData(GridRecord gr) throws IOException;
 
+  /**
+   * Decodes GridRecords without using the iosp's RandomAccessFile, so it can be used on another thread.
+   */
+  protected interface RecordReader {
+
+    /**
+     * Read the data for this GridRecord
+     *
+     * @param gr grid identifier
+     * @return the data
+     * @throws IOException problem reading the data
+     */
+    float[] readData(GridRecord gr) throws IOException;
+
+    /**
+     * Release the resources (eg the file handle)
+     *
+     * @throws IOException on close error
+     */
+    void close() throws IOException;
+  }
+
+  /**
+   * Open a RecordReader with its own resources, so that records can be decoded in parallel.
+   * This implementation returns null, meaning not supported.
+   *
+   * @return RecordReader, or null if not supported
+   * @throws IOException problem opening the file
+   */
+  protected RecordReader openRecordReader() throws IOException {
+    return null;
+  }
+
 }
@@ -0,0 +1,352 @@
+/*
+ * Copyright 1998-2009 University Corporation for Atmospheric Research/Unidata
+ *
+ * Portions of this software were developed by the Unidata Program at the
+ * University Corporation for Atmospheric Research.
+ *
+ * Access and use of this software shall impose the following obligations
+ * and understandings on the user. The user is granted the right, without
+ * any fee or cost, to use, copy, modify, alter, enhance and distribute
+ * this software, and any derivative works thereof, and its supporting
+ * documentation for any purpose whatsoever, provided that this entire
+ * notice appears in all copies of the software, derivative works and
+ * supporting documentation.  Further, UCAR requests that the user credit
+ * UCAR/Unidata in any publications that result from the use of this
+ * software or in any product that includes this software. The names UCAR
+ * and/or Unidata, however, may not be used in any advertising or publicity
+ * to endorse or promote any products or commercial entity unless specific
+ * written permission is obtained from UCAR/Unidata. The user also
+ * understands that UCAR/Unidata is not obligated to provide the user with
+ * any support, consulting, training or assistance of any kind with regard
+ * to the use, operation and performance of this software nor to provide
+ * the user with any updates, revisions, new versions or "bug fixes."
+ *
+ * THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ * INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ * FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ * NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ * WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.iosp.hdf5;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Applies the HDF5 filter pipeline (Message Type 11) to a chunk of data, when reading.
+ * The filters are undone in reverse order, skipping the ones marked in the chunk's filterMask.
+ * <p/>
+ * Decoders for deflate, shuffle, fletcher32 and scaleoffset are built in.
+ * Others may be added with registerDecoder().
+ *
+ * @author caron
+ */
+public class H5FilterPipeline {
+
+  /**
+   * Undoes one HDF5 filter.
+   */
+  static public interface Decoder {
+    /**
+     * Decode one chunk.
+     *
+     * @param data     the encoded bytes; may be modified or returned.
+     * @param params   the filter's client data values, from the filter message
+     * @param elemSize size in bytes of one element of the variable
+     * @param sizeHint expected size of the fully decoded chunk, for preallocating
+     * @return the decoded bytes
+     * @throws IOException on error, eg a bad checksum
+     */
+    public byte[] decode(byte[] data, int[] params, int elemSize, int sizeHint) throws IOException;
+  }
+
+  static private final Map<Integer, Decoder> decoders = new HashMap<Integer, Decoder>();
+
+  static {
+    registerDecoder(1, new Inflate());
+    registerDecoder(2, new Shuffle());
+    registerDecoder(3, new Fletcher32());
+    registerDecoder(6, new ScaleOffset());
+  }
+
+  /**
+   * Register a Decoder for a filter id, replacing any existing one.
+   *
+   * @param filterId HDF5 filter id
+   * @param decoder  decoder for that filter
+   */
+  static public synchronized void registerDecoder(int filterId, Decoder decoder) {
+    decoders.put(filterId, decoder);
+  }
+
+  /**
+   * @param filterId HDF5 filter id
+   * @return true if there is a Decoder for this filter
+   */
+  static public synchronized boolean canDecode(int filterId) {
+    return decoders.containsKey(filterId);
+  }
+
+  static private synchronized Decoder getDecoder(int filterId) {
+    return decoders.get(filterId);
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////
+
+  private final H5header.Filter[] filters;
+  private final Decoder[] pipeline;
+  private final int elemSize;
+  private final int chunkBytes;
+
+  /**
+   * Constructor.
+   *
+   * @param filters    the filters from the filter message, in the order they were applied on writing
+   * @param elemSize   size in bytes of one element of the variable
+   * @param chunkBytes size in bytes of a decoded chunk
+   * @throws IOException if a filter has no Decoder
+   */
+  H5FilterPipeline(H5header.Filter[] filters, int elemSize, int chunkBytes) throws IOException {
+    this.filters = filters;
+    this.elemSize = elemSize;
+    this.chunkBytes = chunkBytes;
+    this.pipeline = new Decoder[filters.length];
+    for (int i = 0; i < filters.length; i++) {
+      pipeline[i] = getDecoder(filters[i].id);
+      if (pipeline[i] == null)
+        throw new IOException("HDF5 unsupported filter id " + filters[i].id + " (" + filters[i].name + ")");
+    }
+  }
+
+  /**
+   * Undo the filters on one chunk.
+   *
+   * @param data       the chunk's bytes as stored in the file
+   * @param filterMask bit i set means filter i was not applied to this chunk
+   * @return the decoded bytes
+   * @throws IOException on error
+   */
+  byte[] decode(byte[] data, int filterMask) throws IOException {
+    for (int i = filters.length - 1; i >= 0; i--) {
+      if (((filterMask >>> i) & 1) != 0) continue;
+      data = pipeline[i].decode(data, filters[i].data, elemSize, chunkBytes);
+    }
+    return data;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////
+
+  // filter id 1
+  static private class Inflate implements Decoder {
+    public byte[] decode(byte[] data, int[] params, int elemSize, int sizeHint) throws IOException {
+      Inflater inflater = new Inflater();
+      inflater.setInput(data);
+      byte[] result = new byte[Math.max(sizeHint, 2 * data.length)];
+      int n = 0;
+      try {
+        while (!inflater.finished()) {
+          if (n == result.length) { // sizeHint too small
+            byte[] bigger = new byte[2 * result.length];
+            System.arraycopy(result, 0, bigger, 0, n);
+            result = bigger;
+          }
+          int count = inflater.inflate(result, n, result.length - n);
+          if ((count == 0) && (inflater.needsInput() || inflater.needsDictionary()))
+            throw new IOException("HDF5 deflate: truncated compressed data");
+          n += count;
+        }
+      } catch (DataFormatException e) {
+        throw new IOException("HDF5 deflate: " + e.getMessage(), e);
+      } finally {
+        inflater.end();
+      }
+
+      if (n == result.length) return result;
+      byte[] trimmed = new byte[n];
+      System.arraycopy(result, 0, trimmed, 0, n);
+      return trimmed;
+    }
+  }
+
+  // filter id 2: byte k of each element was moved to the kth block of the chunk
+  static private class Shuffle implements Decoder {
+    public byte[] decode(byte[] data, int[] params, int elemSize, int sizeHint) throws IOException {
+      int n = (params.length > 0) ? params[0] : elemSize;
+      if (n <= 1) return data;
+
+      int m = data.length / n; // number of elements; any leftover bytes were not shuffled
+      byte[] result = new byte[data.length];
+      for (int j = 0; j < n; j++) {
+        int src = j * m;
+        for (int i = 0, dest = j; i < m; i++, dest += n)
+          result[dest] = data[src + i];
+      }
+      int leftover = m * n;
+      System.arraycopy(data, leftover, result, leftover, data.length - leftover);
+      return result;
+    }
+  }
+
+  // filter id 3: 4 byte checksum, little endian, on the end
+  static private class Fletcher32 implements Decoder {
+    public byte[] decode(byte[] data, int[] params, int elemSize, int sizeHint) throws IOException {
+      int len = data.length - 4;
+      if (len < 0)
+        throw new IOException("HDF5 fletcher32: chunk too small");
+
+      int stored = (data[len] & 0xff) | (data[len + 1] & 0xff) << 8 | (data[len + 2] & 0xff) << 16 | (data[len + 3] & 0xff) << 24;
+      int sum = checksum(data, len);
+      // HDF5 before 1.6.3 stored the bytes of each 16 bit half reversed on little endian machines
+      int reversed = ((sum & 0x00ff00ff) << 8) | ((sum >>> 8) & 0x00ff00ff);
+      if ((stored != sum) && (stored != reversed))
+        throw new IOException("HDF5 fletcher32: checksum failed");
+
+      byte[] result = new byte[len];
+      System.arraycopy(data, 0, result, 0, len);
+      return result;
+    }
+
+    // same as H5_checksum_fletcher32
+    static int checksum(byte[] data, int nbytes) {
+      int sum1 = 0, sum2 = 0;
+      int pos = 0;
+      int len = nbytes / 2;
+      while (len > 0) {
+        int tlen = (len > 360) ? 360 : len;
+        len -= tlen;
+        for (int k = 0; k < tlen; k++, pos += 2) {
+          sum1 += ((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff);
+          sum2 += sum1;
+        }
+        sum1 = (sum1 & 0xffff) + (sum1 >>> 16);
+        sum2 = (sum2 & 0xffff) + (sum2 >>> 16);
+      }
+
+      if (nbytes % 2 == 1) {
+        sum1 += (data[pos] & 0xff) << 8;
+        sum2 += sum1;
+        sum1 = (sum1 & 0xffff) + (sum1 >>> 16);
+        sum2 = (sum2 & 0xffff) + (sum2 >>> 16);
+      }
+
+      sum1 = (sum1 & 0xffff) + (sum1 >>> 16);
+      sum2 = (sum2 & 0xffff) + (sum2 >>> 16);
+      return (sum2 << 16) | sum1;
+    }
+  }
+
+  // filter id 6, see H5Zscaleoffset.c
+  // params: 0=scale type, 1=scale factor, 2=nelems, 3=class, 4=size, 5=sign, 6=byte order, 7=fill available, 8...=fill value
+  // data: 4 byte minbits (LE), 1 byte size of minval, minval (LE), packed values starting at byte 21
+  static private class ScaleOffset implements Decoder {
+    static private final int FLOAT_DSCALE = 0, CLASS_FLOAT = 1, ORDER_BE = 1, FILL_DEFINED = 1;
+    static private final int headerSize = 21;
+
+    public byte[] decode(byte[] data, int[] params, int elemSize, int sizeHint) throws IOException {
+      if (params.length < 8)
+        throw new IOException("HDF5 scaleoffset: missing filter parameters");
+      int scaleType = params[0];
+      int scaleFactor = params[1];
+      int nelems = params[2];
+      boolean isFloat = (params[3] == CLASS_FLOAT);
+      int size = params[4];
+      ByteOrder order = (params[6] == ORDER_BE) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+      boolean hasFill = (params[7] == FILL_DEFINED);
+      long fill = hasFill ? fillValue(params) : 0;
+      if (isFloat && (scaleType != FLOAT_DSCALE))
+        throw new IOException("HDF5 scaleoffset: float E-scaling not supported");
+
+      int minbits = (data[0] & 0xff) | (data[1] & 0xff) << 8 | (data[2] & 0xff) << 16 | (data[3] & 0xff) << 24;
+      int minvalSize = Math.min(8, data[4] & 0xff);
+      long minval = 0;
+      for (int i = 0; i < minvalSize; i++)
+        minval |= (long) (data[5 + i] & 0xff) << (8 * i);
+
+      byte[] result = new byte[nelems * size];
+      ByteBuffer bb = ByteBuffer.wrap(result);
+      bb.order(order);
+
+      if (minbits == size * 8) { // stored at full precision, in little endian order
+        System.arraycopy(data, headerSize, result, 0, result.length);
+        if (order == ByteOrder.BIG_ENDIAN)
+          reverseBytes(result, size);
+        return result;
+      }
+
+      long fillPacked = (minbits == 64) ? -1L : (1L << minbits) - 1;
+      double scale = Math.pow(10.0, scaleFactor);
+      long bitPos = 8L * headerSize;
+      for (int i = 0; i < nelems; i++) {
+        long packed = unpack(data, bitPos, minbits);
+        bitPos += minbits;
+
+        if (isFloat) {
+          if (size == 4) {
+            float val = (hasFill && (packed == fillPacked)) ? Float.intBitsToFloat((int) fill) :
+                (float) ((int) packed / scale + Float.intBitsToFloat((int) minval));
+            bb.putFloat(val);
+          } else {
+            double val = (hasFill && (packed == fillPacked)) ? Double.longBitsToDouble(fill) :
+                packed / scale + Double.longBitsToDouble(minval);
+            bb.putDouble(val);
+          }
+
+        } else {
+          long val = (hasFill && (packed == fillPacked)) ? fill : packed + minval;
+          switch (size) {
+            case 1: bb.put((byte) val); break;
+            case 2: bb.putShort((short) val); break;
+            case 4: bb.putInt((int) val); break;
+            case 8: bb.putLong(val); break;
+            default: throw new IOException("HDF5 scaleoffset: unsupported element size " + size);
+          }
+        }
+      }
+      return result;
+    }
+
+    // fill value bytes are packed, little endian, into params[8], params[9]
+    private long fillValue(int[] params) {
+      long fill = params[8] & 0xffffffffL;
+      if (params.length > 9)
+        fill |= (long) params[9] << 32;
+      return fill;
+    }
+
+    // read nbits starting at bitPos, most significant bit first
+    private long unpack(byte[] data, long bitPos, int nbits) {
+      long val = 0;
+      int pos = (int) (bitPos >>> 3);
+      int bitOffset = (int) (bitPos & 7);
+      while (nbits > 0) {
+        int avail = 8 - bitOffset;
+        int take = Math.min(avail, nbits);
+        int bits = ((data[pos] & 0xff) >>> (avail - take)) & ((1 << take) - 1);
+        val = (val << take) | bits;
+        nbits -= take;
+        bitOffset = 0;
+        pos++;
+      }
+      return val;
+    }
+
+    private void reverseBytes(byte[] b, int size) {
+      for (int start = 0; start < b.length; start += size) {
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+          byte tmp = b[start + i];
+          b[start + i] = b[start + j];
+          b[start + j] = tmp;
+        }
+      }
+    }
+  }
+
+}
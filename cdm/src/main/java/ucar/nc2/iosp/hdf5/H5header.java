@@ -996,13 +996,15 @@ public class H5header {
       return null;
     }
 
-    // deal with filters, cant do SZIP
+    // deal with filters, skip SZIP unless a decoder was registered; others without a decoder fail when the data is read
     if (facade.dobj.mfp != null) {
       for (Filter f : facade.dobj.mfp.filters) {
-        if (f.id == 4) {
+        if ((f.id == 4) && !H5FilterPipeline.canDecode(f.id)) {
           debugOut.println("SKIPPING variable with SZIP Filter= " + facade.dobj.mfp + " for variable " + facade.name);
           return null;
         }
+        if (!H5FilterPipeline.canDecode(f.id))
+          log.warn("Variable " + facade.name + " has unsupported filter id " + f.id + " (" + f.name + "), its data cant be read");
       }
     }
 
@@ -4102,12 +4104,14 @@ public class H5header {
   /**
    * This holds info for chunked data storage.
    * level 1A
+   * The btree is read once, the first time its needed, into a ChunkIndex.
    */
   class DataBTree {
     private Variable owner;
     private long rootNodeAddress;
     private Tiling tiling;
     private int ndimStorage, wantType;
+    private ChunkIndex chunkIndex; // lazy
 
     DataBTree(long rootNodeAddress, int[] varShape, int[] storageSize) throws IOException {
       this.rootNodeAddress = rootNodeAddress;
@@ -4128,65 +4132,126 @@ public class H5header {
       return new DataChunkIterator2(want, nChunkDim);
     }
 
-    // An Iterator over the DataChunks in the btree.
-    // returns only the actual data from the btree leaf (level 0) nodes.
+    /**
+     * Get the index of all the chunks, reading the btree the first time.
+     * @return the ChunkIndex
+     * @throws IOException on read error
+     */
+    synchronized ChunkIndex getChunkIndex() throws IOException {
+      if (chunkIndex == null)
+        chunkIndex = new ChunkIndex();
+      return chunkIndex;
+    }
+
+    // An Iterator over the DataChunks in the chunk index.
     class DataChunkIterator2 implements LayoutTiled.DataChunkIterator {
-      private Node root;
+      private ChunkIndex index;
       private int nChunkDim;
+      private int current;
 
       /**
        * Constructor
-       * @param want skip any nodes that are before this section
+       * @param want skip any chunks that are before this section
        * @param nChunkDim number of chunk dimensions - may be less than the offset[] length
        * @throws IOException on error
        */
       DataChunkIterator2(Section want, int nChunkDim) throws IOException {
         this.nChunkDim = nChunkDim;
-        root = new Node(rootNodeAddress, -1); // should we cache the nodes ???
-        int[] wantOrigin = (want != null) ? want.getOrigin() : null;
-        root.first(wantOrigin);
+        this.index = getChunkIndex();
+        this.current = index.first((want != null) ? want.getOrigin() : null);
       }
 
       public boolean hasNext() {
-        return root.hasNext(); //  && !node.greaterThan(wantOrigin);
+        return current < index.nchunks;
       }
 
       public LayoutTiled.DataChunk next() throws IOException {
-        DataChunk dc = root.next();
-        int[] offset = dc.offset;
-        if (offset.length > nChunkDim) { // may have to eliminate last offset
-          offset = new int[nChunkDim];
-          System.arraycopy(dc.offset, 0, offset, 0, nChunkDim);
-        }
-        return new LayoutTiled.DataChunk( offset, dc.filePos);
+        int[] offset = index.getOffset(current, Math.min(nChunkDim, ndimStorage)); // may have to eliminate last offset
+        return new LayoutTiled.DataChunk( offset, index.filePos[current++]);
       }
     }
 
 
-    // An Iterator over the DataChunks in the btree.
-    // returns only the actual data from the btree leaf (level 0) nodes.
+    // An Iterator over the DataChunks in the chunk index.
     class DataChunkIterator {
-      private Node root;
-      private int[] wantOrigin;
+      private ChunkIndex index;
+      private int current;
 
       /**
        * Constructor
        *
-       * @param want skip any nodes that are before this section
+       * @param want skip any chunks that are before this section
        * @throws IOException on error
        */
       DataChunkIterator(Section want) throws IOException {
-        root = new Node(rootNodeAddress, -1); // should we cache the nodes ???
-        wantOrigin = (want != null) ? want.getOrigin() : null;
-        root.first(wantOrigin);
+        this.index = getChunkIndex();
+        this.current = index.first((want != null) ? want.getOrigin() : null);
       }
 
       public boolean hasNext() {
-        return root.hasNext(); //  && !node.greaterThan(wantOrigin);
+        return current < index.nchunks;
       }
 
       public DataChunk next() throws IOException {
-        return root.next();
+        return index.getDataChunk(current++);
+      }
+    }
+
+    /**
+     * All the chunks of a variable, read from the btree leaf (level 0) nodes, kept in primitive arrays.
+     * The chunks are in btree order, which is the order of the tile they belong to.
+     */
+    class ChunkIndex {
+      final int nchunks;
+      final int[] offsets; // offsets[i * ndimStorage + j] = offset of chunk i, dimension j
+      final long[] filePos;
+      final int[] size;
+      final int[] filterMask;
+      private final int[] order; // tiling.order(offset) of each chunk, should be increasing
+      private boolean sorted = true; // if not, dont use binary search
+
+      ChunkIndex() throws IOException {
+        List<DataChunk> chunks = new ArrayList<DataChunk>();
+        Node root = new Node(rootNodeAddress, -1);
+        root.first(null);
+        while (root.hasNext())
+          chunks.add(root.next());
+
+        nchunks = chunks.size();
+        offsets = new int[nchunks * ndimStorage];
+        filePos = new long[nchunks];
+        size = new int[nchunks];
+        filterMask = new int[nchunks];
+        order = new int[nchunks];
+        for (int i = 0; i < nchunks; i++) {
+          DataChunk dc = chunks.get(i);
+          System.arraycopy(dc.offset, 0, offsets, i * ndimStorage, ndimStorage);
+          filePos[i] = dc.filePos;
+          size[i] = dc.size;
+          filterMask[i] = dc.filterMask;
+          order[i] = tiling.order(dc.offset);
+          if ((i > 0) && (order[i] < order[i - 1])) sorted = false;
+        }
+        if (debugDataBtree) debugOut.println("  ChunkIndex for " + owner + " has " + nchunks + " chunks");
+      }
+
+      // first chunk that is not before the tile containing wantOrigin
+      int first(int[] wantOrigin) {
+        if ((wantOrigin == null) || !sorted) return 0;
+        int i = Arrays.binarySearch(order, tiling.order(wantOrigin));
+        if (i < 0) return -i - 1; // insertion point
+        while ((i > 0) && (order[i - 1] == order[i])) i--;
+        return i;
+      }
+
+      int[] getOffset(int i, int ndim) {
+        int[] offset = new int[ndim];
+        System.arraycopy(offsets, i * ndimStorage, offset, 0, ndim);
+        return offset;
+      }
+
+      DataChunk getDataChunk(int i) {
+        return new DataChunk(size[i], filterMask[i], getOffset(i, ndimStorage), filePos[i]);
       }
     }
 
@@ -4354,6 +4419,13 @@ public class H5header {
       int[] offset; // offset index of this chunk, reletive to entire array
       long filePos; // filePos of a single raw data chunk
 
+      DataChunk(int size, int filterMask, int[] offset, long filePos) {
+        this.size = size;
+        this.filterMask = filterMask;
+        this.offset = offset;
+        this.filePos = filePos;
+      }
+
       DataChunk(int ndim, boolean last) throws IOException {
         this.size = raf.readInt();
         this.filterMask = raf.readInt();
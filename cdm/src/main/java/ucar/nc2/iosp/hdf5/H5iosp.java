@@ -39,11 +39,14 @@ import ucar.nc2.iosp.*;
 import ucar.nc2.iosp.hdf4.HdfEos;
 import ucar.nc2.iosp.hdf4.H4header;
 import ucar.nc2.*;
+import ucar.nc2.util.cache.MemoryCache;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.ByteArrayOutputStream;
 import java.util.Date;
+import java.util.concurrent.Executor;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
@@ -80,6 +83,41 @@ public class H5iosp extends AbstractIOServiceProvider {
     H4header.setDebugFlags(debugFlag);
   }
 
+  // experimental multithreading: decompress filtered chunks in parallel
+  static Executor chunkExecutor;
+  static int chunkPrefetch = 4;
+
+  /**
+   * Decompress filtered (eg deflated) chunks in parallel. The chunks are read on the calling thread, then handed
+   * to the executor to be decompressed, keeping up to nprefetch chunks ahead of the chunk being copied into the result.
+   *
+   * @param exec      use this executor, may be bounded. if null, chunks are decompressed on the calling thread.
+   * @param nprefetch number of chunks to decompress ahead; must be > 0
+   */
+  static public void setChunkExecutor(Executor exec, int nprefetch) {
+    if (nprefetch <= 0)
+      throw new IllegalArgumentException("nprefetch must be > 0");
+    chunkExecutor = exec;
+    chunkPrefetch = nprefetch;
+  }
+
+  // cache of decompressed chunks, used by all files that dont set their own
+  static private MemoryCache<String, byte[]> defaultChunkCache;
+
+  /**
+   * Set the default cache of decompressed chunks, used by files opened after this call.
+   * A file may use its own cache instead, by sending it as the iospMessage when the file is opened.
+   *
+   * @param cache cache decompressed chunks of filtered variables here; may be null for no caching.
+   */
+  static public void setChunkCache(MemoryCache<String, byte[]> cache) {
+    defaultChunkCache = cache;
+  }
+
+  static public MemoryCache<String, byte[]> getChunkCache() {
+    return defaultChunkCache;
+  }
+
   public boolean isValidFile(ucar.unidata.io.RandomAccessFile raf) throws IOException {
     return H5header.isValidFile(raf);
   }
@@ -96,6 +134,8 @@ public class H5iosp extends AbstractIOServiceProvider {
 
   private RandomAccessFile myRaf;
   private H5header headerParser;
+  private MemoryCache<String, byte[]> chunkCache = defaultChunkCache;
+  private String chunkCacheKey; // identifies this version of the file in the chunk cache
 
   /////////////////////////////////////////////////////////////////////////////
   // reading
@@ -104,6 +144,8 @@ public class H5iosp extends AbstractIOServiceProvider {
                    ucar.nc2.util.CancelTask cancelTask) throws IOException {
 
     this.myRaf = raf;
+    // the length and modification time are in the key, so chunks cached from an earlier version of the file are not used
+    chunkCacheKey = raf.getLocation() + "#" + raf.length() + "#" + new File(raf.getLocation()).lastModified();
     headerParser = new H5header(myRaf, ncfile, this);
     headerParser.read(null);
 
@@ -139,7 +181,7 @@ public class H5iosp extends AbstractIOServiceProvider {
       if (debugFilter) System.out.println("read variable filtered " + v2.getFullName() + " vinfo = " + vinfo);
       assert vinfo.isChunked;
       ByteOrder bo = (vinfo.typeInfo.endian == 0) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
-      layout = new H5tiledLayoutBB(v2, wantSection, myRaf, vinfo.mfp.getFilters(), bo);
+      layout = new H5tiledLayoutBB(v2, wantSection, myRaf, vinfo.mfp.getFilters(), bo, chunkCache, chunkCacheKey);
       data = IospHelper.readDataFill((LayoutBB) layout, v2.getDataType(), vinfo.getFillValue());
 
     } else { // normal case
@@ -424,6 +466,8 @@ public class H5iosp extends AbstractIOServiceProvider {
     }
 
     // normal case
+    if (endian >= 0) // positional reads need an explicit byte order
+      return IospHelper.readDataFillPositional(myRaf, layout, dataType, fillValue, endian, convertChar);
     return IospHelper.readDataFill(myRaf, layout, dataType, fillValue, endian, convertChar);
   }
 
@@ -486,8 +530,19 @@ public class H5iosp extends AbstractIOServiceProvider {
   static private class FakeNetcdfFile extends NetcdfFile {
   }
 
-  // debug
+  // the iospMessage cant carry the type parameters; a cache of anything else fails on the first get or put
+  @SuppressWarnings("unchecked")
+  static private MemoryCache<String, byte[]> asChunkCache(MemoryCache cache) {
+    return (MemoryCache<String, byte[]>) cache;
+  }
+
   public Object sendIospMessage(Object message) {
+    if (message instanceof MemoryCache) { // use this chunk cache for this file
+      chunkCache = asChunkCache((MemoryCache) message);
+      return Boolean.TRUE;
+    }
+
+    // debug
     if (message.toString().equals("header"))
       return headerParser;
     
@@ -38,20 +38,20 @@ import ucar.ma2.Section;
 import ucar.nc2.iosp.LayoutBB;
 import ucar.nc2.iosp.LayoutBBTiled;
 import ucar.nc2.Variable;
-import ucar.nc2.util.IO;
+import ucar.nc2.util.cache.MemoryCache;
 import ucar.unidata.io.RandomAccessFile;
 
 import java.io.IOException;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.LinkedList;
+import java.util.concurrent.*;
 
 /**
  * Iterator to read/write subsets of an array.
  * This calculates byte offsets for HD5 chunked datasets.
  * Assumes that the data is stored in chunks, indexed by a Btree.
- * for unfiltered data only
+ * Filtered chunks are decoded with an H5FilterPipeline.
  *
  * @author caron
  */
@@ -59,8 +59,10 @@ class H5tiledLayoutBB implements LayoutBB {
   private LayoutBBTiled delegate;
 
   private RandomAccessFile raf;
-  private H5header.Filter[] filters;
+  private H5FilterPipeline pipeline;
   private ByteOrder byteOrder;
+  private MemoryCache<String, byte[]> chunkCache; // may be null
+  private String chunkCacheKey; // identifies the file in chunkCache
                                                                                                      
   private Section want;
   private int[] chunkSize; // from the StorageLayout message (exclude the elemSize)
@@ -77,10 +79,14 @@ class H5tiledLayoutBB implements LayoutBB {
    * @param wantSection the wanted section of data, contains a List of Range objects. must be complete
    * @param raf the RandomAccessFile
    * @param filters set of filters that have been applied to the data
+   * @param byteOrder byte order of the data
+   * @param chunkCache cache of decompressed chunks, may be null
+   * @param chunkCacheKey identifies this version of the file in chunkCache
    * @throws InvalidRangeException if section invalid for this variable
    * @throws java.io.IOException   on io error
    */
-  H5tiledLayoutBB(Variable v2, Section wantSection, RandomAccessFile raf, H5header.Filter[] filters, ByteOrder byteOrder) throws InvalidRangeException, IOException {
+  H5tiledLayoutBB(Variable v2, Section wantSection, RandomAccessFile raf, H5header.Filter[] filters, ByteOrder byteOrder,
+                  MemoryCache<String, byte[]> chunkCache, String chunkCacheKey) throws InvalidRangeException, IOException {
     wantSection = Section.fill(wantSection, v2.getShape());
 
     H5header.Vinfo vinfo = (H5header.Vinfo) v2.getSPobject();
@@ -88,8 +94,9 @@ class H5tiledLayoutBB implements LayoutBB {
     assert vinfo.btree != null;
 
     this.raf = raf;
-    this.filters = filters;
     this.byteOrder = byteOrder;
+    this.chunkCache = chunkCache;
+    this.chunkCacheKey = chunkCacheKey;
 
     // we have to translate the want section into the same rank as the storageSize, in order to be able to call
     // Section.intersect(). It appears that storageSize (actually msl.chunkSize) may have an extra dimension, reletive
@@ -106,9 +113,14 @@ class H5tiledLayoutBB implements LayoutBB {
     System.arraycopy(vinfo.storageSize, 0, chunkSize, 0, nChunkDims);
     this.elemSize = vinfo.storageSize[vinfo.storageSize.length - 1]; // last one is always the elements size
 
+    int chunkBytes = elemSize;
+    for (int len : chunkSize) chunkBytes *= len;
+    this.pipeline = new H5FilterPipeline(filters, elemSize, chunkBytes);
+
     // create the data chunk iterator
     H5header.DataBTree.DataChunkIterator iter = vinfo.btree.getDataChunkIterator(this.want);
-    DataChunkIterator dcIter = new DataChunkIterator(iter);
+    LayoutBBTiled.DataChunkIterator dcIter = (H5iosp.chunkExecutor == null) ? new DataChunkIterator(iter) :
+        new PrefetchDataChunkIterator(iter, H5iosp.chunkExecutor, H5iosp.chunkPrefetch);
     delegate = new LayoutBBTiled(dcIter, chunkSize, elemSize, this.want);
     
     if (debug) System.out.println(" H5tiledLayout: " + this);
@@ -159,6 +171,114 @@ class H5tiledLayoutBB implements LayoutBB {
     }
   }
 
+  // Reads chunks on the calling thread, and decompresses up to nprefetch of them ahead on the executor.
+  // Chunks that dont intersect the wanted section are skipped here, so they are not decompressed.
+  private class PrefetchDataChunkIterator implements LayoutBBTiled.DataChunkIterator {
+    H5header.DataBTree.DataChunkIterator delegate;
+    Executor executor;
+    int nprefetch;
+    LinkedList<PrefetchedDataChunk> pending = new LinkedList<PrefetchedDataChunk>();
+
+    PrefetchDataChunkIterator(H5header.DataBTree.DataChunkIterator delegate, Executor executor, int nprefetch) {
+      this.delegate = delegate;
+      this.executor = executor;
+      this.nprefetch = nprefetch;
+    }
+
+    public boolean hasNext() {
+      try {
+        fill();
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      return !pending.isEmpty();
+    }
+
+    public LayoutBBTiled.DataChunk next() throws IOException {
+      fill();
+      return pending.removeFirst();
+    }
+
+    private void fill() throws IOException {
+      try {
+        while ((pending.size() < nprefetch) && delegate.hasNext()) {
+          final DataChunk dc = new DataChunk(delegate.next());
+          try {
+            if (!new Section(dc.getOffset(), chunkSize).intersects(want))
+              continue;
+          } catch (InvalidRangeException e) {
+            throw new IllegalStateException(e);
+          }
+
+          byte[] cached = dc.getCached();
+          if (cached != null) {
+            pending.add(new PrefetchedDataChunk(this, dc, cached));
+            continue;
+          }
+
+          final byte[] raw = dc.read();
+          FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() {
+            public byte[] call() throws Exception {
+              return dc.filter(raw);
+            }
+          });
+          executor.execute(task);
+          pending.add(new PrefetchedDataChunk(this, dc, task));
+        }
+      } catch (IOException e) {
+        cancel();
+        throw e;
+      }
+    }
+
+    // stop decompressing chunks that no one will use
+    void cancel() {
+      for (PrefetchedDataChunk p : pending)
+        if (p.result != null) p.result.cancel(false);
+      pending.clear();
+    }
+  }
+
+  private class PrefetchedDataChunk implements LayoutBBTiled.DataChunk {
+    PrefetchDataChunkIterator iter;
+    DataChunk dc;
+    Future<byte[]> result;
+    byte[] data;
+
+    PrefetchedDataChunk(PrefetchDataChunkIterator iter, DataChunk dc, Future<byte[]> result) {
+      this.iter = iter;
+      this.dc = dc;
+      this.result = result;
+    }
+
+    PrefetchedDataChunk(PrefetchDataChunkIterator iter, DataChunk dc, byte[] data) {
+      this.iter = iter;
+      this.dc = dc;
+      this.data = data;
+    }
+
+    public int[] getOffset() {
+      return dc.getOffset();
+    }
+
+    public ByteBuffer getByteBuffer() throws IOException {
+      if (data != null)
+        return dc.wrap(data);
+      try {
+        return dc.wrap(result.get());
+      } catch (InterruptedException e) {
+        iter.cancel();
+        Thread.currentThread().interrupt();
+        throw new IOException("interrupted while decompressing chunk", e);
+      } catch (ExecutionException e) {
+        iter.cancel();
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) throw (IOException) cause;
+        throw new IOException("failed to decompress chunk " + dc.delegate, cause);
+      }
+    }
+  }
+
   private class DataChunk implements ucar.nc2.iosp.LayoutBBTiled.DataChunk {
     H5header.DataBTree.DataChunk delegate;
 
@@ -176,88 +296,42 @@ class H5tiledLayoutBB implements LayoutBB {
     }
 
     public ByteBuffer getByteBuffer() throws IOException {
-      // read the data
-      byte[] data = new byte[delegate.size];
-      raf.seek(delegate.filePos);
-      raf.readFully(data);
-
-      // apply filters backwards
-      for (int i = filters.length - 1; i >= 0; i--) {
-        H5header.Filter f = filters[i];
-        if (isBitSet(delegate.filterMask, i)) {
-          if (debug) System.out.println("skip for chunk " + delegate);
-          continue;
-        }
-        if (f.id == 1) {
-          data = inflate(data);
-        } else if (f.id == 2) {
-          data = shuffle(data, f.data[0]);
-        } else if (f.id == 3) {
-          data = checkfletcher32(data);
-        } else
-          throw new RuntimeException("Unknown filter type="+f.id);
-      }
+      byte[] data = getCached();
+      if (data == null)
+        data = filter(read());
+      return wrap(data);
+    }
 
-      ByteBuffer result = ByteBuffer.wrap(data);
-      result.order(byteOrder);
-      return result;
+    // the file position identifies the chunk within the file
+    private String getCacheKey() {
+      return chunkCacheKey + "#" + delegate.filePos;
     }
 
-    /**
-     * inflate data
-     *
-     * @param compressed compressed data
-     * @return ucompressed data
-     * @throws IOException on I/O error
-     */
-    private byte[] inflate(byte[] compressed) throws IOException {
-      // run it through the Inflator
-      ByteArrayInputStream in = new ByteArrayInputStream(compressed);
-      java.util.zip.InflaterInputStream inflater = new java.util.zip.InflaterInputStream(in);
-      ByteArrayOutputStream out = new ByteArrayOutputStream(8 * compressed.length);
-      IO.copy(inflater, out);
-
-      byte[] uncomp = out.toByteArray();
-      if (debug) System.out.println(" inflate bytes in= " + compressed.length + " bytes out= " + uncomp.length);
-      return uncomp;
+    byte[] getCached() {
+      return (chunkCache == null) ? null : chunkCache.get(getCacheKey());
     }
 
-    // LOOK fake
-    private byte[] checkfletcher32(byte[] org) throws IOException {
-      byte[] result = new byte[org.length-4];
-      System.arraycopy(org, 0, result, 0, result.length);
-      if (debug) System.out.println(" checkfletcher32 bytes in= " + org.length + " bytes out= " + result.length);
+    ByteBuffer wrap(byte[] data) {
+      ByteBuffer result = ByteBuffer.wrap(data);
+      result.order(byteOrder);
       return result;
     }
 
-    private byte[] shuffle(byte[] data, int n) throws IOException {
-      if (debug) System.out.println(" shuffle bytes in= " + data.length + " n= " + n);
-
-      assert data.length % n == 0;
-      if (n <= 1) return data;
-
-      int m = data.length / n;
-      int[] count = new int[n];
-      for (int k = 0; k < n; k++) count[k] = k * m;
-
-      byte[] result = new byte[data.length];
-      /* for (int i = 0; i < data.length; i += n) {
-        for (int k = 0; k < n; k++) {
-          result[count[k]++] = data[i + k];
-        }
-      } */
-
-      for (int i = 0; i < m; i++) {
-        for (int j = 0; j < n; j++) {
-          result[i*n+j] = data[i + count[j]];
-        }
-      }
-
-      return result;
+    // read the raw data
+    byte[] read() throws IOException {
+      byte[] data = new byte[delegate.size];
+      raf.readFully(delegate.filePos, data, 0, data.length);
+      return data;
     }
 
-    boolean isBitSet(int val, int bitno) {
-      return ((val >>> bitno) & 1) != 0;
+    // does not use the raf, so may be called from another thread
+    byte[] filter(byte[] data) throws IOException {
+      if (debug) System.out.println(" filter chunk " + delegate + " bytes in= " + data.length);
+      data = pipeline.decode(data, delegate.filterMask);
+
+      if (chunkCache != null)
+        chunkCache.put(getCacheKey(), data, data.length);
+      return data;
     }
 
   }
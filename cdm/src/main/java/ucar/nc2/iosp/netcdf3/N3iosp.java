@@ -115,11 +115,14 @@ public abstract class N3iosp extends AbstractIOServiceProvider implements IOServ
   static public final int MAX_NUMRECS = Integer.MAX_VALUE;
 
   static private boolean syncExtendOnly = false;
+  static private long directReadBytes = 0; // 0 = only when needed
 
   /**
    * Set a static property.
    * Supported static properties: <ul>
    * <li> syncExtendOnly = "true" : assume all file changes are syncExtend only.
+   * <li> directReadBytes = "n" : read numeric data of n bytes or more into an ArrayBB, outside the java heap.
+   *   Reads of more than 2^31 elements always return an ArrayBB. Default is 0, meaning only when needed.
    * </ul>
    *
    * @param name  property name
@@ -128,6 +131,8 @@ public abstract class N3iosp extends AbstractIOServiceProvider implements IOServ
   static public void setProperty(String name, String value) {
     if (name.equalsIgnoreCase("syncExtendOnly"))
       syncExtendOnly = value.equalsIgnoreCase("true");
+    else if (name.equalsIgnoreCase("directReadBytes"))
+      directReadBytes = Long.parseLong(value);
   }
 
 /*
@@ -427,10 +432,23 @@ public String NC_check_name(String name) {
       return Array.factory(dataType.getPrimitiveClassType(), section.getShape());
     }
 
+    if (useDirectRead(layout, dataType)) {
+      ArrayBB result = ArrayBB.factory(dataType, section.getShape(), java.nio.ByteOrder.BIG_ENDIAN);
+      return IospHelper.readDataPositional(raf, layout, result);
+    }
+
     Object data = readData(layout, dataType);
     return Array.factory(dataType.getPrimitiveClassType(), section.getShape(), data);
   }
 
+  // read into an ArrayBB if there are too many elements for a java array, or if the data is larger than directReadBytes
+  private boolean useDirectRead(Layout layout, DataType dataType) {
+    if (!dataType.isNumeric()) return false;
+    long nelems = layout.getTotalNelems();
+    if (nelems > Integer.MAX_VALUE) return true;
+    return (directReadBytes > 0) && (nelems * dataType.getSize() >= directReadBytes);
+  }
+
   /**
    * Read data from record structure. For N3, this is the only possible structure, and there can be no nesting.
    * Read all variables for each record, put in ByteBuffer.
@@ -35,6 +35,7 @@ package ucar.nc2.iosp.netcdf3;
 import ucar.ma2.*;
 import ucar.nc2.iosp.Layout;
 import ucar.nc2.iosp.IospHelper;
+import ucar.unidata.io.RandomAccessFile;
 
 import java.nio.channels.WritableByteChannel;
 
@@ -54,12 +55,13 @@ public class N3raf extends N3iosp  {
 
   /**
    * Read data subset from file for a variable, create primitive array.
+   * Uses positional reads, so does not change the file pointer.
    * @param index handles skipping around in the file.
    * @param dataType dataType of the variable
    * @return primitive array with data read in
    */
  protected Object readData( Layout index, DataType dataType) throws java.io.IOException {
-   return IospHelper.readDataFill(raf, index, dataType, null, -1);
+   return IospHelper.readDataFillPositional(raf, index, dataType, null, RandomAccessFile.BIG_ENDIAN, true);
  }
 
   /**
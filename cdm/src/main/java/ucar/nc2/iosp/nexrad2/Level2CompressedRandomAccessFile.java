@@ -0,0 +1,224 @@
+/*
+ * Copyright 1998-2009 University Corporation for Atmospheric Research/Unidata
+ *
+ * Portions of this software were developed by the Unidata Program at the
+ * University Corporation for Atmospheric Research.
+ *
+ * Access and use of this software shall impose the following obligations
+ * and understandings on the user. The user is granted the right, without
+ * any fee or cost, to use, copy, modify, alter, enhance and distribute
+ * this software, and any derivative works thereof, and its supporting
+ * documentation for any purpose whatsoever, provided that this entire
+ * notice appears in all copies of the software, derivative works and
+ * supporting documentation.  Further, UCAR requests that the user credit
+ * UCAR/Unidata in any publications that result from the use of this
+ * software or in any product that includes this software. The names UCAR
+ * and/or Unidata, however, may not be used in any advertising or publicity
+ * to endorse or promote any products or commercial entity unless specific
+ * written permission is obtained from UCAR/Unidata. The user also
+ * understands that UCAR/Unidata is not obligated to provide the user with
+ * any support, consulting, training or assistance of any kind with regard
+ * to the use, operation and performance of this software nor to provide
+ * the user with any updates, revisions, new versions or "bug fixes."
+ *
+ * THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ * INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ * FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ * NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ * WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.iosp.nexrad2;
+
+import ucar.unidata.io.BlockCompressedRandomAccessFile;
+import ucar.unidata.io.RandomAccessFile;
+import ucar.unidata.io.bzip2.BZip2ReadException;
+import ucar.unidata.io.bzip2.CBZip2InputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Read a bzip2 compressed Level II file as if it were uncompressed.
+ * After the volume header, the file is a series of independently compressed blocks, each preceded by its length,
+ * so each one is a block of the index.
+ *
+ * @author caron
+ */
+class Level2CompressedRandomAccessFile extends BlockCompressedRandomAccessFile {
+  static private org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(Level2CompressedRandomAccessFile.class);
+
+  /**
+   * Read the compressed blocks that follow the volume header.
+   *
+   * @param raf     the compressed file
+   * @param offsets add the file offset of each block's length here
+   * @return the compressed blocks, including the leading "BZ"
+   * @throws IOException on read error
+   */
+  static List<byte[]> readCompressed(RandomAccessFile raf, List<Long> offsets) throws IOException {
+    List<byte[]> result = new ArrayList<byte[]>();
+    long pos = Level2Record.FILE_HEADER_SIZE;
+    long clen = raf.length();
+    while (pos + 4 <= clen) {
+      raf.seek(pos);
+      int numCompBytes = raf.readInt();
+      if (numCompBytes == -1) break;
+
+      byte[] buf = new byte[Math.abs(numCompBytes)];
+      raf.readFully(buf);
+      offsets.add(pos);
+      result.add(buf);
+      pos += 4 + buf.length;
+
+      // the last block has the number of bytes negated
+      if (numCompBytes < 0) break;
+    }
+    return result;
+  }
+
+  /**
+   * Uncompress the blocks, in parallel if an executor is given.
+   * The blocks are divided into up to ntasks contiguous runs, each with its own CBZip2InputStream.
+   *
+   * @param blocks   the compressed blocks, including the leading "BZ"
+   * @param location file location, for log messages
+   * @param exec     run the tasks on this; if null, uncompress on the calling thread
+   * @param ntasks   maximum number of tasks
+   * @return the uncompressed blocks, in the same order
+   * @throws IOException on read error
+   */
+  static byte[][] uncompress(final List<byte[]> blocks, final String location, Executor exec, int ntasks)
+      throws IOException {
+    final byte[][] result = new byte[blocks.size()][];
+    ntasks = Math.min(ntasks, blocks.size());
+    if ((exec == null) || (ntasks < 2)) {
+      CBZip2InputStream cbzip2 = new CBZip2InputStream();
+      for (int i = 0; i < blocks.size(); i++)
+        result[i] = uncompress(cbzip2, blocks.get(i), location);
+      return result;
+    }
+
+    int perTask = (blocks.size() + ntasks - 1) / ntasks;
+    List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>(ntasks);
+    for (int t = 0; t < ntasks; t++) {
+      final int first = Math.min(blocks.size(), t * perTask);
+      final int last = Math.min(blocks.size(), first + perTask);
+      FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+        public Object call() throws IOException {
+          CBZip2InputStream cbzip2 = new CBZip2InputStream();
+          for (int i = first; i < last; i++)
+            result[i] = uncompress(cbzip2, blocks.get(i), location);
+          return null;
+        }
+      });
+      exec.execute(task);
+      tasks.add(task);
+    }
+
+    Throwable failed = null;
+    for (FutureTask<Object> task : tasks) {
+      try {
+        task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        if (failed == null) failed = e;
+      } catch (ExecutionException e) {
+        if (failed == null) failed = e.getCause();
+      }
+    }
+
+    if (failed instanceof IOException) throw (IOException) failed;
+    if (failed instanceof RuntimeException) throw (RuntimeException) failed;
+    if (failed instanceof InterruptedException) throw new IOException("interrupted while uncompressing " + location);
+    if (failed != null) throw new IOException(failed.getMessage());
+    return result;
+  }
+
+  // uncompress one block; a bad block is logged and dropped, as when uncompressing to a file
+  static private byte[] uncompress(CBZip2InputStream cbzip2, byte[] buf, String location) throws IOException {
+    cbzip2.setStream(new ByteArrayInputStream(buf, 2, buf.length - 2)); // skip "BZ"
+    ByteArrayOutputStream out = new ByteArrayOutputStream(4 * buf.length);
+    byte[] ubuff = new byte[40000];
+    try {
+      int nread;
+      while ((nread = cbzip2.read(ubuff)) != -1)
+        out.write(ubuff, 0, nread);
+    } catch (BZip2ReadException ioe) {
+      log.warn("Level2 uncompress " + location, ioe);
+      return new byte[0];
+    }
+    return out.toByteArray();
+  }
+
+  ///////////////////////////////////////////////////////////////////////////////////
+
+  private Executor executor;
+  private int ntasks;
+  private CBZip2InputStream cbzip2 = new CBZip2InputStream();
+
+  /**
+   * Constructor.
+   *
+   * @param raf        the compressed file, closed when this is closed
+   * @param bufferSize size of read buffer
+   * @param executor   uncompress the blocks in parallel on this when building the index, may be null
+   * @param ntasks     maximum number of tasks when building the index
+   * @throws IOException on read error
+   */
+  Level2CompressedRandomAccessFile(RandomAccessFile raf, int bufferSize, Executor executor, int ntasks)
+      throws IOException {
+    super(raf, bufferSize);
+    this.executor = executor;
+    this.ntasks = ntasks;
+    compressed.order(RandomAccessFile.BIG_ENDIAN);
+    try {
+      openIndex();
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  protected long buildIndex(List<Block> blocks) throws IOException {
+    blocks.add(new Block(0, 0, null)); // the volume header is not compressed
+
+    List<Long> offsets = new ArrayList<Long>();
+    byte[][] udata = uncompress(readCompressed(compressed, offsets), location, executor, ntasks);
+
+    long upos = Level2Record.FILE_HEADER_SIZE;
+    for (int i = 0; i < udata.length; i++) {
+      if (udata[i].length == 0) continue; // nothing to read, eg a bad block was dropped
+      cacheBlock(blocks.size(), udata[i]);
+      blocks.add(new Block(offsets.get(i), upos, null));
+      upos += udata[i].length;
+    }
+    return upos;
+  }
+
+  protected void readBlock(Block block, byte[] data) throws IOException {
+    if (block.cpos == 0) {
+      compressed.seek(0);
+      compressed.readFully(data);
+      return;
+    }
+
+    compressed.seek(block.cpos);
+    byte[] buf = new byte[Math.abs(compressed.readInt())];
+    compressed.readFully(buf);
+    byte[] udata = uncompress(cbzip2, buf, location);
+    if (udata.length != data.length)
+      throw new IOException("Level2 block at " + block.cpos + " has length " + udata.length + " expected " + data.length);
+    System.arraycopy(udata, 0, data, 0, data.length);
+  }
+
+}
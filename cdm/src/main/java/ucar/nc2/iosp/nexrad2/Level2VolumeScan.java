@@ -35,6 +35,7 @@
 package ucar.nc2.iosp.nexrad2;
 
 import ucar.unidata.io.RandomAccessFile;
+import ucar.unidata.io.InMemoryRandomAccessFile;
 import ucar.nc2.util.CancelTask;
 import ucar.nc2.util.DiskCache;
 import ucar.nc2.NetcdfFile;
@@ -44,6 +45,7 @@ import java.io.*;
 import java.util.*;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
+import java.util.concurrent.Executor;
 
 import ucar.unidata.io.bzip2.CBZip2InputStream;
 import ucar.unidata.io.bzip2.BZip2ReadException;
@@ -73,6 +75,38 @@ public class Level2VolumeScan {
   static public final String AR2V0006 = "AR2V0006";
 
   static private org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(Level2VolumeScan.class);
+
+  static private boolean readCompressedDirectly = false;
+
+  /**
+   * Read compressed files through a block index, decompressing only the blocks that are read,
+   * instead of writing an uncompressed copy to the DiskCache. Default is false.
+   * The index can be persisted with BlockCompressedRandomAccessFile.setIndexCache().
+   *
+   * @param b true to read compressed files directly
+   */
+  static public void setReadCompressedDirectly(boolean b) {
+    readCompressedDirectly = b;
+  }
+
+  static private Executor uncompressExecutor;
+  static private int uncompressTasks = 4;
+
+  /**
+   * Uncompress the bzip2 blocks of a compressed file in parallel, and keep the uncompressed file in memory
+   * instead of writing it to the DiskCache. An uncompressed file already in the DiskCache is still used.
+   * When reading compressed files directly, the executor is used to build the block index.
+   * As when uncompressing to a file, a block that fails to uncompress is logged and left out.
+   *
+   * @param exec   use this executor, may be bounded. if null, blocks are uncompressed on the calling thread.
+   * @param ntasks maximum number of tasks for one file; must be > 0
+   */
+  static public void setUncompressExecutor(Executor exec, int ntasks) {
+    if (ntasks <= 0)
+      throw new IllegalArgumentException("ntasks must be > 0");
+    uncompressExecutor = exec;
+    uncompressTasks = ntasks;
+  }
   ////////////////////////////////////////////////////////////////////////////////////
 
   // Data file
@@ -151,7 +185,12 @@ public class Level2VolumeScan {
             || dataFormat.equals(AR2V0004) || dataFormat.equals(AR2V0006) ) {
       raf.skipBytes(4);
       String BZ = raf.readString(2);
-      if (BZ.equals("BZ")) {
+      if (BZ.equals("BZ") && readCompressedDirectly) {
+        // closes the original raf when its closed
+        raf = new Level2CompressedRandomAccessFile(raf, 8092, uncompressExecutor, uncompressTasks);
+        raf.order(RandomAccessFile.BIG_ENDIAN);
+
+      } else if (BZ.equals("BZ")) {
         RandomAccessFile uraf;
         File uncompressedFile = DiskCache.getFileStandardPolicy(raf.getLocation() + ".uncompress");
 
@@ -183,6 +222,9 @@ public class Level2VolumeScan {
           }
           uraf = new ucar.unidata.io.RandomAccessFile(uncompressedFile.getPath(), "r");
 
+        } else if (uncompressExecutor != null) {
+          uraf = uncompressInMemory(raf);
+
         } else {
           // nope, gotta uncompress it
           uraf = uncompress(raf, uncompressedFile.getPath());
@@ -655,6 +697,37 @@ public class Level2VolumeScan {
     return last.getDate();
   }
 
+  /**
+   * Uncompress the file into memory, uncompressing the blocks in parallel.
+   *
+   * @param inputRaf file to uncompress
+   * @return raf of uncompressed file
+   * @throws IOException on read error
+   */
+  private RandomAccessFile uncompressInMemory(RandomAccessFile inputRaf) throws IOException {
+    byte[] header = new byte[Level2Record.FILE_HEADER_SIZE];
+    inputRaf.seek(0);
+    inputRaf.readFully(header);
+
+    List<byte[]> compressed = Level2CompressedRandomAccessFile.readCompressed(inputRaf, new ArrayList<Long>());
+    byte[][] blocks = Level2CompressedRandomAccessFile.uncompress(compressed, inputRaf.getLocation(),
+        uncompressExecutor, uncompressTasks);
+
+    int total = header.length;
+    for (byte[] block : blocks) total += block.length;
+    byte[] data = new byte[total];
+    System.arraycopy(header, 0, data, 0, header.length);
+    int pos = header.length;
+    for (byte[] block : blocks) {
+      System.arraycopy(block, 0, data, pos, block.length);
+      pos += block.length;
+    }
+
+    if (log.isDebugEnabled())
+      log.debug("uncompressed " + blocks.length + " blocks into memory, " + total + " bytes");
+    return new InMemoryRandomAccessFile(inputRaf.getLocation(), data);
+  }
+
   /**
    * Write equivilent uncompressed version of the file.
    *
@@ -121,10 +121,22 @@ public abstract class Aggregation {
 
   // experimental multithreading
   static protected Executor executor;
+  static protected int maxParallelReads = 8;
   static public void setExecutor(Executor exec) {
     executor = exec;
   }
 
+  /**
+   * Read nested datasets in parallel using this Executor.
+   *
+   * @param exec             use this Executor, or null to read serially
+   * @param maxParallelReads maximum number of nested datasets to read at once, for one section read
+   */
+  static public void setExecutor(Executor exec, int maxParallelReads) {
+    executor = exec;
+    Aggregation.maxParallelReads = Math.max(1, maxParallelReads);
+  }
+
   static public void setTypicalDatasetMode(String mode) {
     if (mode.equalsIgnoreCase("random"))
       typicalDatasetMode = TypicalDataset.RANDOM;
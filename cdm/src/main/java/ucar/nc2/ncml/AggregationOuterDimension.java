@@ -275,8 +275,9 @@ public abstract class AggregationOuterDimension extends Aggregation implements P
 
     if (debug) System.out.println("   agg wants range=" + mainv.getFullName() + "(" + joinRange + ")");
 
-    // LOOK: could multithread here
+    // find the nested datasets that are needed
     List<Dataset> nestedDatasets = getDatasets();
+    List<SectionReaderTask> tasks = new ArrayList<SectionReaderTask>();
     for (Dataset nested : nestedDatasets) {
       DatasetOuterDimension dod = (DatasetOuterDimension) nested;
       Range nestedJoinRange = dod.getNestedJoinRange(joinRange);
@@ -285,20 +286,66 @@ public abstract class AggregationOuterDimension extends Aggregation implements P
       //if (debug)
       //  System.out.println("   agg use " + nested.aggStart + ":" + nested.aggEnd + " range= " + nestedJoinRange + " file " + nested.getLocation());
 
-      Array varData;
+      List<Range> want;
       if ((type == Type.joinNew) || (type == Type.forecastModelRunCollection)) {
-        varData = dod.read(mainv, cancelTask, innerSection);
+        want = innerSection;
       } else {
-        nestedSection.set(0, nestedJoinRange);
-        varData = dod.read(mainv, cancelTask, nestedSection);
+        want = new ArrayList<Range>(nestedSection);
+        want.set(0, nestedJoinRange);
       }
+      tasks.add(new SectionReaderTask(dod, mainv, cancelTask, want, tasks.size()));
+    }
 
-      if ((cancelTask != null) && cancelTask.isCancel())
+    if ((executor != null) && (tasks.size() > 1)) {
+      // read up to maxParallelReads at once; results are copied in order, so ones that finish early wait
+      CompletionService<Result> completionService = new ExecutorCompletionService<Result>(executor);
+      List<Future<Result>> futures = new ArrayList<Future<Result>>(tasks.size());
+      Array[] done = new Array[tasks.size()];
+      int next = 0, nextCopy = 0;
+      try {
+        while (nextCopy < tasks.size()) {
+          while ((next < tasks.size()) && (next - nextCopy < maxParallelReads))
+            futures.add(completionService.submit(tasks.get(next++)));
+
+          Result r = completionService.take().get();
+          if ((cancelTask != null) && cancelTask.isCancel()) {
+            cancelAll(futures);
+            return null;
+          }
+          done[r.index] = MAMath.convert(r.data, dtype); // just in case it need to be converted
+
+          while ((nextCopy < tasks.size()) && (done[nextCopy] != null)) {
+            Array varData = done[nextCopy];
+            Array.arraycopy(varData, 0, sectionData, destPos, (int) varData.getSize());
+            destPos += varData.getSize();
+            done[nextCopy++] = null; // help the gc
+          }
+        }
+
+      } catch (InterruptedException e) {
+        cancelAll(futures);
+        Thread.currentThread().interrupt();
         return null;
-      varData = MAMath.convert(varData, dtype); // just in case it need to be converted
 
-      Array.arraycopy(varData, 0, sectionData, destPos, (int) varData.getSize());
-      destPos += varData.getSize();
+      } catch (ExecutionException e) {
+        cancelAll(futures);
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) throw (IOException) cause;
+        if (cause instanceof InvalidRangeException) throw (InvalidRangeException) cause;
+        throw new IOException(cause.getMessage(), cause);
+      }
+
+    } else {
+
+      for (SectionReaderTask task : tasks) {
+        Array varData = task.call().data;
+        if ((cancelTask != null) && cancelTask.isCancel())
+          return null;
+        varData = MAMath.convert(varData, dtype); // just in case it need to be converted
+
+        Array.arraycopy(varData, 0, sectionData, destPos, (int) varData.getSize());
+        destPos += varData.getSize();
+      }
     }
 
     return sectionData;
@@ -403,6 +450,33 @@ public abstract class AggregationOuterDimension extends Aggregation implements P
     }
   }
 
+  private class SectionReaderTask implements Callable<Result> {
+    DatasetOuterDimension dod;
+    Variable mainv;
+    CancelTask cancelTask;
+    List<Range> section;
+    int index;
+
+    SectionReaderTask(DatasetOuterDimension dod, Variable mainv, CancelTask cancelTask, List<Range> section, int index) {
+      this.dod = dod;
+      this.mainv = mainv;
+      this.cancelTask = cancelTask;
+      this.section = section;
+      this.index = index;
+    }
+
+    public Result call() throws IOException, InvalidRangeException {
+      Array data = dod.read(mainv, cancelTask, section);
+      return new Result(data, index);
+    }
+  }
+
+  // dont interrupt running reads: an interrupt closes the underlying file channel, which may be shared or cached
+  private void cancelAll(List<Future<Result>> futures) {
+    for (Future<Result> f : futures)
+      f.cancel(false);
+  }
+
   private class Result {
     Array data;
     int index;
@@ -0,0 +1,140 @@
+/*
+ * Copyright 1998-2009 University Corporation for Atmospheric Research/Unidata
+ * 
+ * Portions of this software were developed by the Unidata Program at the 
+ * University Corporation for Atmospheric Research.
+ * 
+ * Access and use of this software shall impose the following obligations
+ * and understandings on the user. The user is granted the right, without
+ * any fee or cost, to use, copy, modify, alter, enhance and distribute
+ * this software, and any derivative works thereof, and its supporting
+ * documentation for any purpose whatsoever, provided that this entire
+ * notice appears in all copies of the software, derivative works and
+ * supporting documentation.  Further, UCAR requests that the user credit
+ * UCAR/Unidata in any publications that result from the use of this
+ * software or in any product that includes this software. The names UCAR
+ * and/or Unidata, however, may not be used in any advertising or publicity
+ * to endorse or promote any products or commercial entity unless specific
+ * written permission is obtained from UCAR/Unidata. The user also
+ * understands that UCAR/Unidata is not obligated to provide the user with
+ * any support, consulting, training or assistance of any kind with regard
+ * to the use, operation and performance of this software nor to provide
+ * the user with any updates, revisions, new versions or "bug fixes."
+ * 
+ * THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ * INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ * FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ * NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ * WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.stream;
+
+import ucar.ma2.Array;
+import ucar.ma2.ArrayBB;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * An OutputStream that fills the storage of a primitive Array, converting the bytes as they are written.
+ * Used to decode ncstream data a buffer at a time, so the bytes and the Array are not both held in memory.
+ *
+ * @author caron
+ */
+class ArrayOutputStream extends OutputStream {
+  private final Object storage;
+  private final int size, elemSize;
+  private final ByteBuffer pending;
+  private int count; // number of elements filled
+
+  /**
+   * Constructor.
+   *
+   * @param result fill this Array, must be canonical with a primitive storage array (eg from Array.factory())
+   * @param order  byte order of the data
+   */
+  ArrayOutputStream(Array result, ByteOrder order) {
+    if (result instanceof ArrayBB) // its storage is a copy
+      throw new IllegalArgumentException("not a primitive array " + result.getElementType());
+    this.storage = result.getStorage();
+    this.size = (int) result.getSize();
+
+    if ((storage instanceof byte[]) || (storage instanceof char[])) elemSize = 1;
+    else if (storage instanceof short[]) elemSize = 2;
+    else if ((storage instanceof int[]) || (storage instanceof float[])) elemSize = 4;
+    else if ((storage instanceof long[]) || (storage instanceof double[])) elemSize = 8;
+    else throw new IllegalArgumentException("not a primitive array " + result.getElementType());
+
+    this.pending = ByteBuffer.allocate(8 * 1024 * elemSize);
+    this.pending.order(order);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[]{(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if ((long) count * elemSize + pending.position() + len > (long) size * elemSize)
+      throw new IOException("ArrayOutputStream: more data than the array size " + size);
+
+    while (len > 0) {
+      int n = Math.min(len, pending.remaining());
+      pending.put(b, off, n);
+      off += n;
+      len -= n;
+      if (!pending.hasRemaining())
+        drain();
+    }
+  }
+
+  /**
+   * Convert the remaining bytes, and check that the Array was filled.
+   *
+   * @throws IOException if not all the data was written
+   */
+  @Override
+  public void close() throws IOException {
+    drain();
+    if ((pending.position() != 0) || (count != size))
+      throw new IOException("ArrayOutputStream: got " + count + " elements, expected " + size);
+  }
+
+  // convert all complete elements in pending
+  private void drain() {
+    pending.flip();
+    int n = pending.remaining() / elemSize;
+
+    if (storage instanceof byte[]) {
+      pending.get((byte[]) storage, count, n);
+
+    } else if (storage instanceof char[]) {
+      char[] pa = (char[]) storage;
+      for (int i = 0; i < n; i++)
+        pa[count + i] = (char) pending.get(); // same as Array.factory(CHAR, shape, ByteBuffer)
+
+    } else {
+      if (storage instanceof short[])
+        pending.asShortBuffer().get((short[]) storage, count, n);
+      else if (storage instanceof int[])
+        pending.asIntBuffer().get((int[]) storage, count, n);
+      else if (storage instanceof float[])
+        pending.asFloatBuffer().get((float[]) storage, count, n);
+      else if (storage instanceof long[])
+        pending.asLongBuffer().get((long[]) storage, count, n);
+      else
+        pending.asDoubleBuffer().get((double[]) storage, count, n);
+      pending.position(pending.position() + n * elemSize); // the view buffers dont move the position
+    }
+
+    count += n;
+    pending.compact();
+  }
+
+}
@@ -59,6 +59,15 @@ public class CdmRemote extends ucar.nc2.NetcdfFile {
 
   static private org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CdmRemote.class);
   static private boolean showRequest = false;
+  static private boolean useDeflate = true;
+
+  /**
+   * Ask the server to send deflated data, if it says it can (NcStream.VERSION_DEFLATE). Default true.
+   * @param b true to ask for deflated data
+   */
+  static public void setUseDeflate(boolean b) {
+    useDeflate = b;
+  }
 
   static public void setDebugFlags(ucar.nc2.util.DebugFlags debugFlag) {
     showRequest = debugFlag.isSet("CdmRemote/showRequest");
@@ -94,6 +103,7 @@ public class CdmRemote extends ucar.nc2.NetcdfFile {
   private HTTPSession httpClient;
 
   private final String remoteURI;
+  private int serverVersion; // from the header
 
   public CdmRemote(String _remoteURI) throws IOException {
     long start = System.currentTimeMillis();
@@ -129,6 +139,7 @@ public class CdmRemote extends ucar.nc2.NetcdfFile {
       InputStream is = method.getResponseAsStream();
       NcStreamReader reader = new NcStreamReader();
       reader.readStream(is, this);
+      serverVersion = reader.getHeaderVersion();
       this.location = SCHEME + remoteURI;
 
     } finally {
@@ -149,6 +160,46 @@ public class CdmRemote extends ucar.nc2.NetcdfFile {
       return new ArraySequence(s.makeStructureMembers(), siter, -1);
     }
 
+    HTTPMethod method = null;
+    try {
+      method = sendDataRequest(v, section);
+      InputStream is = method.getResponseAsStream();
+      NcStreamReader reader = new NcStreamReader();
+      NcStreamReader.DataResult result = reader.readData(is, this);
+
+      assert v.getFullNameEscaped().equals(result.varNameFullEsc);
+      result.data.setUnsigned(v.isUnsigned());
+      return result.data;
+
+    } finally {
+      if (method != null) method.close();
+    }
+  }
+
+  // fixed size data is copied from the response to the channel a buffer at a time, without making an Array
+  @Override
+  protected long readToByteChannel(ucar.nc2.Variable v, Section section, WritableByteChannel wbc)
+          throws java.io.IOException, ucar.ma2.InvalidRangeException {
+    DataType dt = v.getDataType();
+    if (!dt.isNumeric() && !dt.isEnum() && (dt != DataType.CHAR))
+      return super.readToByteChannel(v, section, wbc);
+
+    if (unlocked)
+      throw new IllegalStateException("File is unlocked - cannot use");
+
+    HTTPMethod method = null;
+    try {
+      method = sendDataRequest(v, section);
+      InputStream is = method.getResponseAsStream();
+      NcStreamReader reader = new NcStreamReader();
+      return reader.readData(is, this, wbc);
+
+    } finally {
+      if (method != null) method.close();
+    }
+  }
+
+  private HTTPMethod sendDataRequest(ucar.nc2.Variable v, Section section) throws IOException {
     StringBuilder sbuff = new StringBuilder(remoteURI);
     sbuff.append("?var=");
     Formatter f = new Formatter();
@@ -158,12 +209,16 @@ public class CdmRemote extends ucar.nc2.NetcdfFile {
     }
     sbuff.append( URLEncoder.encode(f.toString(), "UTF-8")); // % escape entire thing varname and section
 
+    boolean deflate = useDeflate && (serverVersion >= NcStream.VERSION_DEFLATE);
+    if (deflate)
+      sbuff.append("&deflate=true");
+
     if (showRequest)
       System.out.println(" CdmRemote data request for variable: " + v.getFullName() + " section= " + section + " url=" + sbuff);
 
-    HTTPMethod method = null;
+    HTTPMethod method = httpClient.newMethodGet(sbuff.toString());
+    boolean ok = false;
     try {
-      method = httpClient.newMethodGet(sbuff.toString());
       int statusCode = method.execute();
 
       if (statusCode == 404)
@@ -178,23 +233,17 @@ public class CdmRemote extends ucar.nc2.NetcdfFile {
         int readLen = Integer.parseInt(s);
         if (showRequest)
           System.out.printf(" content-length = %d%n", readLen);
-        if (v.getDataType() != DataType.SEQUENCE) {
+        if (!deflate && (v.getDataType() != DataType.SEQUENCE)) {
           int wantSize = (int) (v.getElementSize() * (section == null ? v.getSize() : section.computeSize()));
           if (readLen != wantSize)
             throw new IOException("content-length= " + readLen + " not equal expected Size= " + wantSize); // LOOK
         }
       }
-
-      InputStream is = method.getResponseAsStream();
-      NcStreamReader reader = new NcStreamReader();
-      NcStreamReader.DataResult result = reader.readData(is, this);
-
-      assert v.getFullNameEscaped().equals(result.varNameFullEsc);
-      result.data.setUnsigned(v.isUnsigned());
-      return result.data;
+      ok = true;
+      return method;
 
     } finally {
-      if (method != null) method.close();
+      if (!ok) method.close();
     }
   }
 
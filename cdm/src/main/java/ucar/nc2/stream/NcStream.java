@@ -5,13 +5,24 @@ import ucar.ma2.*;
 
 import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
 import java.io.OutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
@@ -39,6 +50,9 @@ public class NcStream {
   static public final byte[] MAGIC_ERR = new byte[]{(byte) 0xab, (byte) 0xad, (byte) 0xba, (byte) 0xda};
   static public final byte[] MAGIC_END = new byte[]{(byte) 0xed, (byte) 0xed, (byte) 0xde, (byte) 0xde};
 
+  // Header.version from which a writer can send deflated data messages
+  static public final int VERSION_DEFLATE = 1;
+
   static NcStreamProto.Group.Builder encodeGroup(Group g, int sizeToCache) throws IOException {
     NcStreamProto.Group.Builder groupBuilder = NcStreamProto.Group.newBuilder();
     groupBuilder.setName(g.getShortName());
@@ -403,6 +417,238 @@ public class NcStream {
     return true;
   }
 
+  ////////////////////////////////////////////////////////////
+  // deflated data: the data bytes are sent as a sequence of chunks, each one:
+  //   vint uncompressed length, vint compressed length, 4 byte (big endian) CRC32 of the uncompressed bytes, compressed bytes
+
+  /**
+   * Write data as a sequence of deflated chunks.
+   *
+   * @param wbc       write to this channel
+   * @param data      the uncompressed data
+   * @param chunkSize number of uncompressed bytes in each chunk
+   * @param level     deflate level, 1-9
+   * @param executor  compress the chunks in parallel on this executor; if null, compress on the calling thread
+   * @return number of bytes written
+   * @throws IOException on write error
+   */
+  static public long writeDeflatedChunks(WritableByteChannel wbc, byte[] data, int chunkSize, int level,
+                                         Executor executor) throws IOException {
+    return writeDeflatedChunks(wbc, data, data.length, chunkSize, level, executor);
+  }
+
+  /**
+   * Write the first dataLen bytes of data as a sequence of deflated chunks.
+   *
+   * @param wbc       write to this channel
+   * @param data      the uncompressed data
+   * @param dataLen   number of bytes of data to write
+   * @param chunkSize number of uncompressed bytes in each chunk
+   * @param level     deflate level, 1-9
+   * @param executor  compress the chunks in parallel on this executor; if null, compress on the calling thread
+   * @return number of bytes written
+   * @throws IOException on write error
+   */
+  static public long writeDeflatedChunks(WritableByteChannel wbc, final byte[] data, int dataLen, int chunkSize,
+                                         final int level, Executor executor) throws IOException {
+    long size = 0;
+    LinkedList<FutureTask<byte[]>> pending = new LinkedList<FutureTask<byte[]>>();
+    LinkedList<int[]> pendingChunks = new LinkedList<int[]>();
+
+    boolean ok = false;
+    try {
+      for (int start = 0; start < dataLen || pending.size() > 0; ) {
+        // keep a few chunks ahead of the one being written
+        while ((start < dataLen) && ((executor == null) ? pending.size() < 1 : pending.size() < 8)) {
+          final int offset = start;
+          final int len = Math.min(chunkSize, dataLen - start);
+          FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() {
+            public byte[] call() {
+              return deflate(data, offset, len, level);
+            }
+          });
+          if (executor == null) task.run();
+          else executor.execute(task);
+          pending.add(task);
+          pendingChunks.add(new int[]{offset, len});
+          start += len;
+        }
+        if (pending.size() == 0) break;
+
+        byte[] comp;
+        try {
+          comp = pending.removeFirst().get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("interrupted while compressing data", e);
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          throw new IOException("failed to compress data: " + cause.getMessage(), cause);
+        }
+        int[] chunk = pendingChunks.removeFirst();
+
+        CRC32 crc = new CRC32();
+        crc.update(data, chunk[0], chunk[1]);
+
+        size += writeVInt(wbc, chunk[1]);
+        size += writeVInt(wbc, comp.length);
+        ByteBuffer bb = ByteBuffer.allocate(4);
+        bb.putInt((int) crc.getValue());
+        bb.flip();
+        size += wbc.write(bb);
+        size += wbc.write(ByteBuffer.wrap(comp));
+      }
+      ok = true;
+
+    } finally {
+      if (!ok) { // dont leave tasks compressing data nobody will write
+        for (FutureTask<byte[]> task : pending)
+          task.cancel(false);
+      }
+    }
+
+    return size;
+  }
+
+  static private byte[] deflate(byte[] data, int offset, int len, int level) {
+    Deflater deflater = new Deflater(level);
+    try {
+      deflater.setInput(data, offset, len);
+      deflater.finish();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(len / 2 + 64);
+      byte[] buff = new byte[Math.min(len + 64, 64 * 1000)];
+      while (!deflater.finished()) {
+        int n = deflater.deflate(buff);
+        out.write(buff, 0, n);
+      }
+      return out.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Read the data bytes of a data message, and write them to out, a buffer at a time.
+   *
+   * @param in      read from here, positioned at the start of the data bytes
+   * @param len     number of (uncompressed) data bytes
+   * @param deflate true if the data is sent as deflated chunks (Data.compress = DEFLATE)
+   * @param out     write the uncompressed bytes here
+   * @throws IOException on read error, or if the data is corrupted
+   */
+  static public void readData(DataInput in, int len, boolean deflate, OutputStream out) throws IOException {
+    if (deflate) {
+      readDeflatedChunks(in, len, null, out);
+      return;
+    }
+
+    byte[] buff = new byte[Math.min(len, 64 * 1000)];
+    int done = 0;
+    while (done < len) {
+      int n = Math.min(buff.length, len - done);
+      in.readFully(buff, 0, n);
+      out.write(buff, 0, n);
+      done += n;
+    }
+  }
+
+  /**
+   * Read a sequence of deflated chunks, decompressing each as it is read, and checking its CRC32.
+   *
+   * @param in     read from here, positioned at the first chunk
+   * @param result put the uncompressed data here, must be exactly the uncompressed size
+   * @throws IOException on read error, or if the data is corrupted
+   */
+  static public void readDeflatedChunks(DataInput in, byte[] result) throws IOException {
+    readDeflatedChunks(in, result.length, result, null);
+  }
+
+  // inflate into result if not null, else into a buffer that is written to out
+  static private void readDeflatedChunks(DataInput in, int len, byte[] result, OutputStream out) throws IOException {
+    Inflater inflater = new Inflater();
+    CRC32 crc = new CRC32();
+    byte[] comp = new byte[0];
+    byte[] buff = (result != null) ? result : new byte[64 * 1000];
+    int pos = 0;
+
+    try {
+      while (pos < len) {
+        int ulen = readChunkVInt(in);
+        int clen = readChunkVInt(in);
+        int want = in.readInt();
+        if ((ulen <= 0) || (ulen > len - pos) || (clen < 0))
+          throw new IOException("NcStream deflated data corrupted");
+
+        if (comp.length < clen) comp = new byte[clen];
+        in.readFully(comp, 0, clen);
+
+        inflater.reset();
+        inflater.setInput(comp, 0, clen);
+        crc.reset();
+        int done = 0;
+        while (done < ulen) {
+          int off = (result != null) ? pos + done : 0;
+          int max = (result != null) ? ulen - done : Math.min(buff.length, ulen - done);
+          int n = inflater.inflate(buff, off, max);
+          if ((n == 0) && (inflater.finished() || inflater.needsInput()))
+            break;
+          crc.update(buff, off, n);
+          if (out != null) out.write(buff, 0, n);
+          done += n;
+        }
+        if (done != ulen)
+          throw new IOException("NcStream deflated data corrupted: chunk has " + done + " bytes, expected " + ulen);
+        if ((int) crc.getValue() != want)
+          throw new IOException("NcStream deflated data failed CRC check");
+
+        pos += ulen;
+      }
+
+    } catch (DataFormatException e) {
+      throw new IOException("NcStream deflated data corrupted: " + e.getMessage(), e);
+
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Skip over a sequence of deflated chunks.
+   *
+   * @param in  read from here, positioned at the first chunk
+   * @param len total uncompressed size
+   * @throws IOException on read error
+   */
+  static public void skipDeflatedChunks(DataInput in, int len) throws IOException {
+    int pos = 0;
+    while (pos < len) {
+      int ulen = readChunkVInt(in);
+      int clen = readChunkVInt(in);
+      if (ulen <= 0)
+        throw new IOException("NcStream deflated data corrupted");
+      in.readInt(); // crc
+      while (clen > 0) {
+        int skip = in.skipBytes(clen);
+        if (skip <= 0) {
+          in.readByte();
+          skip = 1;
+        }
+        clen -= skip;
+      }
+      pos += ulen;
+    }
+  }
+
+  static private int readChunkVInt(DataInput in) throws IOException {
+    byte b = in.readByte();
+    int i = b & 0x7F;
+    for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+      b = in.readByte();
+      i |= (b & 0x7F) << shift;
+    }
+    return i;
+  }
+
   static public String decodeErrorMessage(NcStreamProto.Error err) {
     return err.getMessage();
   }
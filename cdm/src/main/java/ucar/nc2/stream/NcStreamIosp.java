@@ -8,7 +8,7 @@ import ucar.unidata.io.RandomAccessFile;
 import ucar.ma2.*;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -86,11 +86,15 @@ public class NcStreamIosp extends AbstractIOServiceProvider {
         dataSection.size = dsize;
         dataSection.filePos = raf.getFilePointer();
         dataSection.section = NcStream.decodeSection(dproto.getSection());
+        dataSection.deflate = (dproto.getCompress() == NcStreamProto.Compress.DEFLATE);
 
         Variable v = ncfile.getRootGroup().findVariable(dproto.getVarName());
         v.setSPobject(dataSection);
 
-        raf.skipBytes(dsize);
+        if (dataSection.deflate)
+          NcStream.skipDeflatedChunks(raf, dsize);
+        else
+          raf.skipBytes(dsize);
       }
 
     } catch (Throwable t) {
@@ -100,9 +104,10 @@ public class NcStreamIosp extends AbstractIOServiceProvider {
 
 
   private class DataSection {
-    int size;
+    int size; // uncompressed
     long filePos;
     Section section;
+    boolean deflate;
 
     @Override
     public String toString() {
@@ -110,6 +115,7 @@ public class NcStreamIosp extends AbstractIOServiceProvider {
               "size=" + size +
               ", filePos=" + filePos +
               ", section=" + section +
+              ", deflate=" + deflate +
               '}';
     }
   }
@@ -117,11 +123,12 @@ public class NcStreamIosp extends AbstractIOServiceProvider {
   public Array readData(Variable v, Section section) throws IOException, InvalidRangeException {
     DataSection dataSection = (DataSection) v.getSPobject();
 
+    // convert into the Array a buffer at a time, dont hold all the bytes
     raf.seek(dataSection.filePos);
-    byte[] data = new byte[dataSection.size];
-    raf.read(data);
-
-    Array dataArray = Array.factory(v.getDataType(), v.getShape(), ByteBuffer.wrap(data));
+    Array dataArray = Array.factory(v.getDataType(), v.getShape());
+    ArrayOutputStream out = new ArrayOutputStream(dataArray, ByteOrder.BIG_ENDIAN);
+    NcStream.readData(raf, dataSection.size, dataSection.deflate, out);
+    out.close();
     return dataArray.section(section.getRanges());
   }
 
@@ -200,13 +207,17 @@ public class NcStreamIosp extends AbstractIOServiceProvider {
       dataSection.size = dsize;
       dataSection.filePos = raf.getFilePointer();
       dataSection.section = NcStream.decodeSection(dproto.getSection());
+      dataSection.deflate = (dproto.getCompress() == NcStreamProto.Compress.DEFLATE);
 
       ncm.add(new NcsMess(dsize, dataSection));
 
       Variable v = ncfile.getRootGroup().findVariable(dproto.getVarName());
       v.setSPobject(dataSection);
 
-      raf.skipBytes(dsize);
+      if (dataSection.deflate)
+        NcStream.skipDeflatedChunks(raf, dsize);
+      else
+        raf.skipBytes(dsize);
     }
 
     return ncm;
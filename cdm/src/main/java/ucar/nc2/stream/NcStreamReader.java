@@ -36,9 +36,13 @@ import ucar.nc2.NetcdfFile;
 import ucar.nc2.Structure;
 import ucar.ma2.*;
 
+import java.io.DataInputStream;
 import java.io.InputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 
 import com.google.protobuf.InvalidProtocolBufferException;
 
@@ -53,6 +57,15 @@ public class NcStreamReader {
 
   private static final boolean debug = false;
 
+  private int headerVersion;
+
+  /**
+   * @return the version of the last header read, tells what the writer can do
+   */
+  public int getHeaderVersion() {
+    return headerVersion;
+  }
+
   public NetcdfFile readStream(InputStream is, NetcdfFile ncfile) throws IOException {
     byte[] b = new byte[4];
     NcStream.readFully(is, b);
@@ -78,6 +91,7 @@ public class NcStreamReader {
     }
 
     NcStreamProto.Header proto = NcStreamProto.Header.parseFrom(m);
+    headerVersion = proto.getVersion();
     ncfile = proto2nc(proto, ncfile);
     if (debug) System.out.printf("  proto= %s%n", proto);
 
@@ -114,15 +128,7 @@ public class NcStreamReader {
    * @throws IOException on read error
    */
   public DataResult readData(InputStream is, NetcdfFile ncfile) throws IOException {
-    if (!readAndTest(is, NcStream.MAGIC_DATA))
-      throw new IOException("Data transfer corrupted on "+ncfile.getLocation());
-
-    int psize = NcStream.readVInt(is);
-    if (debug) System.out.println("  readData data message len= " + psize);
-    byte[] dp = new byte[psize];
-    NcStream.readFully(is, dp);
-    NcStreamProto.Data dproto = NcStreamProto.Data.parseFrom(dp);
-    // if (debug) System.out.println(" readData proto = " + dproto);
+    NcStreamProto.Data dproto = readDataProto(is, ncfile);
 
     DataType dataType = NcStream.decodeDataType(dproto.getDataType());
     Section section = (dataType == DataType.SEQUENCE) ? new Section() : NcStream.decodeSection(dproto.getSection());
@@ -155,10 +161,15 @@ public class NcStreamReader {
     // otherwise read data message
     int dsize = NcStream.readVInt(is);
     if (debug) System.out.println("  readData data len= " + dsize);
-    byte[] datab = new byte[dsize];
-    NcStream.readFully(is, datab);
+    boolean deflate = (dproto.getCompress() == NcStreamProto.Compress.DEFLATE);
 
     if (dataType == DataType.STRUCTURE) {
+      byte[] datab = new byte[dsize];
+      if (deflate)
+        NcStream.readDeflatedChunks(new DataInputStream(is), datab);
+      else
+        NcStream.readFully(is, datab);
+
       Structure s = (Structure) ncfile.findVariable(dproto.getVarName());
       StructureMembers members = s.makeStructureMembers();
 
@@ -173,11 +184,50 @@ public class NcStreamReader {
       }
 
     } else {
-      Array data = Array.factory(dataType, section.getShape(), ByteBuffer.wrap(datab));
+      // convert into the Array a buffer at a time, dont hold all the bytes
+      Array data = Array.factory(dataType, section.getShape());
+      ArrayOutputStream out = new ArrayOutputStream(data, dproto.getBigend() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+      NcStream.readData(new DataInputStream(is), dsize, deflate, out);
+      out.close();
       return new DataResult(dproto.getVarName(), section, data);
     }
   }
 
+  /**
+   * Read the result of a data request for a fixed size, non-structure variable, and write the data bytes
+   * (big endian) to a channel a buffer at a time, without making an Array.
+   *
+   * @param is     read from input stream
+   * @param ncfile need the metadata from here
+   * @param wbc    write the data to this channel
+   * @return number of bytes written
+   * @throws IOException on read error
+   */
+  public long readData(InputStream is, NetcdfFile ncfile, WritableByteChannel wbc) throws IOException {
+    NcStreamProto.Data dproto = readDataProto(is, ncfile);
+    DataType dataType = NcStream.decodeDataType(dproto.getDataType());
+    if ((dataType == DataType.STRING) || (dataType == DataType.OPAQUE) || (dataType == DataType.STRUCTURE) || (dataType == DataType.SEQUENCE))
+      throw new IllegalArgumentException("NcStreamReader cant stream data of type " + dataType);
+    if (!dproto.getBigend())
+      throw new IOException("NcStreamReader cant stream little endian data");
+
+    int dsize = NcStream.readVInt(is);
+    boolean deflate = (dproto.getCompress() == NcStreamProto.Compress.DEFLATE);
+    NcStream.readData(new DataInputStream(is), dsize, deflate, Channels.newOutputStream(wbc));
+    return dsize;
+  }
+
+  private NcStreamProto.Data readDataProto(InputStream is, NetcdfFile ncfile) throws IOException {
+    if (!readAndTest(is, NcStream.MAGIC_DATA))
+      throw new IOException("Data transfer corrupted on "+ncfile.getLocation());
+
+    int psize = NcStream.readVInt(is);
+    if (debug) System.out.println("  readData data message len= " + psize);
+    byte[] dp = new byte[psize];
+    NcStream.readFully(is, dp);
+    return NcStreamProto.Data.parseFrom(dp);
+  }
+
   public StructureDataIterator getStructureIterator(InputStream is, NetcdfFile ncfile) throws IOException {
     if (!readAndTest(is, NcStream.MAGIC_DATA))
       throw new IOException("Data transfer corrupted on "+ncfile.getLocation());
@@ -36,12 +36,14 @@ import ucar.ma2.*;
 import ucar.nc2.*;
 import ucar.nc2.iosp.IospHelper;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
 import java.nio.ByteBuffer;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.concurrent.Executor;
 
 /**
  * Write a NetcdfFile to a WritableByteChannel using ncstream protocol
@@ -57,6 +59,10 @@ public class NcStreamWriter {
   private NcStreamProto.Header header;
   private boolean show = false;
 
+  private int deflateLevel = 0; // 0 = dont compress
+  private int deflateChunkSize = 256 * 1000;
+  private Executor deflateExecutor;
+
   public NcStreamWriter(NetcdfFile ncfile, String location) throws IOException {
     this.ncfile = ncfile;
     NcStreamProto.Group.Builder rootBuilder = NcStream.encodeGroup(ncfile.getRootGroup(), sizeToCache);
@@ -66,10 +72,27 @@ public class NcStreamWriter {
     if (ncfile.getTitle() != null) headerBuilder.setTitle(ncfile.getTitle());
     if (ncfile.getId() != null) headerBuilder.setId(ncfile.getId());
     headerBuilder.setRoot(rootBuilder);
+    headerBuilder.setVersion(NcStream.VERSION_DEFLATE);
 
     header = headerBuilder.build();
   }
 
+  /**
+   * Send the data of numeric, char and structure variables as deflated chunks, each with a CRC32 checksum.
+   * Only use this if the reader has asked for it; the reader must understand NcStream.VERSION_DEFLATE.
+   *
+   * @param level     deflate level 1-9, or 0 to not compress
+   * @param chunkSize number of uncompressed bytes in each chunk
+   * @param executor  compress the chunks in parallel on this executor, may be null
+   */
+  public void setDeflate(int level, int chunkSize, Executor executor) {
+    if ((level < 0) || (level > 9) || (chunkSize <= 0))
+      throw new IllegalArgumentException("level must be in [0, 9], chunkSize > 0");
+    this.deflateLevel = level;
+    this.deflateChunkSize = chunkSize;
+    this.deflateExecutor = executor;
+  }
+
   public long sendStart(WritableByteChannel wbc) throws IOException {
     return writeBytes(wbc, NcStream.MAGIC_START);
   }
@@ -97,9 +120,14 @@ public class NcStreamWriter {
   public long sendData(Variable v, Section section, WritableByteChannel wbc) throws IOException, InvalidRangeException {
     if (show) System.out.printf(" %s section=%s%n", v.getFullName(), section);
 
+    DataType dataType = v.getDataType();
+    boolean deflate = (deflateLevel > 0) && (dataType != DataType.SEQUENCE) && (dataType != DataType.STRING) && (dataType != DataType.OPAQUE);
+
     long size = 0;
     size += writeBytes(wbc, NcStream.MAGIC_DATA); // magic
     NcStreamProto.Data dataProto = NcStream.encodeDataProto(v, section);
+    if (deflate)
+      dataProto = dataProto.toBuilder().setCompress(NcStreamProto.Compress.DEFLATE).build();
     byte[] datab = dataProto.toByteArray();
     size += NcStream.writeVInt(wbc, datab.length); // dataProto len
     size += writeBytes(wbc, datab); // dataProto
@@ -126,7 +154,13 @@ public class NcStreamWriter {
     size += NcStream.writeVInt(wbc, (int) len); // data len or number of objects
     if (show) System.out.printf("  %s proto=%d data=%d%n", v.getFullName(), datab.length, len);
 
-    size += v.readToByteChannel(section, wbc); // try to do a direct transfer
+    if (deflate) {
+      DataBuffer bout = new DataBuffer((int) len);
+      v.readToByteChannel(section, Channels.newChannel(bout));
+      size += NcStream.writeDeflatedChunks(wbc, bout.getBuffer(), bout.size(), deflateChunkSize, deflateLevel, deflateExecutor);
+    } else {
+      size += v.readToByteChannel(section, wbc); // try to do a direct transfer
+    }
 
     return size;
   }
@@ -186,7 +220,16 @@ public class NcStreamWriter {
     return size;
   }
 
+  // lets the deflater read the data in place, instead of from a copy made by toByteArray()
+  private static class DataBuffer extends ByteArrayOutputStream {
+    DataBuffer(int size) {
+      super(size);
+    }
 
+    byte[] getBuffer() {
+      return buf;
+    }
+  }
 
 }
 
@@ -0,0 +1,245 @@
+/*
+ * Copyright 1998-2009 University Corporation for Atmospheric Research/Unidata
+ *
+ * Portions of this software were developed by the Unidata Program at the
+ * University Corporation for Atmospheric Research.
+ *
+ * Access and use of this software shall impose the following obligations
+ * and understandings on the user. The user is granted the right, without
+ * any fee or cost, to use, copy, modify, alter, enhance and distribute
+ * this software, and any derivative works thereof, and its supporting
+ * documentation for any purpose whatsoever, provided that this entire
+ * notice appears in all copies of the software, derivative works and
+ * supporting documentation.  Further, UCAR requests that the user credit
+ * UCAR/Unidata in any publications that result from the use of this
+ * software or in any product that includes this software. The names UCAR
+ * and/or Unidata, however, may not be used in any advertising or publicity
+ * to endorse or promote any products or commercial entity unless specific
+ * written permission is obtained from UCAR/Unidata. The user also
+ * understands that UCAR/Unidata is not obligated to provide the user with
+ * any support, consulting, training or assistance of any kind with regard
+ * to the use, operation and performance of this software nor to provide
+ * the user with any updates, revisions, new versions or "bug fixes."
+ *
+ * THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ * INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ * FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ * NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ * WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.util.cache;
+
+import java.util.*;
+
+/**
+ * Decides the order in which unused objects are removed from a cache.
+ * The cache tells the policy when objects are added, used and removed; these updates are O(1).
+ * When the cache needs to shrink, it asks for the eviction order, and removes objects starting at the front.
+ * <p/>
+ * Implementations need not be thread safe; the cache synchronizes all calls.
+ *
+ * @author caron
+ */
+public interface EvictionPolicy {
+
+  /**
+   * @return name of the policy, for stats
+   */
+  public String getName();
+
+  /**
+   * An object was added to the cache.
+   *
+   * @param item the object
+   * @param cost cost of recreating the object, eg msecs to open a file
+   */
+  public void add(Object item, long cost);
+
+  /**
+   * An object in the cache was used.
+   *
+   * @param item the object
+   */
+  public void access(Object item);
+
+  /**
+   * An object was removed from the cache.
+   *
+   * @param item the object
+   */
+  public void remove(Object item);
+
+  /**
+   * Remove all objects.
+   */
+  public void clear();
+
+  /**
+   * @return all objects, the best candidates for removal first
+   */
+  public List<Object> getEvictionOrder();
+
+  /**
+   * Least recently used objects are removed first.
+   */
+  public static class LRU implements EvictionPolicy {
+    private final LinkedHashMap<Object, Object> map = new LinkedHashMap<Object, Object>(100, 0.75f, true); // access order
+
+    public String getName() {
+      return "LRU";
+    }
+
+    public void add(Object item, long cost) {
+      map.put(item, item);
+    }
+
+    public void access(Object item) {
+      map.get(item);
+    }
+
+    public void remove(Object item) {
+      map.remove(item);
+    }
+
+    public void clear() {
+      map.clear();
+    }
+
+    public List<Object> getEvictionOrder() {
+      return new ArrayList<Object>(map.keySet());
+    }
+  }
+
+  /**
+   * Least frequently used objects are removed first, and the least recently used among those with the same count.
+   * Objects are kept in a list of buckets, one for each use count, so that updates are O(1).
+   */
+  public static class LFU implements EvictionPolicy {
+    private final HashMap<Object, Bucket> map = new HashMap<Object, Bucket>(100);
+    private Bucket head; // lowest count
+
+    public String getName() {
+      return "LFU";
+    }
+
+    public void add(Object item, long cost) {
+      remove(item);
+      Bucket b = head;
+      if ((b == null) || (b.count != 1))
+        b = insertAfter(null, 1);
+      b.items.add(item);
+      map.put(item, b);
+    }
+
+    public void access(Object item) {
+      Bucket b = map.get(item);
+      if (b == null) return;
+      Bucket next = b.next;
+      if ((next == null) || (next.count != b.count + 1))
+        next = insertAfter(b, b.count + 1);
+      next.items.add(item);
+      map.put(item, next);
+      removeFrom(b, item);
+    }
+
+    public void remove(Object item) {
+      Bucket b = map.remove(item);
+      if (b != null) removeFrom(b, item);
+    }
+
+    public void clear() {
+      map.clear();
+      head = null;
+    }
+
+    public List<Object> getEvictionOrder() {
+      List<Object> result = new ArrayList<Object>(map.size());
+      for (Bucket b = head; b != null; b = b.next)
+        result.addAll(b.items);
+      return result;
+    }
+
+    // insert a new bucket after prev, or at the head if prev is null
+    private Bucket insertAfter(Bucket prev, int count) {
+      Bucket b = new Bucket(count);
+      b.prev = prev;
+      b.next = (prev == null) ? head : prev.next;
+      if (b.next != null) b.next.prev = b;
+      if (prev == null) head = b;
+      else prev.next = b;
+      return b;
+    }
+
+    private void removeFrom(Bucket b, Object item) {
+      b.items.remove(item);
+      if (!b.items.isEmpty()) return;
+      if (b.prev == null) head = b.next;
+      else b.prev.next = b.next;
+      if (b.next != null) b.next.prev = b.prev;
+    }
+
+    private static class Bucket {
+      final int count;
+      final LinkedHashSet<Object> items = new LinkedHashSet<Object>(); // least recently used first
+      Bucket prev, next;
+
+      Bucket(int count) {
+        this.count = count;
+      }
+    }
+  }
+
+  /**
+   * Objects that are cheapest to recreate are removed first, and the least recently used among those with
+   * the same cost. Costs are grouped by powers of 2, so that updates are O(1).
+   */
+  public static class CostAware implements EvictionPolicy {
+    private final HashMap<Object, LinkedHashSet<Object>> map = new HashMap<Object, LinkedHashSet<Object>>(100);
+    private final List<LinkedHashSet<Object>> buckets = new ArrayList<LinkedHashSet<Object>>(65); // least recently used first
+
+    public CostAware() {
+      for (int i = 0; i < 65; i++)
+        buckets.add(new LinkedHashSet<Object>());
+    }
+
+    public String getName() {
+      return "CostAware";
+    }
+
+    public void add(Object item, long cost) {
+      remove(item);
+      LinkedHashSet<Object> bucket = buckets.get(64 - Long.numberOfLeadingZeros(Math.max(cost, 0)));
+      bucket.add(item);
+      map.put(item, bucket);
+    }
+
+    public void access(Object item) {
+      LinkedHashSet<Object> bucket = map.get(item);
+      if (bucket == null) return;
+      bucket.remove(item); // move to the end
+      bucket.add(item);
+    }
+
+    public void remove(Object item) {
+      LinkedHashSet<Object> bucket = map.remove(item);
+      if (bucket != null) bucket.remove(item);
+    }
+
+    public void clear() {
+      map.clear();
+      for (LinkedHashSet<Object> bucket : buckets)
+        bucket.clear();
+    }
+
+    public List<Object> getEvictionOrder() {
+      List<Object> result = new ArrayList<Object>(map.size());
+      for (LinkedHashSet<Object> bucket : buckets)
+        result.addAll(bucket);
+      return result;
+    }
+  }
+
+}
@@ -38,6 +38,8 @@ import net.jcip.annotations.GuardedBy;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.io.IOException;
 
@@ -71,7 +73,14 @@ import ucar.nc2.util.CancelTask;
  * NetcdfDataset.shutdown();  // when terminating the application
  * </pre>
  * All methods are thread safe.
- * Cleanup is done automatically in a background thread, using LRU algorithm.
+ * Cleanup is done automatically in a background thread. By default it removes the least recently used files first;
+ * use setEvictionPolicy() to change this. Statistics are available from getMetrics().
+ * <p/>
+ * Normally a FileCacheable is locked by acquire() so that only one user has it at a time, and a second request for the
+ * same location opens another copy. If setShared(true) is called, an open FileCacheable is instead handed to any number
+ * of users at once, and is reference counted: it is released when the last user closes it, and only then may it be
+ * removed by a cleanup. Concurrent requests for a file not yet in the cache wait for a single open.
+ * Only use this when the FileCacheable objects are not modified and allow concurrent reads.
  *
  * @author caron
  * @since May 30, 2008
@@ -105,11 +114,22 @@ public class FileCache {
   //private final AtomicInteger counter = new AtomicInteger(); // how many files in the cache
   private final AtomicBoolean hasScheduled = new AtomicBoolean(false); // a cleanup is scheduled
   private final AtomicBoolean disabled = new AtomicBoolean(false);  // cache is disabled
+  private volatile boolean shared = false; // share open files among concurrent users
+  private final ConcurrentHashMap<Object, CountDownLatch> opening = new ConcurrentHashMap<Object, CountDownLatch>(); // shared mode: files being opened
+
+  @GuardedBy("policyLock")
+  private EvictionPolicy policy = new EvictionPolicy.LRU(); // contains CacheFile
+  private final Object policyLock = new Object();
 
   // debugging and stats
   private final AtomicInteger cleanups = new AtomicInteger();  // how many cleanups
   private final AtomicInteger hits = new AtomicInteger();
   private final AtomicInteger miss = new AtomicInteger();
+  private final AtomicInteger shares = new AtomicInteger(); // hits on a file already in use
+  private final AtomicInteger opens = new AtomicInteger();
+  private final AtomicInteger evictions = new AtomicInteger();
+  private final AtomicLong openTime = new AtomicLong(); // msecs
+  private final AtomicLongArray openTimeHistogram = new AtomicLongArray(FileCacheMetrics.openTimeBounds.length + 1);
 
   /**
    * Constructor.
@@ -176,6 +196,37 @@ public class FileCache {
     this.disabled.set(false);
   }
 
+  /**
+   * Set whether open files are shared among concurrent users, with reference counting.
+   * Files already in use keep the mode they were acquired with until they are released.
+   *
+   * @param shared if true, share open files; if false (default), each user gets exclusive use of a file.
+   */
+  public void setShared(boolean shared) {
+    this.shared = shared;
+  }
+
+  /**
+   * @return true if open files are shared among concurrent users
+   */
+  public boolean isShared() {
+    return shared;
+  }
+
+  /**
+   * Set the policy that decides which files a cleanup closes first.
+   * The files already in the cache are added to the new policy.
+   *
+   * @param policy use this policy, eg EvictionPolicy.LRU (default), EvictionPolicy.LFU or EvictionPolicy.CostAware
+   */
+  public void setEvictionPolicy(EvictionPolicy policy) {
+    synchronized (policyLock) {
+      for (CacheElement.CacheFile file : files.values())
+        policy.add(file, file.openTime);
+      this.policy = policy;
+    }
+  }
+
   /**
    * Acquire a FileCacheable, and lock it so no one else can use it.
    * call FileCacheable.close() when done.
@@ -198,6 +249,9 @@ public class FileCache {
    * <p/>
    * If cache size goes over maxElement, then immediately (actually in 100 msec) schedule a cleanup in a background thread.
    * This means that the cache should never get much larger than maxElement, unless you have them all locked.
+   * <p/>
+   * If isShared(), the FileCacheable may already be in use by others, and only one thread opens a file that is not
+   * yet in the cache, while other threads wanting the same file wait for it.
    *
    * @param factory     use this factory to open the file if not in the cache; may not be null
    * @param hashKey     unique key for this file. If null, the location will be used
@@ -217,10 +271,52 @@ public class FileCache {
       hits.incrementAndGet();
       return ncfile;
     }
+
+    if (!shared)
+      return acquireOpen(factory, hashKey, location, buffer_size, cancelTask, spiObject);
+
+    // shared: let only one thread open the file, the others wait for it and then share it
+    CountDownLatch myLatch = new CountDownLatch(1);
+    CountDownLatch other = opening.putIfAbsent(hashKey, myLatch);
+    if (other != null) {
+      try {
+        other.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      ncfile = acquireCacheOnly(hashKey);
+      if (ncfile != null) {
+        hits.incrementAndGet();
+        return ncfile;
+      }
+      return acquireOpen(factory, hashKey, location, buffer_size, cancelTask, spiObject); // open failed or was cancelled
+    }
+
+    try {
+      ncfile = acquireCacheOnly(hashKey); // may have been added since we looked
+      if (ncfile != null) {
+        hits.incrementAndGet();
+        return ncfile;
+      }
+      return acquireOpen(factory, hashKey, location, buffer_size, cancelTask, spiObject);
+    } finally {
+      opening.remove(hashKey);
+      myLatch.countDown();
+    }
+  }
+
+  // open the file and add it to the cache, locked
+  private FileCacheable acquireOpen(FileFactory factory, Object hashKey,
+                                    String location, int buffer_size, CancelTask cancelTask, Object spiObject) throws IOException {
     miss.incrementAndGet();
 
     // open the file
-    ncfile = factory.open(location, buffer_size, cancelTask, spiObject);
+    long start = System.currentTimeMillis();
+    FileCacheable ncfile = factory.open(location, buffer_size, cancelTask, spiObject);
+    long took = System.currentTimeMillis() - start;
+    opens.incrementAndGet();
+    openTime.addAndGet(took);
+    openTimeHistogram.incrementAndGet(FileCacheMetrics.getOpenTimeBucket(took));
     if (cacheLog.isDebugEnabled()) cacheLog.debug("FileCache " + name + " acquire " + hashKey + " " + ncfile.getLocation());
     if (debugPrint) System.out.println("  FileCache " + name + " acquire " + hashKey + " " + ncfile.getLocation());
 
@@ -237,13 +333,13 @@ public class FileCache {
     CacheElement elem;
     synchronized (cache) {
       elem = cache.get(hashKey);
-      if (elem == null) cache.put(hashKey, new CacheElement(ncfile, hashKey)); // new element
+      if (elem == null) cache.put(hashKey, new CacheElement(ncfile, hashKey, took)); // new element
     }
 
     // already exists, add to list
     if (elem != null) {
       synchronized (elem) {
-        elem.addFile(ncfile); // add to existing list
+        elem.addFile(ncfile, took); // add to existing list
       }
     }
 
@@ -288,33 +384,53 @@ public class FileCache {
   private FileCacheable acquireCacheOnly(Object hashKey) {
     if (disabled.get()) return null;
     FileCacheable ncfile = null;
+    int nusers = 0;
 
     // see if its in the cache
     CacheElement elem = cache.get(hashKey);
-    if (elem != null) {
+    if (elem == null) return null;
+
+    boolean share = shared;
+    CacheElement.CacheFile locked = null;
+    while (locked == null) {
+      CacheElement.CacheFile syncing = null;
       synchronized (elem) { // synch in order to traverse the list
         for (CacheElement.CacheFile file : elem.list) {
-          if (file.isLocked.compareAndSet(false, true)) {
+          nusers = file.lock(share);
+          if (nusers >= 0) {
+            locked = file;
             ncfile = file.ncfile;
             break;
           }
+          if (nusers == CacheElement.SYNCING) syncing = file;
         }
       }
+
+      // the only copy is being synced by its first user: wait for that, outside of the elem lock, then try again
+      if (locked == null) {
+        if ((syncing == null) || !syncing.awaitSynced()) return null;
+      }
     }
+    if (nusers > 0) shares.incrementAndGet();
 
     // sync the file when you want to use it again : needed for grib growing index, netcdf-3 record growing, etc
     // also sets isClosed = false
-    if (ncfile != null) {
-     try {
+    // the first user has the file to itself until synced() is called, so that sharing users dont see it change
+    if (nusers == 0) {
+      boolean ok = false;
+      try {
         boolean changed = ncfile.sync();
-       if (cacheLog.isDebugEnabled())
-         cacheLog.debug("FileCache " + name + " aquire from cache " + hashKey + " " + ncfile.getLocation()+" changed = "+changed);
-       if (debugPrint)
-         System.out.println("  FileCache " + name + " aquire from cache " + hashKey + " " + ncfile.getLocation()+" changed = "+changed);
-       } catch (IOException e) {
+        if (cacheLog.isDebugEnabled())
+          cacheLog.debug("FileCache " + name + " aquire from cache " + hashKey + " " + ncfile.getLocation()+" changed = "+changed);
+        if (debugPrint)
+          System.out.println("  FileCache " + name + " aquire from cache " + hashKey + " " + ncfile.getLocation()+" changed = "+changed);
+        ok = true;
+      } catch (IOException e) {
         log.error("FileCache " + name + " synch failed on " + ncfile.getLocation() + " " + e.getMessage());
-        return null;
+      } finally {
+        locked.synced(ok);
       }
+      if (!ok) return null;
     }
 
     return ncfile;
@@ -339,11 +455,13 @@ public class FileCache {
     // find it in the file cache
     CacheElement.CacheFile file = files.get(ncfile); // using hashCode of the FileCacheable
     if (file != null) {
-      if (!file.isLocked.get())
-        cacheLog.warn("FileCache " + name + " release " + ncfile.getLocation() + " not locked");
       file.lastAccessed = System.currentTimeMillis();
       file.countAccessed++;
-      file.isLocked.set(false);
+      if (!file.unlock())
+        cacheLog.warn("FileCache " + name + " release " + ncfile.getLocation() + " not locked");
+      synchronized (policyLock) {
+        policy.access(file);
+      }
       if (cacheLog.isDebugEnabled()) cacheLog.debug("FileCache " + name + " release " + ncfile.getLocation());
       if (debugPrint) System.out.println("  FileCache " + name + " release " + ncfile.getLocation());
       return;
@@ -380,6 +498,9 @@ public class FileCache {
       cache.clear(); // deletes everything from the cache
       deleteList.addAll(files.values());  // add everything to the delete list
       files.clear();
+      synchronized (policyLock) {
+        policy.clear();
+      }
       // counter.set(0);
 
     } else {
@@ -388,12 +509,16 @@ public class FileCache {
       Iterator<CacheElement.CacheFile> iter = files.values().iterator();
       while (iter.hasNext()) {
         CacheElement.CacheFile file = iter.next();
-        if (file.isLocked.compareAndSet(false, true)) {
+        if (file.lockForRemove()) {
           file.remove(); // remove from the containing CacheElement
           deleteList.add(file);
           iter.remove();
         }
       }
+      synchronized (policyLock) {
+        for (CacheElement.CacheFile file : deleteList)
+          policy.remove(file);
+      }
 
       // remove empty cache elements
       synchronized (cache) {
@@ -408,7 +533,7 @@ public class FileCache {
 
     // close all files in deleteList
     for (CacheElement.CacheFile file : deleteList) {
-      if (force && file.isLocked.get())
+      if (force && file.isInUse())
         cacheLog.warn("FileCache " + name + " force close locked file= " + file);
       //counter.decrementAndGet();
 
@@ -439,10 +564,10 @@ public class FileCache {
     Collections.sort(allFiles); // sort so oldest are on top
 
     format.format("FileCache %s (%d):%n", name, allFiles.size());
-    format.format("isLocked  accesses lastAccess                   location %n");
+    format.format("   users  accesses lastAccess                   location %n");
     for (CacheElement.CacheFile file : allFiles) {
       String loc = file.ncfile != null ? file.ncfile.getLocation() : "null";
-      format.format("%8s %9d %s %s %n", file.isLocked, file.countAccessed, new Date(file.lastAccessed), loc);
+      format.format("%8d %9d %s %s %n", file.users.get(), file.countAccessed, new Date(file.lastAccessed), loc);
     }
   }
 
@@ -469,7 +594,24 @@ public class FileCache {
    * @param format add to this
    */
   public void showStats(Formatter format) {
-    format.format("  hits= %d miss= %d nfiles= %d elems= %d\n", hits.get(), miss.get(), files.size(), cache.values().size());
+    getMetrics().show(format);
+  }
+
+  /**
+   * Get a snapshot of the cache statistics.
+   *
+   * @return current statistics
+   */
+  public FileCacheMetrics getMetrics() {
+    long[] hist = new long[openTimeHistogram.length()];
+    for (int i = 0; i < hist.length; i++)
+      hist[i] = openTimeHistogram.get(i);
+    String policyName;
+    synchronized (policyLock) {
+      policyName = policy.getName();
+    }
+    return new FileCacheMetrics(name, policyName, hits.get(), miss.get(), shares.get(), opens.get(), evictions.get(),
+        cleanups.get(), openTime.get(), hist, files.size(), cache.size());
   }
 
   /**
@@ -498,12 +640,11 @@ public class FileCache {
 
       cleanups.incrementAndGet();
 
-      // add unlocked files to the all list
-      ArrayList<CacheElement.CacheFile> allFiles = new ArrayList<CacheElement.CacheFile>(size + 10);
-      for (CacheElement.CacheFile file : files.values()) {
-        if (!file.isLocked.get()) allFiles.add(file);
+      // the policy gives us the order to delete them
+      List<Object> allFiles;
+      synchronized (policyLock) {
+        allFiles = policy.getEvictionOrder();
       }
-      Collections.sort(allFiles); // sort so oldest are on top
 
       // take oldest ones and put on delete list
       int need2delete = size - minElements;
@@ -511,10 +652,10 @@ public class FileCache {
       ArrayList<CacheElement.CacheFile> deleteList = new ArrayList<CacheElement.CacheFile>(need2delete);
 
       int count = 0;
-      Iterator<CacheElement.CacheFile> iter = allFiles.iterator();
+      Iterator<Object> iter = allFiles.iterator();
       while (iter.hasNext() && (count < need2delete)) {
-        CacheElement.CacheFile file = iter.next();
-        if (file.isLocked.compareAndSet(false, true)) { // lock it so it isnt used anywhere else
+        CacheElement.CacheFile file = (CacheElement.CacheFile) iter.next();
+        if (file.lockForRemove()) { // lock it so it isnt used anywhere else
           file.remove(); // remove from the containing element
           deleteList.add(file);
           count++;
@@ -536,6 +677,12 @@ public class FileCache {
         }
       }
 
+      synchronized (policyLock) {
+        for (CacheElement.CacheFile file : deleteList)
+          policy.remove(file);
+      }
+      evictions.addAndGet(deleteList.size());
+
       // now actually close the files
       long start = System.currentTimeMillis();
       for (CacheElement.CacheFile file : deleteList) {
@@ -562,13 +709,15 @@ public class FileCache {
   }
 
   class CacheElement {
+    static final int SYNCING = -2; // CacheFile.users while the first user syncs the file
+
     @GuardedBy("this")
     List<CacheFile> list = new LinkedList<CacheFile>(); // may have multiple copies of the same file opened
     final Object hashKey;
 
-    CacheElement(FileCacheable ncfile, Object hashKey) {
+    CacheElement(FileCacheable ncfile, Object hashKey, long openTime) {
       this.hashKey = hashKey;
-      CacheFile file = new CacheFile(ncfile);
+      CacheFile file = new CacheFile(ncfile, openTime);
       list.add(file);
       if (debug) {
         if (files.get(ncfile) != null)
@@ -578,8 +727,8 @@ public class FileCache {
       if (cacheLog.isDebugEnabled()) cacheLog.debug("CacheElement add to cache " + hashKey + " " + name);
     }
 
-    CacheFile addFile(FileCacheable ncfile) {
-      CacheFile file = new CacheFile(ncfile);
+    CacheFile addFile(FileCacheable ncfile, long openTime) {
+      CacheFile file = new CacheFile(ncfile, openTime);
       synchronized (this) {
         list.add(file);
       }
@@ -597,13 +746,18 @@ public class FileCache {
 
     class CacheFile implements Comparable<CacheFile> {
       FileCacheable ncfile; // actually final, but we null it out for gc
-      final AtomicBoolean isLocked = new AtomicBoolean(true);
+      final AtomicInteger users = new AtomicInteger(1); // number of users, or -1 if being removed
       int countAccessed = 1;
       long lastAccessed = 0;
+      final long openTime; // msecs to open
 
-      private CacheFile(FileCacheable ncfile) {
+      private CacheFile(FileCacheable ncfile, long openTime) {
         this.ncfile = ncfile;
+        this.openTime = openTime;
         this.lastAccessed = System.currentTimeMillis();
+        synchronized (policyLock) {
+          policy.add(this, openTime);
+        }
 
         ncfile.setFileCache(FileCache.this);
 
@@ -615,6 +769,75 @@ public class FileCache {
         return ncfile.getLocation();
       }
 
+      /**
+       * Try to lock the file for use. The first user gets it exclusively, and must call synced() when it is ready
+       * to be shared.
+       * @param share if true, allow other users at the same time
+       * @return number of other users, or SYNCING if shared but the first user has not called synced() yet,
+       *   or -1 if it could not be locked
+       */
+      int lock(boolean share) {
+        while (true) {
+          int n = users.get();
+          if ((n == SYNCING) && share) return SYNCING;
+          if ((n < 0) || ((n > 0) && !share)) return -1;
+          if (users.compareAndSet(n, (n == 0) ? SYNCING : n + 1)) return n;
+        }
+      }
+
+      /**
+       * Called by the first user after syncing the file.
+       * @param ok if true the first user keeps the file, else it is released
+       */
+      void synced(boolean ok) {
+        users.set(ok ? 1 : 0);
+        synchronized (this) {
+          notifyAll();
+        }
+      }
+
+      /**
+       * Wait for the first user to call synced().
+       * @return false if interrupted
+       */
+      synchronized boolean awaitSynced() {
+        while (users.get() == SYNCING) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+          }
+        }
+        return true;
+      }
+
+      /**
+       * Release one use of the file.
+       * @return false if the file was not in use
+       */
+      boolean unlock() {
+        while (true) {
+          int n = users.get();
+          if (n <= 0) return false;
+          if (users.compareAndSet(n, n - 1)) return true;
+        }
+      }
+
+      // lock an unused file so that it can be removed
+      boolean lockForRemove() {
+        return users.compareAndSet(0, -1);
+      }
+
+      boolean isLocked() {
+        return users.get() != 0;
+      }
+
+      boolean isInUse() {
+        int n = users.get();
+        return (n > 0) || (n == SYNCING);
+      }
+
       void remove() {
         synchronized (CacheElement.this) {
           if (!list.remove(this))
@@ -625,7 +848,7 @@ public class FileCache {
       }
 
       public String toString() {
-        return isLocked  + " " + countAccessed + " " + new Date(lastAccessed) + " " + ncfile.getLocation();
+        return users.get() + " " + countAccessed + " " + new Date(lastAccessed) + " " + ncfile.getLocation();
       }
 
       public int compareTo(CacheFile o) {
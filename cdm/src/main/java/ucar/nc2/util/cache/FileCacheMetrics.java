@@ -0,0 +1,179 @@
+/*
+ * Copyright 1998-2009 University Corporation for Atmospheric Research/Unidata
+ *
+ * Portions of this software were developed by the Unidata Program at the
+ * University Corporation for Atmospheric Research.
+ *
+ * Access and use of this software shall impose the following obligations
+ * and understandings on the user. The user is granted the right, without
+ * any fee or cost, to use, copy, modify, alter, enhance and distribute
+ * this software, and any derivative works thereof, and its supporting
+ * documentation for any purpose whatsoever, provided that this entire
+ * notice appears in all copies of the software, derivative works and
+ * supporting documentation.  Further, UCAR requests that the user credit
+ * UCAR/Unidata in any publications that result from the use of this
+ * software or in any product that includes this software. The names UCAR
+ * and/or Unidata, however, may not be used in any advertising or publicity
+ * to endorse or promote any products or commercial entity unless specific
+ * written permission is obtained from UCAR/Unidata. The user also
+ * understands that UCAR/Unidata is not obligated to provide the user with
+ * any support, consulting, training or assistance of any kind with regard
+ * to the use, operation and performance of this software nor to provide
+ * the user with any updates, revisions, new versions or "bug fixes."
+ *
+ * THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ * INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ * FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ * NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ * WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.util.cache;
+
+import net.jcip.annotations.Immutable;
+
+import java.util.Formatter;
+
+/**
+ * A snapshot of FileCache statistics.
+ *
+ * @author caron
+ * @see FileCache#getMetrics()
+ */
+@Immutable
+public class FileCacheMetrics {
+  /**
+   * Upper bounds (msecs, exclusive) of the open time histogram buckets; the last bucket has no upper bound.
+   */
+  static public final long[] openTimeBounds = new long[]{1, 10, 100, 1000, 10000};
+
+  static int getOpenTimeBucket(long msecs) {
+    int i = 0;
+    while ((i < openTimeBounds.length) && (msecs >= openTimeBounds[i])) i++;
+    return i;
+  }
+
+  private final String name, policy;
+  private final long hits, misses, shares, opens, evictions, cleanups, openTime;
+  private final long[] openTimeHistogram;
+  private final int nfiles, nelems;
+
+  FileCacheMetrics(String name, String policy, long hits, long misses, long shares, long opens, long evictions,
+                   long cleanups, long openTime, long[] openTimeHistogram, int nfiles, int nelems) {
+    this.name = name;
+    this.policy = policy;
+    this.hits = hits;
+    this.misses = misses;
+    this.shares = shares;
+    this.opens = opens;
+    this.evictions = evictions;
+    this.cleanups = cleanups;
+    this.openTime = openTime;
+    this.openTimeHistogram = openTimeHistogram;
+    this.nfiles = nfiles;
+    this.nelems = nelems;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return name of the EvictionPolicy
+   */
+  public String getPolicy() {
+    return policy;
+  }
+
+  /**
+   * @return number of acquires satisfied from the cache
+   */
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return number of acquires not satisfied from the cache
+   */
+  public long getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return number of hits on a file already in use by someone else (shared mode only)
+   */
+  public long getShares() {
+    return shares;
+  }
+
+  /**
+   * @return number of files opened
+   */
+  public long getOpens() {
+    return opens;
+  }
+
+  /**
+   * @return number of files closed by cleanups
+   */
+  public long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * @return number of cleanups
+   */
+  public long getCleanups() {
+    return cleanups;
+  }
+
+  /**
+   * @return total msecs spent opening files
+   */
+  public long getOpenTime() {
+    return openTime;
+  }
+
+  /**
+   * Number of opens by time taken; bucket i counts opens taking less than openTimeBounds[i] msecs
+   * (and at least openTimeBounds[i-1]).
+   *
+   * @return histogram, length openTimeBounds.length + 1
+   */
+  public long[] getOpenTimeHistogram() {
+    return openTimeHistogram.clone();
+  }
+
+  /**
+   * @return number of files now in the cache
+   */
+  public int getNumberOfFiles() {
+    return nfiles;
+  }
+
+  /**
+   * @return number of unique keys now in the cache
+   */
+  public int getNumberOfElements() {
+    return nelems;
+  }
+
+  /**
+   * Add report to formatter.
+   *
+   * @param format add to this
+   */
+  public void show(Formatter format) {
+    format.format("  hits= %d miss= %d shares= %d nfiles= %d elems= %d%n", hits, misses, shares, nfiles, nelems);
+    format.format("  policy= %s opens= %d evictions= %d cleanups= %d openTime= %d msecs%n", policy, opens, evictions,
+        cleanups, openTime);
+    format.format("  open msecs:");
+    for (int i = 0; i < openTimeHistogram.length; i++) {
+      if (i < openTimeBounds.length) format.format(" <%d=%d", openTimeBounds[i], openTimeHistogram[i]);
+      else format.format(" >=%d=%d", openTimeBounds[i - 1], openTimeHistogram[i]);
+    }
+    format.format("%n");
+  }
+}
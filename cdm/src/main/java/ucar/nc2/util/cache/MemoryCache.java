@@ -0,0 +1,215 @@
+/*
+ * Copyright 1998-2009 University Corporation for Atmospheric Research/Unidata
+ *
+ * Portions of this software were developed by the Unidata Program at the
+ * University Corporation for Atmospheric Research.
+ *
+ * Access and use of this software shall impose the following obligations
+ * and understandings on the user. The user is granted the right, without
+ * any fee or cost, to use, copy, modify, alter, enhance and distribute
+ * this software, and any derivative works thereof, and its supporting
+ * documentation for any purpose whatsoever, provided that this entire
+ * notice appears in all copies of the software, derivative works and
+ * supporting documentation.  Further, UCAR requests that the user credit
+ * UCAR/Unidata in any publications that result from the use of this
+ * software or in any product that includes this software. The names UCAR
+ * and/or Unidata, however, may not be used in any advertising or publicity
+ * to endorse or promote any products or commercial entity unless specific
+ * written permission is obtained from UCAR/Unidata. The user also
+ * understands that UCAR/Unidata is not obligated to provide the user with
+ * any support, consulting, training or assistance of any kind with regard
+ * to the use, operation and performance of this software nor to provide
+ * the user with any updates, revisions, new versions or "bug fixes."
+ *
+ * THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ * INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ * FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ * NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ * WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.nc2.util.cache;
+
+import net.jcip.annotations.ThreadSafe;
+import net.jcip.annotations.GuardedBy;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keep a cache of decoded objects in memory, for example decompressed data chunks.
+ * The cache is bounded by the total size in bytes of the objects, which the caller supplies on put().
+ * When the size goes over the maximum, the least recently used objects are removed.
+ * <p/>
+ * The cached objects are shared between callers, and so must not be modified.
+ * All methods are thread safe.
+ *
+ * @author caron
+ */
+@ThreadSafe
+public class MemoryCache<K, V> {
+  private final String name;
+  private volatile long maxBytes;
+
+  @GuardedBy("this")
+  private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<K, Entry<V>>(100, 0.75f, true); // access order
+  @GuardedBy("this")
+  private long nbytes;
+
+  // stats
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong miss = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param name     name of the cache, for stats
+   * @param maxBytes keep the total size of the cached objects under this many bytes
+   */
+  public MemoryCache(String name, long maxBytes) {
+    this.name = name;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Get an object from the cache.
+   *
+   * @param key the object's key
+   * @return the object, or null if not in the cache
+   */
+  public V get(K key) {
+    Entry<V> e;
+    synchronized (this) {
+      e = map.get(key);
+    }
+    if (e == null) {
+      miss.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return e.value;
+  }
+
+  /**
+   * Put an object into the cache, then remove least recently used objects until the cache is under its maximum size.
+   * Objects larger than the maximum size are not cached.
+   *
+   * @param key    the object's key
+   * @param value  the object, must not be modified after this call
+   * @param nbytes size of the object in bytes
+   */
+  public void put(K key, V value, long nbytes) {
+    if (nbytes > maxBytes) return;
+
+    synchronized (this) {
+      Entry<V> old = map.put(key, new Entry<V>(value, nbytes));
+      if (old != null) this.nbytes -= old.nbytes;
+      this.nbytes += nbytes;
+      trim();
+    }
+  }
+
+  /**
+   * Remove an object from the cache.
+   *
+   * @param key the object's key
+   */
+  public synchronized void remove(K key) {
+    Entry<V> old = map.remove(key);
+    if (old != null) nbytes -= old.nbytes;
+  }
+
+  /**
+   * Remove all objects from the cache.
+   */
+  public synchronized void clear() {
+    map.clear();
+    nbytes = 0;
+  }
+
+  /**
+   * Change the maximum size, removing objects if needed.
+   *
+   * @param maxBytes keep the total size of the cached objects under this many bytes
+   */
+  public synchronized void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+    trim();
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * @return total size in bytes of the objects now in the cache
+   */
+  public synchronized long getSizeBytes() {
+    return nbytes;
+  }
+
+  /**
+   * @return number of objects now in the cache
+   */
+  public synchronized int getCount() {
+    return map.size();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return miss.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * Reset the hit, miss and eviction counts.
+   */
+  public void resetStats() {
+    hits.set(0);
+    miss.set(0);
+    evictions.set(0);
+  }
+
+  /**
+   * Add stat report (hits, misses, etc) to formatter.
+   *
+   * @param format add to this
+   */
+  public void showStats(Formatter format) {
+    synchronized (this) {
+      format.format("MemoryCache %s: hits= %d miss= %d evictions= %d count= %d bytes= %d max= %d%n", name,
+          hits.get(), miss.get(), evictions.get(), map.size(), nbytes, maxBytes);
+    }
+  }
+
+  @GuardedBy("this")
+  private void trim() {
+    Iterator<Entry<V>> iter = map.values().iterator();
+    while ((nbytes > maxBytes) && iter.hasNext()) {
+      Entry<V> e = iter.next(); // least recently used first
+      nbytes -= e.nbytes;
+      iter.remove();
+      evictions.incrementAndGet();
+    }
+  }
+
+  private static class Entry<V> {
+    final V value;
+    final long nbytes;
+
+    Entry(V value, long nbytes) {
+      this.value = value;
+      this.nbytes = nbytes;
+    }
+  }
+
+}
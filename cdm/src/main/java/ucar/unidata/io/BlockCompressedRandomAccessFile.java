@@ -0,0 +1,349 @@
+/*
+ * Copyright 1998-2009 University Corporation for Atmospheric Research/Unidata
+ *
+ * Portions of this software were developed by the Unidata Program at the
+ * University Corporation for Atmospheric Research.
+ *
+ * Access and use of this software shall impose the following obligations
+ * and understandings on the user. The user is granted the right, without
+ * any fee or cost, to use, copy, modify, alter, enhance and distribute
+ * this software, and any derivative works thereof, and its supporting
+ * documentation for any purpose whatsoever, provided that this entire
+ * notice appears in all copies of the software, derivative works and
+ * supporting documentation.  Further, UCAR requests that the user credit
+ * UCAR/Unidata in any publications that result from the use of this
+ * software or in any product that includes this software. The names UCAR
+ * and/or Unidata, however, may not be used in any advertising or publicity
+ * to endorse or promote any products or commercial entity unless specific
+ * written permission is obtained from UCAR/Unidata. The user also
+ * understands that UCAR/Unidata is not obligated to provide the user with
+ * any support, consulting, training or assistance of any kind with regard
+ * to the use, operation and performance of this software nor to provide
+ * the user with any updates, revisions, new versions or "bug fixes."
+ *
+ * THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ * INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ * FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ * NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ * WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.unidata.io;
+
+import ucar.nc2.util.DiskCache2;
+import ucar.nc2.util.cache.MemoryCache;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only access to a compressed file, as if it were uncompressed, without writing the uncompressed file to disk.
+ * The uncompressed stream is divided into blocks, each of which can be decoded starting from an index entry.
+ * The index is built by reading through the file once, and is persisted in the DiskCache2 set with setIndexCache(),
+ * so later opens of the same file dont have to read it again.
+ * A read only decodes the blocks it touches.
+ *
+ * @author caron
+ */
+public abstract class BlockCompressedRandomAccessFile extends RandomAccessFile {
+  static private org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(BlockCompressedRandomAccessFile.class);
+  static private final int INDEX_MAGIC = 0x43494458; // "CIDX"
+  static private final int INDEX_VERSION = 2; // 2: deflate checkpoints also flag a stored block just after the span
+
+  static private DiskCache2 indexCache;
+  static private MemoryCache<String, byte[]> blockCache;
+
+  /**
+   * Persist block indexes in this cache. Default is null, meaning the index is rebuilt each time the file is opened.
+   *
+   * @param cache store indexes here, or null
+   */
+  static public void setIndexCache(DiskCache2 cache) {
+    indexCache = cache;
+  }
+
+  static public DiskCache2 getIndexCache() {
+    return indexCache;
+  }
+
+  /**
+   * Share decoded blocks through this cache. Default is null, meaning only the most recently used block of each
+   * open file is kept.
+   *
+   * @param cache cache of decoded blocks, or null
+   */
+  static public void setBlockCache(MemoryCache<String, byte[]> cache) {
+    blockCache = cache;
+  }
+
+  static public MemoryCache<String, byte[]> getBlockCache() {
+    return blockCache;
+  }
+
+  /**
+   * One entry in the block index.
+   */
+  protected static class Block {
+    public final long cpos; // where decoding starts in the compressed file, the units are up to the subclass
+    public final long upos; // offset of the start of the block in the uncompressed stream
+    public final byte[] state; // anything else needed to start decoding here, may be empty, not null
+
+    public Block(long cpos, long upos, byte[] state) {
+      this.cpos = cpos;
+      this.upos = upos;
+      this.state = (state == null) ? new byte[0] : state;
+    }
+  }
+
+  ///////////////////////////////////////////////////////////////////////////////////
+
+  protected RandomAccessFile compressed;
+  private Block[] blocks;
+  private long total_length;
+
+  private int lastBlock = -1;
+  private byte[] lastData;
+
+  /**
+   * Constructor. Subclasses must call openIndex() when they are ready to read the compressed file.
+   *
+   * @param compressed the compressed file, closed when this is closed
+   * @param bufferSize size of read buffer
+   */
+  protected BlockCompressedRandomAccessFile(RandomAccessFile compressed, int bufferSize) {
+    super(bufferSize);
+    file = null;
+    this.compressed = compressed;
+    location = compressed.getLocation();
+    if (debugLeaks) {
+      allFiles.add(location);
+      openFiles.add(location);
+    }
+  }
+
+  /**
+   * Read the block index from the index cache, or build it by reading through the compressed file.
+   *
+   * @throws IOException on read error, or if the file cant be decoded
+   */
+  protected void openIndex() throws IOException {
+    File indexFile = (indexCache == null) ? null : indexCache.getCacheFile(location + ".cidx");
+    if ((indexFile != null) && indexFile.exists() && readIndex(indexFile))
+      return;
+
+    List<Block> list = new ArrayList<Block>();
+    total_length = buildIndex(list);
+    blocks = list.toArray(new Block[list.size()]);
+
+    if (indexFile != null)
+      writeIndex(indexFile);
+  }
+
+  /**
+   * Read through the compressed file and make the block index.
+   * The blocks must be added in order, the first one starting at uncompressed offset 0.
+   *
+   * @param blocks add the blocks to this list
+   * @return the total length of the uncompressed stream
+   * @throws IOException on read error
+   */
+  protected abstract long buildIndex(List<Block> blocks) throws IOException;
+
+  /**
+   * Decode one block.
+   *
+   * @param block the index entry
+   * @param data  put the uncompressed bytes here; its length is the length of the block
+   * @throws IOException on read error
+   */
+  protected abstract void readBlock(Block block, byte[] data) throws IOException;
+
+  /**
+   * Offer a block decoded while building the index to the block cache, so it doesnt have to be decoded again.
+   *
+   * @param blockno index of the block
+   * @param data    the uncompressed bytes of the block, must not be modified after this call
+   */
+  protected void cacheBlock(int blockno, byte[] data) {
+    if (blockCache != null)
+      blockCache.put(getCacheKey(blockno), data, data.length);
+  }
+
+  private String getCacheKey(int blockno) {
+    long clen;
+    try {
+      clen = compressed.length();
+    } catch (IOException e) {
+      clen = -1;
+    }
+    return location + "#" + clen + "#" + blockno;
+  }
+
+  private byte[] getBlock(int blockno) throws IOException {
+    if (blockno == lastBlock)
+      return lastData;
+
+    byte[] data = (blockCache == null) ? null : blockCache.get(getCacheKey(blockno));
+    if (data == null) {
+      long end = (blockno == blocks.length - 1) ? total_length : blocks[blockno + 1].upos;
+      data = new byte[(int) (end - blocks[blockno].upos)];
+      readBlock(blocks[blockno], data);
+      cacheBlock(blockno, data);
+    }
+
+    lastBlock = blockno;
+    lastData = data;
+    return data;
+  }
+
+  // find the block containing pos
+  private int findBlock(long pos) {
+    int low = 0;
+    int high = blocks.length - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (blocks[mid].upos <= pos)
+        low = mid;
+      else
+        high = mid - 1;
+    }
+    return low;
+  }
+
+  public int getNumberOfBlocks() {
+    return blocks.length;
+  }
+
+  ///////////////////////////////////////////////////////////////////////////////////
+  // index file: magic, version, compressed length and last modified, uncompressed length, blocks
+
+  private boolean readIndex(File indexFile) {
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+      if ((in.readInt() != INDEX_MAGIC) || (in.readInt() != INDEX_VERSION)) return false;
+      if (in.readLong() != compressed.length()) return false;
+      if (in.readLong() != new File(location).lastModified()) return false;
+
+      long total = in.readLong();
+      int n = in.readInt();
+      Block[] b = new Block[n];
+      for (int i = 0; i < n; i++) {
+        long cpos = in.readLong();
+        long upos = in.readLong();
+        byte[] state = new byte[in.readInt()];
+        in.readFully(state);
+        b[i] = new Block(cpos, upos, state);
+      }
+
+      total_length = total;
+      blocks = b;
+      return true;
+
+    } catch (IOException e) {
+      log.warn("Failed to read block index " + indexFile.getPath() + " err= " + e.getMessage());
+      return false;
+
+    } finally {
+      if (in != null) try {
+        in.close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+  }
+
+  // write to a temporary file and rename it, so that other readers never see a partial index
+  private void writeIndex(File indexFile) {
+    File tempFile = new File(indexFile.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      out.writeInt(INDEX_MAGIC);
+      out.writeInt(INDEX_VERSION);
+      out.writeLong(compressed.length());
+      out.writeLong(new File(location).lastModified());
+      out.writeLong(total_length);
+      out.writeInt(blocks.length);
+      for (Block b : blocks) {
+        out.writeLong(b.cpos);
+        out.writeLong(b.upos);
+        out.writeInt(b.state.length);
+        out.write(b.state);
+      }
+      out.close();
+      out = null;
+
+      indexFile.delete();
+      if (!tempFile.renameTo(indexFile))
+        log.warn("Failed to rename block index " + tempFile.getPath());
+
+    } catch (IOException e) {
+      log.warn("Failed to write block index " + indexFile.getPath() + " err= " + e.getMessage());
+
+    } finally {
+      if (out != null) try {
+        out.close();
+      } catch (IOException e) {
+        // ignore
+      }
+      if (tempFile.exists())
+        tempFile.delete();
+    }
+  }
+
+  ///////////////////////////////////////////////////////////////////////////////////
+  // override selected RandomAccessFile methods
+
+  @Override
+  protected int read_(long pos, byte[] b, int offset, int len) throws IOException {
+    if (pos >= total_length) return -1;
+
+    int done = 0;
+    while ((len > 0) && (pos < total_length)) {
+      int blockno = findBlock(pos);
+      byte[] data = getBlock(blockno);
+      int start = (int) (pos - blocks[blockno].upos);
+      int n = Math.min(len, data.length - start);
+      System.arraycopy(data, start, b, offset, n);
+      pos += n;
+      offset += n;
+      len -= n;
+      done += n;
+    }
+    return done;
+  }
+
+  @Override
+  public long readToByteChannel(WritableByteChannel dest, long offset, long nbytes) throws IOException {
+    int n = (int) nbytes;
+    byte[] buff = new byte[n];
+    int done = read_(offset, buff, 0, n);
+    if (done <= 0) return 0;
+    dest.write(ByteBuffer.wrap(buff, 0, done));
+    return done;
+  }
+
+  @Override
+  public long length() throws IOException {
+    return total_length;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (debugLeaks)
+      openFiles.remove(location);
+
+    lastData = null;
+    if (compressed != null) {
+      compressed.close();
+      compressed = null;
+    }
+  }
+
+}
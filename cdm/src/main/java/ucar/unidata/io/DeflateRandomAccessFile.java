@@ -0,0 +1,539 @@
+/*
+ * Copyright 1998-2009 University Corporation for Atmospheric Research/Unidata
+ *
+ * Portions of this software were developed by the Unidata Program at the
+ * University Corporation for Atmospheric Research.
+ *
+ * Access and use of this software shall impose the following obligations
+ * and understandings on the user. The user is granted the right, without
+ * any fee or cost, to use, copy, modify, alter, enhance and distribute
+ * this software, and any derivative works thereof, and its supporting
+ * documentation for any purpose whatsoever, provided that this entire
+ * notice appears in all copies of the software, derivative works and
+ * supporting documentation.  Further, UCAR requests that the user credit
+ * UCAR/Unidata in any publications that result from the use of this
+ * software or in any product that includes this software. The names UCAR
+ * and/or Unidata, however, may not be used in any advertising or publicity
+ * to endorse or promote any products or commercial entity unless specific
+ * written permission is obtained from UCAR/Unidata. The user also
+ * understands that UCAR/Unidata is not obligated to provide the user with
+ * any support, consulting, training or assistance of any kind with regard
+ * to the use, operation and performance of this software nor to provide
+ * the user with any updates, revisions, new versions or "bug fixes."
+ *
+ * THIS SOFTWARE IS PROVIDED BY UCAR/UNIDATA "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL UCAR/UNIDATA BE LIABLE FOR ANY SPECIAL,
+ * INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING
+ * FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT,
+ * NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION
+ * WITH THE ACCESS, USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+package ucar.unidata.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read a gzip file, or the first entry of a zip file, as if it were uncompressed.
+ * <p/>
+ * The index pass inflates the whole file, to find the deflate block boundaries. About every SPAN uncompressed bytes,
+ * a checkpoint is made at a block boundary, recording the bit position in the compressed file and the preceding 32K of
+ * uncompressed data. A read restarts a java.util.zip.Inflater at the checkpoint, with the saved 32K as its dictionary,
+ * shifting the input if the checkpoint is not on a byte boundary. That doesnt work if a stored block follows, since
+ * stored blocks are aligned to bytes of the original stream, so those spans are decoded in java. This includes a span
+ * followed by a stored block, since the Inflater reads the header of the next block after the end of the span.
+ * Each gzip member starts a new checkpoint.
+ *
+ * @author caron
+ */
+public class DeflateRandomAccessFile extends BlockCompressedRandomAccessFile {
+  static private final int SPAN = 1024 * 1024; // uncompressed bytes between checkpoints
+  static private final int WSIZE = 32768; // deflate window
+  static private final int INPUT_SIZE = 16 * 1024;
+  static private final byte HAS_STORED = 1; // flag: a stored block follows the checkpoint, in or just after the span
+
+  private long dataStart = -1; // zip: start of the deflated entry data; gzip: -1
+
+  /**
+   * Open a gzip or zip file.
+   *
+   * @param location   the compressed file
+   * @param bufferSize size of read buffer
+   * @throws IOException if not a gzip file or a zip file whose first entry is deflated, or on read error
+   */
+  public DeflateRandomAccessFile(String location, int bufferSize) throws IOException {
+    super(new RandomAccessFile(location, "r"), bufferSize);
+    try {
+      compressed.order(LITTLE_ENDIAN);
+      compressed.seek(0);
+      int magic = compressed.readShort() & 0xffff;
+      if (magic == 0x4b50) { // "PK"
+        compressed.seek(0);
+        if (compressed.readInt() != 0x04034b50)
+          throw new IOException("not a zip local file header: " + location);
+        compressed.seek(8);
+        int method = compressed.readShort();
+        if (method != 8)
+          throw new IOException("first zip entry is not deflated, method= " + method + ": " + location);
+        compressed.seek(26);
+        int nameLen = compressed.readShort() & 0xffff;
+        int extraLen = compressed.readShort() & 0xffff;
+        dataStart = 30 + nameLen + extraLen;
+
+      } else if (magic != 0x8b1f) {
+        throw new IOException("not a gzip or zip file: " + location);
+      }
+
+      openIndex();
+
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  protected long buildIndex(List<Block> blocks) throws IOException {
+    Scanner scanner = new Scanner(compressed, blocks);
+    if (dataStart >= 0) {
+      scanner.startMember(dataStart);
+      scanner.inflate();
+
+    } else {
+      long pos = 0;
+      while (true) {
+        scanner.seek(pos);
+        if (!scanner.readGzipHeader()) break;
+        scanner.startMember(scanner.bitPosition() >>> 3);
+        scanner.inflate();
+        scanner.readGzipTrailer();
+        pos = scanner.bitPosition() >>> 3;
+        if (pos >= compressed.length()) break;
+      }
+    }
+    return scanner.total;
+  }
+
+  // Block.state is a flag byte then the dictionary
+  protected void readBlock(Block block, byte[] data) throws IOException {
+    int shift = (int) (block.cpos & 7);
+    boolean hasStored = (block.state[0] & HAS_STORED) != 0;
+    if ((shift != 0) && hasStored) {
+      Scanner scanner = new Scanner(compressed, null);
+      scanner.restart(block.cpos, block.state, data);
+      return;
+    }
+
+    Inflater inflater = new Inflater(true);
+    try {
+      if (block.state.length > 1)
+        inflater.setDictionary(block.state, 1, block.state.length - 1);
+
+      // the checkpoint may not be on a byte boundary, so shift the input down to it
+      long pos = block.cpos >>> 3;
+      long clen = compressed.length();
+      byte[] in = new byte[INPUT_SIZE + 1];
+
+      int n = 0;
+      while (n < data.length) {
+        if (inflater.needsInput()) {
+          int want = (int) Math.min(in.length, clen - pos);
+          if (want <= 0)
+            throw new EOFException("unexpected end of compressed data: " + location);
+          compressed.seek(pos);
+          compressed.readFully(in, 0, want);
+          boolean last = (pos + want == clen);
+          int nin = (last || (shift == 0)) ? want : want - 1; // keep the last byte, it has the high bits of the next
+          if (shift != 0) {
+            for (int i = 0; i < nin; i++) {
+              int next = (i + 1 < want) ? in[i + 1] & 0xff : 0;
+              in[i] = (byte) (((in[i] & 0xff) >>> shift) | (next << (8 - shift)));
+            }
+          }
+          inflater.setInput(in, 0, nin);
+          pos += nin;
+        }
+
+        int got = inflater.inflate(data, n, data.length - n);
+        if ((got == 0) && (inflater.finished() || inflater.needsDictionary()))
+          throw new IOException("premature end of deflated data: " + location);
+        n += got;
+      }
+
+    } catch (DataFormatException e) {
+      throw new IOException("bad deflated data: " + location + " err= " + e.getMessage(), e);
+
+    } finally {
+      inflater.end();
+    }
+  }
+
+  ///////////////////////////////////////////////////////////////////////////////////
+  // inflate in java, tracking the bit position, to find block boundaries
+
+  static private final int[] LBASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83,
+      99, 115, 131, 163, 195, 227, 258};
+  static private final int[] LEXT = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5,
+      5, 0};
+  static private final int[] DBASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769,
+      1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+  static private final int[] DEXT = {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11,
+      12, 12, 13, 13};
+  static private final int[] CLORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+  // canonical Huffman code as a lookup table on the next maxLen bits; entry is (symbol << 4) | length, 0 = invalid
+  static private class Huffman {
+    int[] table;
+    int maxLen;
+
+    Huffman(int[] lengths, int start, int n) throws IOException {
+      int[] count = new int[16];
+      for (int i = 0; i < n; i++)
+        count[lengths[start + i]]++;
+      count[0] = 0;
+      for (int len = 15; len > 0; len--) {
+        if (count[len] > 0) {
+          maxLen = len;
+          break;
+        }
+      }
+      if (maxLen == 0) maxLen = 1; // no codes, any decode is an error
+      table = new int[1 << maxLen];
+
+      int[] next = new int[16];
+      int code = 0;
+      for (int len = 1; len < 16; len++) {
+        code = (code + count[len - 1]) << 1;
+        next[len] = code;
+      }
+
+      for (int sym = 0; sym < n; sym++) {
+        int len = lengths[start + sym];
+        if (len == 0) continue;
+        int c = next[len]++;
+        if (c >= (1 << len))
+          throw new IOException("over-subscribed Huffman code");
+        int rev = Integer.reverse(c) >>> (32 - len); // deflate sends codes high bit first
+        for (int i = rev; i < table.length; i += (1 << len))
+          table[i] = (sym << 4) | len;
+      }
+    }
+  }
+
+  static private Huffman fixedLit, fixedDist;
+
+  static private synchronized void makeFixed() throws IOException {
+    if (fixedLit != null) return;
+    int[] lengths = new int[288];
+    for (int i = 0; i < 144; i++) lengths[i] = 8;
+    for (int i = 144; i < 256; i++) lengths[i] = 9;
+    for (int i = 256; i < 280; i++) lengths[i] = 7;
+    for (int i = 280; i < 288; i++) lengths[i] = 8;
+    fixedLit = new Huffman(lengths, 0, 288);
+
+    for (int i = 0; i < 30; i++) lengths[i] = 5;
+    fixedDist = new Huffman(lengths, 0, 30);
+  }
+
+  static private class Scanner {
+    RandomAccessFile raf;
+    List<Block> blocks;
+
+    // input
+    byte[] in = new byte[64 * 1024];
+    long inStart;
+    int inPos, inLen;
+    long bitBuf;
+    int bitCnt;
+
+    // output
+    byte[] window = new byte[WSIZE];
+    int wpos;
+    long memberOut, total, lastCheckpoint;
+    CRC32 crc = new CRC32();
+    int crcFrom;
+    byte[] out; // when decoding a span, else null
+    int outPos;
+
+    // the checkpoint being filled in, and the one before it
+    byte[] spanState, prevSpanState;
+    boolean spanHasStored;
+
+    Scanner(RandomAccessFile raf, List<Block> blocks) throws IOException {
+      this.raf = raf;
+      this.blocks = blocks;
+      makeFixed();
+    }
+
+    void seek(long pos) {
+      inStart = pos;
+      inPos = inLen = 0;
+      bitBuf = 0;
+      bitCnt = 0;
+    }
+
+    long bitPosition() {
+      return (inStart + inPos) * 8 - bitCnt;
+    }
+
+    int nextByte() throws IOException {
+      if (inPos == inLen) {
+        inStart += inLen;
+        inPos = inLen = 0;
+        raf.seek(inStart);
+        int n = raf.read(in, 0, in.length);
+        if (n <= 0) return -1;
+        inLen = n;
+      }
+      return in[inPos++] & 0xff;
+    }
+
+    int bits(int n) throws IOException {
+      while (bitCnt < n) {
+        int b = nextByte();
+        if (b < 0) throw new EOFException("unexpected end of compressed data");
+        bitBuf |= (long) b << bitCnt;
+        bitCnt += 8;
+      }
+      int v = (int) (bitBuf & ((1L << n) - 1));
+      bitBuf >>>= n;
+      bitCnt -= n;
+      return v;
+    }
+
+    void alignToByte() {
+      int drop = bitCnt & 7;
+      bitBuf >>>= drop;
+      bitCnt -= drop;
+    }
+
+    int decode(Huffman h) throws IOException {
+      while (bitCnt < h.maxLen) {
+        int b = nextByte();
+        if (b < 0) break; // may not need all the bits
+        bitBuf |= (long) b << bitCnt;
+        bitCnt += 8;
+      }
+      int e = h.table[(int) (bitBuf & ((1 << h.maxLen) - 1))];
+      int len = e & 15;
+      if ((e == 0) || (len > bitCnt))
+        throw new IOException("invalid Huffman code");
+      bitBuf >>>= len;
+      bitCnt -= len;
+      return e >>> 4;
+    }
+
+    // returns false if there is no gzip member here
+    boolean readGzipHeader() throws IOException {
+      if ((nextByte() != 0x1f) || (nextByte() != 0x8b))
+        return false; // trailing garbage is ignored, same as GZIPInputStream
+      if (bits(8) != 8)
+        throw new IOException("unknown gzip compression method");
+      int flags = bits(8);
+      bits(16);
+      bits(16);
+      bits(16); // mtime, xfl, os
+      if ((flags & 4) != 0) {
+        int xlen = bits(16);
+        for (int i = 0; i < xlen; i++) bits(8);
+      }
+      if ((flags & 8) != 0)
+        while (bits(8) != 0) ; // file name
+      if ((flags & 16) != 0)
+        while (bits(8) != 0) ; // comment
+      if ((flags & 2) != 0)
+        bits(16); // header crc
+      return true;
+    }
+
+    void readGzipTrailer() throws IOException {
+      alignToByte();
+      long crcValue = bits(16) | ((long) bits(16) << 16);
+      long size = bits(16) | ((long) bits(16) << 16);
+      if (crcValue != crc.getValue())
+        throw new IOException("gzip CRC error");
+      if (size != (memberOut & 0xffffffffL))
+        throw new IOException("gzip length error");
+    }
+
+    void startMember(long pos) {
+      seek(pos);
+      memberOut = 0;
+      crc.reset();
+      crcFrom = wpos;
+      checkpoint();
+      prevSpanState = null; // the previous member ended with its last block
+    }
+
+    void checkpoint() {
+      prevSpanState = spanState;
+      finishSpan();
+      int n = (int) Math.min(WSIZE, memberOut);
+      byte[] state = new byte[n + 1];
+      int start = (wpos - n) & (WSIZE - 1);
+      int first = Math.min(n, WSIZE - start);
+      System.arraycopy(window, start, state, 1, first);
+      System.arraycopy(window, 0, state, 1 + first, n - first);
+      blocks.add(new Block(bitPosition(), total, state));
+      lastCheckpoint = total;
+      spanState = state;
+    }
+
+    void finishSpan() {
+      if ((spanState != null) && spanHasStored)
+        spanState[0] |= HAS_STORED;
+      spanState = null;
+      spanHasStored = false;
+    }
+
+    // decode the span starting at the checkpoint into data
+    void restart(long cpos, byte[] state, byte[] data) throws IOException {
+      seek(cpos >>> 3);
+      bits((int) (cpos & 7));
+      int n = state.length - 1;
+      System.arraycopy(state, 1, window, 0, n);
+      wpos = n & (WSIZE - 1);
+      crcFrom = wpos;
+      memberOut = n;
+      out = data;
+      outPos = 0;
+      try {
+        while (outPos < out.length) {
+          if (inflateBlock() && (outPos < out.length))
+            throw new IOException("premature end of deflated data");
+        }
+      } catch (ArrayIndexOutOfBoundsException e) {
+        throw new IOException("deflated data longer than the index says", e);
+      }
+    }
+
+    void put(int b) {
+      if (out != null) out[outPos++] = (byte) b;
+      window[wpos++] = (byte) b;
+      if (wpos == WSIZE) {
+        crc.update(window, crcFrom, WSIZE - crcFrom);
+        crcFrom = 0;
+        wpos = 0;
+      }
+    }
+
+    // inflate the rest of the member
+    void inflate() throws IOException {
+      while (!inflateBlock()) {
+        if (total - lastCheckpoint >= SPAN)
+          checkpoint();
+      }
+      finishSpan();
+    }
+
+    // inflate one deflate block, return true if its the last one
+    boolean inflateBlock() throws IOException {
+      int last = bits(1);
+      int type = bits(2);
+      long before = memberOut;
+      if (type == 0)
+        stored();
+      else if (type == 1)
+        codes(fixedLit, fixedDist);
+      else if (type == 2)
+        dynamic();
+      else
+        throw new IOException("invalid deflate block type");
+
+      crc.update(window, crcFrom, wpos - crcFrom);
+      crcFrom = wpos;
+      total += memberOut - before;
+      return last == 1;
+    }
+
+    void stored() throws IOException {
+      spanHasStored = true;
+      // blocks with no output right after a checkpoint are decoded by the previous span too, see readBlock()
+      if ((total == lastCheckpoint) && (prevSpanState != null))
+        prevSpanState[0] |= HAS_STORED;
+      alignToByte();
+      int len = bits(16);
+      int nlen = bits(16);
+      if (len != (~nlen & 0xffff))
+        throw new IOException("stored block length error");
+      memberOut += len;
+      for (int i = 0; i < len; i++)
+        put(bits(8));
+    }
+
+    void dynamic() throws IOException {
+      int nlen = bits(5) + 257;
+      int ndist = bits(5) + 1;
+      int ncode = bits(4) + 4;
+
+      int[] lengths = new int[nlen + ndist + 19];
+      for (int i = 0; i < ncode; i++)
+        lengths[CLORDER[i]] = bits(3);
+      Huffman lencode = new Huffman(lengths, 0, 19);
+
+      lengths = new int[nlen + ndist];
+      int index = 0;
+      while (index < nlen + ndist) {
+        int sym = decode(lencode);
+        if (sym < 16) {
+          lengths[index++] = sym;
+          continue;
+        }
+        int len = 0;
+        int repeat;
+        if (sym == 16) {
+          if (index == 0) throw new IOException("repeat with no first length");
+          len = lengths[index - 1];
+          repeat = 3 + bits(2);
+        } else if (sym == 17) {
+          repeat = 3 + bits(3);
+        } else {
+          repeat = 11 + bits(7);
+        }
+        if (index + repeat > nlen + ndist)
+          throw new IOException("too many code lengths");
+        while (repeat-- > 0)
+          lengths[index++] = len;
+      }
+      if (lengths[256] == 0)
+        throw new IOException("no end-of-block code");
+
+      codes(new Huffman(lengths, 0, nlen), new Huffman(lengths, nlen, ndist));
+    }
+
+    void codes(Huffman lit, Huffman dist) throws IOException {
+      while (true) {
+        int sym = decode(lit);
+        if (sym < 256) {
+          put(sym);
+          memberOut++;
+
+        } else if (sym == 256) {
+          return;
+
+        } else {
+          sym -= 257;
+          if (sym >= 29) throw new IOException("invalid length code");
+          int len = LBASE[sym] + bits(LEXT[sym]);
+          int dsym = decode(dist);
+          if (dsym >= 30) throw new IOException("invalid distance code");
+          int d = DBASE[dsym] + bits(DEXT[dsym]);
+          if (d > memberOut) throw new IOException("distance too far back");
+
+          int from = (wpos - d) & (WSIZE - 1);
+          for (int i = 0; i < len; i++) {
+            put(window[from] & 0xff);
+            from = (from + 1) & (WSIZE - 1);
+          }
+          memberOut += len;
+        }
+      }
+    }
+  }
+
+}
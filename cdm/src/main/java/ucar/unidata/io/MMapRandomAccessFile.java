@@ -33,98 +33,147 @@
 package ucar.unidata.io;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.MappedByteBuffer;
 
 /**
- * Use NIO MappedByteBuffer to implement a RandomAccessFile.
- * Limited to 2G size. Not currently used - NOT UP TO DATE DO NOT USE
+ * Use NIO MappedByteBuffers to implement a read-only RandomAccessFile.
+ * The file is mapped as a list of fixed-size segments, so files larger than 2G can be used.
+ * Reads that cross a segment boundary are split across segments.
+ * <p/>
+ * The buffered (seek/read) methods work as usual, filling the read buffer from the mapped segments.
+ * The positional reads and readToByteChannel() copy directly from the mapped segments, without using the read buffer,
+ * and may be called concurrently from multiple threads.
+ * <p/>
+ * The mappings are released when this object is garbage collected, not when it is closed.
+ *
  * @author john
  */
-class MMapRandomAccessFile extends RandomAccessFile {
+public class MMapRandomAccessFile extends RandomAccessFile {
+
+  /**
+   * The default segment size, in bytes.
+   */
+  static public final int defaultSegmentSize = 1 << 30;
 
-  private MappedByteBuffer source;
+  private MappedByteBuffer[] segments;
+  private final int segmentSize;
+  private final long fileLength;
 
   /**
-    * Constructor for in-memory "files"
-    * @param location used as a name
-    * @param mode the open mode
-    * @throws java.io.IOException on error
-    */
-  MMapRandomAccessFile(String location, String mode ) throws IOException {
-    super(location, mode, 1);
-    FileChannel channel = file.getChannel();
-    source = channel.map( readonly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, (long) 0, channel.size());
-    channel.close();
-
-    bufferStart = 0;
-	  dataSize = (int) channel.size();
-	  dataEnd = channel.size();
-    filePosition = 0;
-    buffer = null;
-    endOfFile = false;
+   * Constructor, default segment size.
+   *
+   * @param location location of the file
+   * @throws java.io.IOException on open error
+   */
+  public MMapRandomAccessFile(String location) throws IOException {
+    this(location, defaultSegmentSize);
   }
 
-
-  public void flush() throws IOException {
-    if (bufferModified) {
-      source.force();
-      bufferModified = false;
+  /**
+   * Constructor.
+   *
+   * @param location    location of the file
+   * @param segmentSize size in bytes of each mapped segment
+   * @throws java.io.IOException on open error
+   */
+  public MMapRandomAccessFile(String location, int segmentSize) throws IOException {
+    super(defaultBufferSize);
+    if (segmentSize <= 0)
+      throw new IllegalArgumentException("segmentSize must be > 0");
+
+    this.location = location;
+    this.segmentSize = segmentSize;
+    if (debugLeaks)
+      allFiles.add(location);
+
+    java.io.RandomAccessFile myFile = new java.io.RandomAccessFile(location, "r");
+    try {
+      FileChannel channel = myFile.getChannel();
+      fileLength = channel.size();
+      int nsegs = (int) ((fileLength + segmentSize - 1) / segmentSize);
+      segments = new MappedByteBuffer[nsegs];
+      for (int i = 0; i < nsegs; i++) {
+        long start = (long) i * segmentSize;
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, fileLength - start));
+      }
+    } finally {
+      myFile.close(); // mappings remain valid after the channel is closed
     }
+
+    if (debugLeaks)
+      openFiles.add(location);
   }
 
+  @Override
   public void close() throws IOException {
-    if (!readonly) flush();
-    source = null;
+    if (debugLeaks)
+      openFiles.remove(location);
+    segments = null;
   }
 
-  public long length( ) {
-    return dataEnd;
+  @Override
+  public long length() {
+    return fileLength;
   }
 
-  public void seek( long pos ) {
-    filePosition = pos;
-    if( filePosition < dataEnd )
-      source.position((int) filePosition);
-    else
-      endOfFile = true;
+  @Override
+  public void flush() throws IOException {
+    if (bufferModified)
+      throw new IOException("MMapRandomAccessFile is read-only: " + location);
   }
 
-   public void unread( ) {
-     seek( filePosition-1);
-   }
+  @Override
+  protected int read_(long pos, byte[] b, int offset, int len) throws IOException {
+    return copy(pos, ByteBuffer.wrap(b, offset, len));
+  }
 
-  public int read() throws IOException {
-    // If the file position is within the data, return the byte...
-    if( filePosition < dataEnd ) {
-      filePosition++;
-      return source.get() & 0xff;
+  @Override
+  public int read(long pos, ByteBuffer dst) throws IOException {
+    if (!dst.hasRemaining()) return 0;
+    return copy(pos, dst);
+  }
 
-    } else {
-       return -1;
+  @Override
+  public long readToByteChannel(WritableByteChannel dest, long offset, long nbytes) throws IOException {
+    long need = Math.min(nbytes, fileLength - offset);
+    long done = 0;
+    while (done < need) {
+      ByteBuffer src = slice(offset + done, need - done);
+      while (src.hasRemaining())
+        done += dest.write(src);
     }
+    return done;
   }
 
-   protected int readBytes( byte dst[], int offset, int length ) throws IOException {
-     if( endOfFile ) return -1;
-
-     length = (int) Math.min( length, dataEnd - filePosition);
-     if (length > 0) {
-       source.get(dst, offset, length);
-       filePosition += length;
-     }
-     return length;
-   }
-
-  public void write( int b ) throws IOException {
-     source.put( (byte)b);
-     filePosition++;
-     bufferModified = true;
+  // copy from the segments into dst, starting at pos; return number of bytes copied, or -1 if at EOF
+  private int copy(long pos, ByteBuffer dst) throws IOException {
+    if (segments == null)
+      throw new IOException("File is closed: " + location);
+    if (pos >= fileLength) return -1;
+
+    int total = 0;
+    while (dst.hasRemaining() && (pos < fileLength)) {
+      ByteBuffer src = slice(pos, dst.remaining());
+      int n = src.remaining();
+      dst.put(src);
+      pos += n;
+      total += n;
+    }
+    return total;
   }
 
-  public void writeBytes( byte dst[], int offset, int length ) throws IOException {
-    source.put(dst, offset, length);
-    filePosition += length;
+  // a view of the segment containing pos, positioned at pos, with at most want bytes remaining.
+  // duplicate() gives each caller its own position and limit, so this is thread-safe.
+  private ByteBuffer slice(long pos, long want) {
+    ByteBuffer src = segments[(int) (pos / segmentSize)].duplicate();
+    int start = (int) (pos % segmentSize);
+    src.position(start);
+    if (src.remaining() > want)
+      src.limit(start + (int) want);
+    return src;
   }
 
-}
\ No newline at end of file
+}
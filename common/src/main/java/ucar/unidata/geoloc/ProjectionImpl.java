@@ -36,6 +36,10 @@ import ucar.unidata.geoloc.projection.LatLonProjection;
 import ucar.unidata.util.*;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 /**
  * Superclass for our implementations of geoloc.Projection.
@@ -474,10 +478,14 @@ public abstract class ProjectionImpl implements Projection, Cloneable, java.io.S
           + "from array not same length as to array");
     }
 
+    ProjectionPointImpl ppi = new ProjectionPointImpl();
+    LatLonPointImpl llpi = new LatLonPointImpl();
+
     for (int i = 0; i < from[0].length; i++) {
-      LatLonPoint endL = projToLatLon(from[0][i], from[1][i]);
-      to[0][i] = endL.getLatitude();
-      to[1][i] = endL.getLongitude();
+      ppi.setLocation(from[0][i], from[1][i]);
+      projToLatLon(ppi, llpi);
+      to[0][i] = llpi.getLatitude();
+      to[1][i] = llpi.getLongitude();
     }
 
     return to;
@@ -737,6 +745,104 @@ public abstract class ProjectionImpl implements Projection, Cloneable, java.io.S
 
   */
 
+  ///////////////////////////////////////////////////////////////////////////////////
+  // 2D lat/lon of a projection grid, optionally in parallel
+
+  static private Executor batchExecutor;
+  static private int batchSize = 64 * 1024;
+
+  /**
+   * Compute projToLatLonGrid() in parallel. The grid is divided into batches of whole rows, each batch converted
+   * with projToLatLon(double[][], double[][]) on the executor. The projection must not be modified while this is
+   * happening.
+   *
+   * @param exec      use this executor; if null, batches are converted on the calling thread.
+   * @param batchSize approximate number of points in each batch; must be > 0
+   */
+  static public void setBatchExecutor(Executor exec, int batchSize) {
+    if (batchSize <= 0)
+      throw new IllegalArgumentException("batchSize must be > 0");
+    ProjectionImpl.batchExecutor = exec;
+    ProjectionImpl.batchSize = batchSize;
+  }
+
+  /**
+   * Convert all the points of a regular projection grid to lat/lon, for example to make 2D lat/lon coordinates.
+   *
+   * @param xData x coordinates of the grid
+   * @param yData y coordinates of the grid
+   * @return array of lat/lon coordinates: result[2][ny*nx], where (result[0][i*nx+j], result[1][i*nx+j]) is the
+   *         (lat, lon) coordinate of the point (xData[j], yData[i])
+   */
+  public double[][] projToLatLonGrid(final double[] xData, final double[] yData) {
+    final int nx = xData.length;
+    final int ny = yData.length;
+    final double[][] result = new double[2][nx * ny];
+    if (nx * ny == 0) return result;
+
+    int rowsPerBatch = Math.max(1, batchSize / nx);
+    Executor exec = (rowsPerBatch >= ny) ? null : batchExecutor;
+
+    List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>();
+    for (int row = 0; row < ny; row += rowsPerBatch) {
+      final int startRow = row;
+      final int endRow = Math.min(ny, row + rowsPerBatch);
+      if (exec == null) {
+        projToLatLonRows(xData, yData, startRow, endRow, result);
+      } else {
+        FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+          public Object call() {
+            projToLatLonRows(xData, yData, startRow, endRow, result);
+            return null;
+          }
+        });
+        exec.execute(task);
+        tasks.add(task);
+      }
+    }
+
+    try {
+      for (FutureTask<Object> task : tasks)
+        task.get();
+
+    } catch (InterruptedException e) {
+      for (FutureTask<Object> task : tasks)
+        task.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while converting grid to lat/lon");
+
+    } catch (ExecutionException e) {
+      for (FutureTask<Object> task : tasks)
+        task.cancel(true);
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      throw new IllegalStateException(cause);
+    }
+
+    return result;
+  }
+
+  // convert rows [startRow, endRow) of the grid into the result
+  private void projToLatLonRows(double[] xData, double[] yData, int startRow, int endRow, double[][] result) {
+    int nx = xData.length;
+    int n = (endRow - startRow) * nx;
+    double[][] from = new double[2][n];
+    double[][] to = new double[2][n];
+
+    for (int i = startRow; i < endRow; i++) {
+      int start = (i - startRow) * nx;
+      System.arraycopy(xData, 0, from[0], start, nx);
+      Arrays.fill(from[1], start, start + nx, yData[i]);
+    }
+
+    projToLatLon(from, to);
+
+    // the array methods dont normalize longitude, but projToLatLon(ProjectionPoint) does
+    System.arraycopy(to[0], 0, result[0], startRow * nx, n);
+    for (int k = 0; k < n; k++)
+      result[1][startRow * nx + k] = LatLonPointImpl.lonNormal(to[1][k]);
+  }
+
   // bounding box utilities
 
   /**
@@ -249,4 +249,181 @@ public class RotatedPole extends ProjectionImpl {
     return this.getNorthPole().equals(oo.getNorthPole());
   }
 
+  // combined rotation rotY * rotZ, used by the array methods
+  private double[][] rotYZ() {
+    double[][] m = new double[3][3];
+    for (int i = 0; i < 3; i++)
+      for (int j = 0; j < 3; j++)
+        m[i][j] = rotY[i][0] * rotZ[0][j] + rotY[i][1] * rotZ[1][j] + rotY[i][2] * rotZ[2][j];
+    return m;
+  }
+
+  /**
+   * Convert lat/lon coordinates to rotated lon (x), lat (y) coordinates.
+   *
+   * @param from     array of lat/lon coordinates: from[2][n], where
+   *                 (from[latIndex][i], from[lonIndex][i]) is the (lat,lon)
+   *                 coordinate of the ith point
+   * @param to       resulting array of projection coordinates: to[2][n]
+   *                 where (to[0][i], to[1][i]) is the (x,y) coordinate of
+   *                 the ith point
+   * @param latIndex index of lat coordinate; must be 0 or 1
+   * @param lonIndex index of lon coordinate; must be 0 or 1
+   * @return the "to" array
+   */
+  public double[][] latLonToProj(double[][] from, double[][] to, int latIndex, int lonIndex) {
+    double[][] m = rotYZ();
+    double m00 = m[0][0], m01 = m[0][1], m02 = m[0][2];
+    double m10 = m[1][0], m11 = m[1][1], m12 = m[1][2];
+    double m20 = m[2][0], m21 = m[2][1], m22 = m[2][2];
+
+    int cnt = from[0].length;
+    double[] fromLatA = from[latIndex];
+    double[] fromLonA = from[lonIndex];
+    double[] resultXA = to[INDEX_X];
+    double[] resultYA = to[INDEX_Y];
+
+    for (int i = 0; i < cnt; i++) {
+      double lat = fromLatA[i] * RAD_PER_DEG;
+      double lon = fromLonA[i] * RAD_PER_DEG;
+      double cosLat = Math.cos(lat);
+      double x = cosLat * Math.cos(lon);
+      double y = cosLat * Math.sin(lon);
+      double z = Math.sin(lat);
+
+      double px = m00 * x + m01 * y + m02 * z;
+      double py = m10 * x + m11 * y + m12 * z;
+      double pz = m20 * x + m21 * y + m22 * z;
+
+      resultXA[i] = LatLonPointImpl.range180(Math.atan2(py, px) * DEG_PER_RAD);
+      resultYA[i] = Math.asin(pz) * DEG_PER_RAD;
+    }
+    return to;
+  }
+
+  /**
+   * Convert lat/lon coordinates to rotated lon (x), lat (y) coordinates.
+   *
+   * @param from     array of lat/lon coordinates: from[2][n], where
+   *                 (from[latIndex][i], from[lonIndex][i]) is the (lat,lon)
+   *                 coordinate of the ith point
+   * @param to       resulting array of projection coordinates: to[2][n]
+   *                 where (to[0][i], to[1][i]) is the (x,y) coordinate of
+   *                 the ith point
+   * @param latIndex index of lat coordinate; must be 0 or 1
+   * @param lonIndex index of lon coordinate; must be 0 or 1
+   * @return the "to" array
+   */
+  public float[][] latLonToProj(float[][] from, float[][] to, int latIndex, int lonIndex) {
+    double[][] m = rotYZ();
+    double m00 = m[0][0], m01 = m[0][1], m02 = m[0][2];
+    double m10 = m[1][0], m11 = m[1][1], m12 = m[1][2];
+    double m20 = m[2][0], m21 = m[2][1], m22 = m[2][2];
+
+    int cnt = from[0].length;
+    float[] fromLatA = from[latIndex];
+    float[] fromLonA = from[lonIndex];
+    float[] resultXA = to[INDEX_X];
+    float[] resultYA = to[INDEX_Y];
+
+    for (int i = 0; i < cnt; i++) {
+      double lat = fromLatA[i] * RAD_PER_DEG;
+      double lon = fromLonA[i] * RAD_PER_DEG;
+      double cosLat = Math.cos(lat);
+      double x = cosLat * Math.cos(lon);
+      double y = cosLat * Math.sin(lon);
+      double z = Math.sin(lat);
+
+      double px = m00 * x + m01 * y + m02 * z;
+      double py = m10 * x + m11 * y + m12 * z;
+      double pz = m20 * x + m21 * y + m22 * z;
+
+      resultXA[i] = (float) LatLonPointImpl.range180(Math.atan2(py, px) * DEG_PER_RAD);
+      resultYA[i] = (float) (Math.asin(pz) * DEG_PER_RAD);
+    }
+    return to;
+  }
+
+  /**
+   * Convert rotated lon (x), lat (y) coordinates to lat/lon coordinates.
+   *
+   * @param from array of projection coordinates: from[2][n], where
+   *             (from[0][i], from[1][i]) is the (x, y) coordinate
+   *             of the ith point
+   * @param to   resulting array of lat/lon coordinates: to[2][n] where
+   *             (to[0][i], to[1][i]) is the (lat, lon) coordinate of
+   *             the ith point
+   * @return the "to" array
+   */
+  public double[][] projToLatLon(double[][] from, double[][] to) {
+    double[][] m = rotYZ(); // inverse is the transpose
+    double m00 = m[0][0], m01 = m[0][1], m02 = m[0][2];
+    double m10 = m[1][0], m11 = m[1][1], m12 = m[1][2];
+    double m20 = m[2][0], m21 = m[2][1], m22 = m[2][2];
+
+    int cnt = from[0].length;
+    double[] fromXA = from[INDEX_X];
+    double[] fromYA = from[INDEX_Y];
+    double[] toLatA = to[INDEX_LAT];
+    double[] toLonA = to[INDEX_LON];
+
+    for (int i = 0; i < cnt; i++) {
+      double lon = LatLonPointImpl.range180(fromXA[i]) * RAD_PER_DEG;
+      double lat = fromYA[i] * RAD_PER_DEG;
+      double cosLat = Math.cos(lat);
+      double x = cosLat * Math.cos(lon);
+      double y = cosLat * Math.sin(lon);
+      double z = Math.sin(lat);
+
+      double px = m00 * x + m10 * y + m20 * z;
+      double py = m01 * x + m11 * y + m21 * z;
+      double pz = m02 * x + m12 * y + m22 * z;
+
+      toLatA[i] = Math.asin(pz) * DEG_PER_RAD;
+      toLonA[i] = Math.atan2(py, px) * DEG_PER_RAD;
+    }
+    return to;
+  }
+
+  /**
+   * Convert rotated lon (x), lat (y) coordinates to lat/lon coordinates.
+   *
+   * @param from array of projection coordinates: from[2][n], where
+   *             (from[0][i], from[1][i]) is the (x, y) coordinate
+   *             of the ith point
+   * @param to   resulting array of lat/lon coordinates: to[2][n] where
+   *             (to[0][i], to[1][i]) is the (lat, lon) coordinate of
+   *             the ith point
+   * @return the "to" array
+   */
+  public float[][] projToLatLon(float[][] from, float[][] to) {
+    double[][] m = rotYZ(); // inverse is the transpose
+    double m00 = m[0][0], m01 = m[0][1], m02 = m[0][2];
+    double m10 = m[1][0], m11 = m[1][1], m12 = m[1][2];
+    double m20 = m[2][0], m21 = m[2][1], m22 = m[2][2];
+
+    int cnt = from[0].length;
+    float[] fromXA = from[INDEX_X];
+    float[] fromYA = from[INDEX_Y];
+    float[] toLatA = to[INDEX_LAT];
+    float[] toLonA = to[INDEX_LON];
+
+    for (int i = 0; i < cnt; i++) {
+      double lon = LatLonPointImpl.range180(fromXA[i]) * RAD_PER_DEG;
+      double lat = fromYA[i] * RAD_PER_DEG;
+      double cosLat = Math.cos(lat);
+      double x = cosLat * Math.cos(lon);
+      double y = cosLat * Math.sin(lon);
+      double z = Math.sin(lat);
+
+      double px = m00 * x + m10 * y + m20 * z;
+      double py = m01 * x + m11 * y + m21 * z;
+      double pz = m02 * x + m12 * y + m22 * z;
+
+      toLatA[i] = (float) (Math.asin(pz) * DEG_PER_RAD);
+      toLonA[i] = (float) (Math.atan2(py, px) * DEG_PER_RAD);
+    }
+    return to;
+  }
+
 }
@@ -41,6 +41,9 @@ import java.io.*;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
 
 
@@ -60,6 +63,10 @@ import java.nio.channels.WritableByteChannel;
  * this derives, see his <a href="http://www.aber.ac.uk/~agm/Java.html">
  * Freeware Java Classes</a>.
  * <p/>
+ * The seek/read methods share the file pointer and read buffer, and so are not thread-safe.
+ * The positional read methods (readFully(long pos, ...), read(long pos, ByteBuffer dst)) do not use
+ * or change that state, and may be called concurrently from multiple threads on a file opened read-only.
+ * <p/>
  *
  * @author Alex McManus
  * @author Russ Rew
@@ -163,7 +170,7 @@ public class RandomAccessFile implements DataInput, DataOutput {
    * The underlying java.io.RandomAccessFile.
    */
   protected java.io.RandomAccessFile file;
-  protected java.nio.channels.FileChannel fileChannel;
+  protected FileChannel fileChannel;
 
   /**
    * The offset in bytes from the file start, of the next read or
@@ -604,12 +611,11 @@ public class RandomAccessFile implements DataInput, DataOutput {
    */
   public long readToByteChannel(WritableByteChannel dest, long offset, long nbytes) throws IOException {
 
-    if (fileChannel == null)
-      fileChannel = file.getChannel();
+    FileChannel channel = getFileChannel();
 
     long need = nbytes;
     while (need > 0) {
-      long count = fileChannel.transferTo(offset, need, dest);
+      long count = channel.transferTo(offset, need, dest);
       //if (count == 0) break;  // LOOK not sure what the EOF condition is
       need -= count;
       offset += count;
@@ -618,6 +624,125 @@ public class RandomAccessFile implements DataInput, DataOutput {
   }
 
 
+  // java.io.RandomAccessFile.getChannel() always returns the same channel, so a race here is harmless
+  private FileChannel getFileChannel() {
+    if (fileChannel == null)
+      fileChannel = file.getChannel();
+    return fileChannel;
+  }
+
+  // An interrupt during FileChannel.read() closes the channel, and with it the file, which may be shared.
+  // So the interrupt status is cleared while reading, and restored after. If the channel gets closed anyway,
+  // by an interrupt that arrives during the read, the file is reopened and the read is retried.
+  private int readChannel(long pos, ByteBuffer dst) throws IOException {
+    boolean interrupted = Thread.interrupted();
+    try {
+      int start = dst.position();
+      while (true) {
+        FileChannel channel = getFileChannel();
+        try {
+          return channel.read(dst, pos);
+        } catch (ClosedChannelException e) {
+          if (Thread.interrupted()) interrupted = true;
+          reopen(channel, e);
+          dst.position(start);
+        }
+      }
+    } finally {
+      if (interrupted) Thread.currentThread().interrupt();
+    }
+  }
+
+  // reopen a read-only file whose channel was closed by an interrupt, unless another thread already did
+  private synchronized void reopen(FileChannel closed, ClosedChannelException e) throws IOException {
+    if (file == null) throw e; // closed by close()
+    if (fileChannel != closed) return;
+    file = new java.io.RandomAccessFile(location, "r");
+    fileChannel = file.getChannel();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////////////////
+  // Positional reads. These do not use or change the file pointer or the read buffer.
+
+  /**
+   * Read up to <code>dst.remaining()</code> bytes, starting at the specified file position.
+   * The file pointer and the read buffer are not used or changed.
+   * When the file is opened read-only, this uses FileChannel.read(dst, pos), and may be called
+   * concurrently from multiple threads. Otherwise, calls are serialized on this object.
+   * Interrupting a reading thread does not close the file; the interrupt status is kept.
+   *
+   * @param pos start here in the file
+   * @param dst read into this ByteBuffer, starting at its position
+   * @return the actual number of bytes read, or -1 if pos is at or past the end of the file.
+   * @throws IOException if an I/O error occurs.
+   */
+  public int read(long pos, ByteBuffer dst) throws IOException {
+    int want = dst.remaining();
+    if (want == 0) return 0;
+
+    int n;
+    if ((file != null) && readonly && !extendMode) {
+      n = readChannel(pos, dst);
+
+    } else {
+      // subclasses, writeable files and extendMode go through read_(), which is not reentrant
+      synchronized (this) {
+        flush();
+        if (pos >= length()) return -1;
+        if (dst.hasArray()) {
+          n = read_(pos, dst.array(), dst.arrayOffset() + dst.position(), want);
+          if (n > 0) dst.position(dst.position() + n);
+        } else {
+          byte[] b = new byte[want];
+          n = read_(pos, b, 0, want);
+          if (n > 0) dst.put(b, 0, n);
+        }
+      }
+    }
+
+    if (debugAccess && (n > 0)) {
+      if (showRead) System.out.println(" **read " + location + " = " + n + " bytes at " + pos);
+      debug_nseeks.incrementAndGet();
+      debug_nbytes.addAndGet(n);
+    }
+    return (n <= 0) ? -1 : n;
+  }
+
+  /**
+   * Read exactly <code>dst.remaining()</code> bytes, starting at the specified file position.
+   * The file pointer and the read buffer are not used or changed.
+   *
+   * @param pos start here in the file
+   * @param dst read into this ByteBuffer, starting at its position
+   * @throws EOFException if the end of the file is reached before all the bytes are read.
+   * @throws IOException  if an I/O error occurs.
+   * @see #read(long, ByteBuffer)
+   */
+  public final void readFully(long pos, ByteBuffer dst) throws IOException {
+    while (dst.hasRemaining()) {
+      int count = read(pos, dst);
+      if (count < 0)
+        throw new EOFException();
+      pos += count;
+    }
+  }
+
+  /**
+   * Read exactly <code>len</code> bytes into an array, starting at the specified file position.
+   * The file pointer and the read buffer are not used or changed.
+   *
+   * @param pos start here in the file
+   * @param b   the buffer into which the data is read.
+   * @param off the start offset in b.
+   * @param len the number of bytes to read.
+   * @throws EOFException if the end of the file is reached before all the bytes are read.
+   * @throws IOException  if an I/O error occurs.
+   * @see #read(long, ByteBuffer)
+   */
+  public final void readFully(long pos, byte b[], int off, int len) throws IOException {
+    readFully(pos, ByteBuffer.wrap(b, off, len));
+  }
+
   /**
    * Read directly from file, without going through the buffer.
    * All reading goes through here or readToByteChannel;